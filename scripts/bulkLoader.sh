@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+# Creates the znodes of a manifest of "path<TAB>data" lines with pipelined asynchronous creates.
+#
+# Usage: scripts/bulkLoader.sh [-Doutstanding=1000] [-Dencoding=utf8|base64] hostPort manifest
+. zkEnv.sh
+
+export CLASSPATH="build/classes/java/main:$CLASSPATH"
+opts=()
+while [[ $1 == -D* ]]; do
+  opts+=("$1")
+  shift
+done
+java -Xmx256m "${opts[@]}" org.yao.batch.BulkLoader "$@"
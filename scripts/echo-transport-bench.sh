@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# Compares the nio and epoll transports of the Netty EchoServer, both with long-lived pipelined
+# connections (LoadGenerator) and with connection churn (ChurnBenchmark).
+#
+# Usage: scripts/echo-transport-bench.sh [connections] [depth] [seconds] [acceptors]
+. zkEnv.sh
+
+export CLASSPATH="build/classes/java/main:$CLASSPATH"
+connections=${1:-1000}
+depth=${2:-16}
+seconds=${3:-30}
+acceptors=${4:-4}
+port=8007
+
+run() {
+  java -Dport=$port "$@" org.yao.netty.echo.EchoServer &
+  pid=$!
+  sleep 2
+  java org.yao.socket.LoadGenerator 127.0.0.1 $port $connections $depth 64 0 $seconds | tail -1
+  java -Dport=$port -Dseconds=$seconds org.yao.netty.echo.ChurnBenchmark
+  kill $pid
+  wait $pid 2>/dev/null
+}
+
+echo "== nio"
+run -Dtransport=nio
+echo "== epoll"
+run -Dtransport=epoll
+echo "== epoll with $acceptors SO_REUSEPORT acceptors"
+run -Dtransport=epoll -Dacceptors=$acceptors
@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+# Summarizes a snapshot per path prefix without loading it like snapshotFormatter.sh does.
+#
+# Usage: scripts/snapshotAnalyzer.sh [-Ddepth=2] [-Dthreads=N] [-Dformat=text|csv|json] snapshot
+. zkEnv.sh
+
+export CLASSPATH="build/classes/java/main:$CLASSPATH"
+opts=()
+while [[ $1 == -D* ]]; do
+  opts+=("$1")
+  shift
+done
+java -Xmx256m "${opts[@]}" org.yao.snapshot.SnapshotAnalyzer "$@"
@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+# Summarizes transaction logs, or replays their writes against an ensemble with -replay.
+#
+# Usage: scripts/txnLogAnalyzer.sh [-Ddepth=N] [-Dformat=text|csv] log-file-or-directory ...
+#        scripts/txnLogAnalyzer.sh -replay [-Dspeedup=1] [-Doutstanding=1000] hostPort log ...
+. zkEnv.sh
+
+export CLASSPATH="build/classes/java/main:$CLASSPATH"
+main=org.yao.txnlog.TxnLogAnalyzer
+if [[ $1 == -replay ]]; then
+  main=org.yao.txnlog.TxnLogReplayer
+  shift
+fi
+opts=()
+while [[ $1 == -D* ]]; do
+  opts+=("$1")
+  shift
+done
+java -Xmx256m "${opts[@]}" $main "$@"
@@ -0,0 +1,62 @@
+package org.yao.jute;
+
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The harness of the Jute benchmarks. A subclass only says how its message is written and read;
+ * {@link #serialize} and {@link #deserialize} then measure it against every {@link ArchiveFormat}
+ * named by <tt>format</tt>. The message is written once during setup for {@link #deserialize}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ArchiveBenchmark {
+  @Param({"binary", "bytebuffer", "directbytebuffer", "bytebuf"})
+  public String format;
+
+  protected ArchiveFormat archives;
+
+  @Setup
+  public void setUpFormat() throws IOException {
+    prepare();
+    archives = ArchiveFormat.of(format);
+    write(archives.output());
+    archives.finish();
+  }
+
+  @Benchmark
+  public void serialize() throws IOException {
+    write(archives.output());
+  }
+
+  @Benchmark
+  public void deserialize(Blackhole bh) throws IOException {
+    read(archives.input(), bh);
+  }
+
+  /** Builds the message once the parameters are set. */
+  protected void prepare() {}
+
+  protected abstract void write(OutputArchive oa) throws IOException;
+
+  protected abstract void read(InputArchive ia, Blackhole bh) throws IOException;
+}
@@ -0,0 +1,118 @@
+package org.yao.jute;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An archive implementation under benchmark. A benchmark writes a message through {@link
+ * #output()}, and reads the message last ended with {@link #finish()} back through {@link
+ * #input()}. Every implementation is used the way it is meant to be used: the stream
+ * archives are created per message, the buffer archives are reused. To benchmark another archive,
+ * add a subclass and its name to {@link #of} and to the <tt>format</tt> parameter of {@link
+ * ArchiveBenchmark}.
+ */
+abstract class ArchiveFormat {
+  abstract OutputArchive output();
+
+  abstract void finish();
+
+  abstract InputArchive input();
+
+  static ArchiveFormat of(String name) {
+    switch (name) {
+      case "binary":
+        return new Binary();
+      case "bytebuffer":
+        return new Buffer(ByteBuffer.allocate(4096));
+      case "directbytebuffer":
+        return new Buffer(ByteBuffer.allocateDirect(4096));
+      case "bytebuf":
+        return new Buf();
+      default:
+        throw new IllegalArgumentException(name);
+    }
+  }
+
+  /** {@link BinaryOutputArchive} and {@link BinaryInputArchive} over byte array streams. */
+  static class Binary extends ArchiveFormat {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+    private byte[] message;
+
+    @Override
+    OutputArchive output() {
+      out.reset();
+      return BinaryOutputArchive.getArchive(out);
+    }
+
+    @Override
+    void finish() {
+      message = out.toByteArray();
+    }
+
+    @Override
+    InputArchive input() {
+      return BinaryInputArchive.getArchive(new ByteArrayInputStream(message));
+    }
+  }
+
+  /** {@link ByteBufferOutputArchive} and {@link ByteBufferInputArchive}. */
+  static class Buffer extends ArchiveFormat {
+    private final ByteBufferOutputArchive oa;
+    private ByteBuffer message;
+    private ByteBufferInputArchive ia;
+
+    Buffer(ByteBuffer bb) {
+      oa = new ByteBufferOutputArchive(bb);
+    }
+
+    @Override
+    OutputArchive output() {
+      oa.buffer().clear();
+      return oa;
+    }
+
+    @Override
+    void finish() {
+      message = oa.buffer().duplicate().flip();
+      ia = new ByteBufferInputArchive(message);
+    }
+
+    @Override
+    InputArchive input() {
+      message.rewind();
+      return ia;
+    }
+  }
+
+  /** {@link ByteBufOutputArchive} and {@link ByteBufInputArchive} over a direct buffer. */
+  static class Buf extends ArchiveFormat {
+    private final ByteBuf buf = Unpooled.directBuffer(4096);
+    private final ByteBufOutputArchive oa = new ByteBufOutputArchive(buf);
+    private final ByteBufInputArchive ia = new ByteBufInputArchive(buf);
+
+    @Override
+    OutputArchive output() {
+      buf.clear();
+      return oa;
+    }
+
+    @Override
+    void finish() {
+      buf.markReaderIndex();
+    }
+
+    @Override
+    InputArchive input() {
+      buf.resetReaderIndex();
+      return ia;
+    }
+  }
+}
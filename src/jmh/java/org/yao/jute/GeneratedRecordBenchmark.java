@@ -0,0 +1,133 @@
+package org.yao.jute;
+
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Session} serialized by its hand-written {@link Record} methods through the
+ * <tt>binary</tt> and <tt>bytebuffer</tt> {@link ArchiveFormat}s, and by the serializer generated
+ * for its {@link JuteRecord} annotation. All of them produce the same bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedRecordBenchmark {
+  @Param({"binary", "bytebuffer", "generated"})
+  public String format;
+
+  private final Session session = new Session();
+  private ArchiveFormat archives;
+  private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+  @JuteRecord
+  static class Session implements Record {
+    long id;
+    int timeout;
+    boolean readOnly;
+    String host;
+    byte[] password;
+    List<String> watches;
+
+    @Override
+    public void serialize(OutputArchive oa, String tag) throws IOException {
+      oa.startRecord(this, tag);
+      oa.writeLong(id, "id");
+      oa.writeInt(timeout, "timeout");
+      oa.writeBool(readOnly, "readOnly");
+      oa.writeString(host, "host");
+      oa.writeBuffer(password, "password");
+      oa.startVector(watches, "watches");
+      if (watches != null) {
+        for (String watch : watches) {
+          oa.writeString(watch, "watch");
+        }
+      }
+      oa.endVector(watches, "watches");
+      oa.endRecord(this, tag);
+    }
+
+    @Override
+    public void deserialize(InputArchive ia, String tag) throws IOException {
+      ia.startRecord(tag);
+      id = ia.readLong("id");
+      timeout = ia.readInt("timeout");
+      readOnly = ia.readBool("readOnly");
+      host = ia.readString("host");
+      password = ia.readBuffer("password");
+      Index index = ia.startVector("watches");
+      if (index == null) {
+        watches = null;
+      } else {
+        watches = new ArrayList<>();
+        for (; !index.done(); index.incr()) {
+          watches.add(ia.readString("watch"));
+        }
+      }
+      ia.endVector("watches");
+      ia.endRecord(tag);
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    session.id = 0x100000a1b2c3d4L;
+    session.timeout = 30000;
+    session.host = "10.0.0.17:2181";
+    session.password = new byte[16];
+    session.watches = Arrays.asList("/app/config", "/app/leader", "/app/members/node-000042");
+    if (format.equals("generated")) {
+      GeneratedRecordBenchmark_SessionSerializer.serialize(session, buffer);
+      buffer.flip();
+    } else {
+      archives = ArchiveFormat.of(format);
+      session.serialize(archives.output(), "session");
+      archives.finish();
+    }
+  }
+
+  @Benchmark
+  public Object serialize() throws IOException {
+    if (archives == null) {
+      buffer.clear();
+      GeneratedRecordBenchmark_SessionSerializer.serialize(session, buffer);
+      return buffer;
+    }
+    OutputArchive oa = archives.output();
+    session.serialize(oa, "session");
+    return oa;
+  }
+
+  @Benchmark
+  public Session deserialize() throws IOException {
+    if (archives == null) {
+      buffer.rewind();
+      return GeneratedRecordBenchmark_SessionSerializer.deserialize(buffer);
+    }
+    Session s = new Session();
+    s.deserialize(archives.input(), "session");
+    return s;
+  }
+}
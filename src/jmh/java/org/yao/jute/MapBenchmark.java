@@ -0,0 +1,72 @@
+package org.yao.jute;
+
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A map from strings to ints. With <tt>impl=treemap</tt> it is a <tt>TreeMap</tt> written with
+ * <tt>startMap</tt>/<tt>endMap</tt> like in <tt>JuteTests</tt>, and read back into a new
+ * <tt>TreeMap</tt>. With <tt>impl=primitive</tt> it is a sorted {@link StringIntMap}, which writes
+ * the same bytes, and is read back into a reused one.
+ */
+public class MapBenchmark extends ArchiveBenchmark {
+  @Param({"1", "16", "256"})
+  public int size;
+
+  @Param({"treemap", "primitive"})
+  public String impl;
+
+  private TreeMap<String, Integer> map;
+  private StringIntMap intMap;
+  private StringIntMap result;
+
+  @Override
+  protected void prepare() {
+    map = new TreeMap<>();
+    intMap = new StringIntMap(size);
+    for (int i = 0; i < size; i++) {
+      map.put("key-" + i, i);
+      intMap.put("key-" + i, i);
+    }
+    intMap.sort();
+    result = new StringIntMap(size);
+  }
+
+  @Override
+  protected void write(OutputArchive oa) throws IOException {
+    if (impl.equals("primitive")) {
+      intMap.serialize(oa, "map");
+      return;
+    }
+    oa.startMap(map, "map");
+    for (Map.Entry<String, Integer> entry : map.entrySet()) {
+      oa.writeString(entry.getKey(), "key");
+      oa.writeInt(entry.getValue(), "value");
+    }
+    oa.endMap(map, "map");
+  }
+
+  @Override
+  protected void read(InputArchive ia, Blackhole bh) throws IOException {
+    if (impl.equals("primitive")) {
+      result.deserialize(ia, "map");
+      bh.consume(result);
+      return;
+    }
+    TreeMap<String, Integer> result = new TreeMap<>();
+    Index index = ia.startMap("map");
+    while (!index.done()) {
+      result.put(ia.readString("key"), ia.readInt("value"));
+      index.incr();
+    }
+    ia.endMap("map");
+    bh.consume(result);
+  }
+}
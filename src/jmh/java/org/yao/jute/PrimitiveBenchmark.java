@@ -0,0 +1,36 @@
+package org.yao.jute;
+
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/** One value of every primitive type, a path-like string and a small buffer. */
+public class PrimitiveBenchmark extends ArchiveBenchmark {
+  private final byte[] buffer = new byte[16];
+
+  @Override
+  protected void write(OutputArchive oa) throws IOException {
+    oa.writeBool(true, "boolean");
+    oa.writeByte((byte) 7, "byte");
+    oa.writeInt(1024, "int");
+    oa.writeLong(1L << 40, "long");
+    oa.writeFloat(1.5f, "float");
+    oa.writeDouble(2.5, "double");
+    oa.writeString("/zookeeper/config", "string");
+    oa.writeBuffer(buffer, "buffer");
+  }
+
+  @Override
+  protected void read(InputArchive ia, Blackhole bh) throws IOException {
+    bh.consume(ia.readBool("boolean"));
+    bh.consume(ia.readByte("byte"));
+    bh.consume(ia.readInt("int"));
+    bh.consume(ia.readLong("long"));
+    bh.consume(ia.readFloat("float"));
+    bh.consume(ia.readDouble("double"));
+    bh.consume(ia.readString("string"));
+    bh.consume(ia.readBuffer("buffer"));
+  }
+}
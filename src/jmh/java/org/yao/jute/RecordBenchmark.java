@@ -0,0 +1,53 @@
+package org.yao.jute;
+
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/** A hand-written record like the <tt>Student</tt> of <tt>JuteTests</tt>. */
+public class RecordBenchmark extends ArchiveBenchmark {
+  private final Student student = new Student(2, "xiaoMing");
+
+  static class Student implements Record {
+    private int grade;
+    private String name;
+
+    Student() {}
+
+    Student(int grade, String name) {
+      this.grade = grade;
+      this.name = name;
+    }
+
+    @Override
+    public void serialize(OutputArchive oa, String tag) throws IOException {
+      oa.startRecord(this, tag);
+      oa.writeInt(grade, "grade");
+      oa.writeString(name, "name");
+      oa.endRecord(this, tag);
+    }
+
+    @Override
+    public void deserialize(InputArchive ia, String tag) throws IOException {
+      ia.startRecord(tag);
+      grade = ia.readInt("grade");
+      name = ia.readString("name");
+      ia.endRecord(tag);
+    }
+  }
+
+  @Override
+  protected void write(OutputArchive oa) throws IOException {
+    oa.writeRecord(student, "student");
+  }
+
+  @Override
+  protected void read(InputArchive ia, Blackhole bh) throws IOException {
+    Student s = new Student();
+    ia.readRecord(s, "student");
+    bh.consume(s);
+  }
+}
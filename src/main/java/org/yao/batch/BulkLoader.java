@@ -0,0 +1,243 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.common.PathUtils;
+import org.apache.zookeeper.data.ACL;
+import org.yao.bench.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creates znodes with asynchronous calls, keeping up to <tt>outstanding</tt> of them in flight on
+ * one session, instead of waiting a round trip for every synchronous <tt>create</tt>. Missing
+ * parents are created on demand, with empty data, just before the first child that needs them;
+ * since a session executes its requests in order, the child does not wait for the parent.
+ *
+ * <p>The parents already created or found are remembered, as are the most recent znodes, so that a
+ * manifest listing parents before their children, such as a dump, creates every parent once. A
+ * parent that already exists is fine; any other error is counted by its code rather than fatal,
+ * and an invalid path is counted as <tt>BADARGUMENTS</tt> without being sent.
+ * {@link #create} must be called from a single thread.
+ *
+ * <p>Usage: <tt>BulkLoader hostPort manifest</tt>, where every line of the manifest is a path,
+ * optionally followed by a tab and the data, with the system properties <tt>outstanding</tt>
+ * (1000), <tt>encoding</tt> of the data (<tt>utf8</tt> or <tt>base64</tt>) and <tt>interval</tt>
+ * (10 seconds between progress lines).
+ */
+public class BulkLoader {
+  /** The number of recently created znodes remembered as possible parents. */
+  private static final int RECENT = 4096;
+  private static final byte[] EMPTY = new byte[0];
+
+  private final ZooKeeper zk;
+  private final int outstanding;
+  private final Semaphore window;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final Map<Code, LongAdder> results = new ConcurrentHashMap<>();
+  private final LongAdder completed = new LongAdder();
+  private long parents;
+
+  private final Set<String> known = new HashSet<>();
+  private final Map<String, Boolean> recent =
+      new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > RECENT;
+        }
+      };
+
+  public BulkLoader(ZooKeeper zk, int outstanding) {
+    this.zk = zk;
+    this.outstanding = outstanding;
+    window = new Semaphore(outstanding);
+    known.add("");
+  }
+
+  /** Returns the latencies of the creates of {@link #create}, from sending to completion. */
+  public LatencyHistogram latency() {
+    return latency;
+  }
+
+  /** Returns the number of creates completed with each result code, parents excluded. */
+  public Map<Code, Long> results() {
+    Map<Code, Long> map = new TreeMap<>();
+    results.forEach((k, v) -> map.put(k, v.sum()));
+    return map;
+  }
+
+  public long completed() {
+    return completed.sum();
+  }
+
+  /** Returns the number of parents created or found to exist. */
+  public long parents() {
+    return parents;
+  }
+
+  /** Sends the create of a persistent znode, once a slot in the window is free. */
+  public void create(String path, byte[] data) throws InterruptedException {
+    create(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+  }
+
+  /** Sends the create of a znode, once a slot in the window is free. */
+  public void create(String path, byte[] data, List<ACL> acl, CreateMode mode)
+      throws InterruptedException {
+    try {
+      PathUtils.validatePath(path, mode.isSequential());
+    } catch (IllegalArgumentException e) {
+      // The client would throw it after a slot is taken, and the parents would be created.
+      result(Code.BADARGUMENTS);
+      return;
+    }
+    createParents(path);
+    window.acquire();
+    long start = System.nanoTime();
+    try {
+      zk.create(
+          path,
+          data,
+          acl,
+          mode,
+          (rc, p, ctx, name) -> {
+            latency.recordNanos(System.nanoTime() - start);
+            result(Code.get(rc));
+            window.release();
+          },
+          null);
+    } catch (RuntimeException e) {
+      window.release();
+      throw e;
+    }
+    recent.put(path, Boolean.TRUE);
+  }
+
+  private void result(Code code) {
+    results.computeIfAbsent(code, k -> new LongAdder()).increment();
+    completed.increment();
+  }
+
+  /** Sends the creates of the missing ancestors of <tt>path</tt>, outermost first. */
+  private void createParents(String path) throws InterruptedException {
+    int slash = path.lastIndexOf('/');
+    if (slash < 0) {
+      return;
+    }
+    String parent = path.substring(0, slash);
+    if (known.contains(parent)) {
+      return;
+    }
+    if (recent.remove(parent) != null) {
+      known.add(parent);
+      return;
+    }
+    createParents(parent);
+    window.acquire();
+    // The parent may exist already; a real failure shows in the results of its children.
+    zk.create(
+        parent,
+        EMPTY,
+        Ids.OPEN_ACL_UNSAFE,
+        CreateMode.PERSISTENT,
+        (rc, p, ctx, name) -> window.release(),
+        null);
+    known.add(parent);
+    parents++;
+  }
+
+  /** Waits until every create sent so far has completed. */
+  public void await() throws InterruptedException {
+    window.acquire(outstanding);
+    window.release(outstanding);
+  }
+
+  private static ZooKeeper connect(String hostPort) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("USAGE: BulkLoader hostPort manifest");
+      System.exit(2);
+    }
+    int outstanding = Integer.getInteger("outstanding", 1000);
+    boolean base64 = System.getProperty("encoding", "utf8").equals("base64");
+    int interval = Integer.getInteger("interval", 10);
+
+    ZooKeeper zk = connect(args[0]);
+    BulkLoader loader = new BulkLoader(zk, outstanding);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    long[] last = {0};
+    reporter.scheduleAtFixedRate(
+        () -> {
+          long completed = loader.completed();
+          System.out.printf(
+              "%d created, %.0f creates/s\n",
+              completed, (double) (completed - last[0]) / interval);
+          last[0] = completed;
+        },
+        interval,
+        interval,
+        TimeUnit.SECONDS);
+
+    long start = System.nanoTime();
+    try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        int tab = line.indexOf('\t');
+        String path = tab < 0 ? line : line.substring(0, tab);
+        byte[] data = EMPTY;
+        if (tab >= 0) {
+          String value = line.substring(tab + 1);
+          data =
+              base64
+                  ? Base64.getDecoder().decode(value)
+                  : value.getBytes(StandardCharsets.UTF_8);
+        }
+        loader.create(path, data);
+      }
+    }
+    loader.await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    reporter.shutdownNow();
+    System.out.printf(
+        "created %d znodes and %d parents in %.1f s, %.0f creates/s\n",
+        loader.completed(), loader.parents(), seconds, loader.completed() / seconds);
+    System.out.printf("results: %s\n", loader.results());
+    System.out.printf("latency: %s\n", loader.latency().summary());
+    zk.close();
+  }
+}
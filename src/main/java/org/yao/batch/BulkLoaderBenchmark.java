@@ -0,0 +1,123 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.yao.bench.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Creates the same tree of <tt>count</tt> znodes, 1000 per parent, first with synchronous
+ * <tt>create</tt> calls and then with a {@link BulkLoader} for each window size given, and prints
+ * the throughput and latency of each run. Every run loads its own subtree, which is deleted
+ * afterwards.
+ *
+ * <pre>
+ * java -cp build/classes/java/main:$CLASSPATH \
+ *     org.yao.batch.BulkLoaderBenchmark localhost:2181 100000 10 100 1000
+ * </pre>
+ */
+public class BulkLoaderBenchmark {
+  private static final String ROOT = "/bulk-bench";
+  private static final int FANOUT = 1000;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("USAGE: BulkLoaderBenchmark hostPort count [outstanding ...]");
+      System.exit(2);
+    }
+    int count = Integer.parseInt(args[1]);
+    ZooKeeper zk = connect(args[0]);
+    byte[] data = new byte[100];
+
+    String root = ROOT + "/sync";
+    LatencyHistogram latency = new LatencyHistogram();
+    long start = System.nanoTime();
+    createIfMissing(zk, ROOT);
+    createIfMissing(zk, root);
+    for (int i = 0; i < count; i++) {
+      if (i % FANOUT == 0) {
+        createIfMissing(zk, parent(root, i));
+      }
+      long t = System.nanoTime();
+      zk.create(path(root, i), data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+      latency.recordNanos(System.nanoTime() - t);
+    }
+    report("sync", count, start, latency);
+    delete(zk, root);
+
+    for (int a = 2; a < args.length; a++) {
+      int outstanding = Integer.parseInt(args[a]);
+      root = ROOT + "/async-" + outstanding;
+      BulkLoader loader = new BulkLoader(zk, outstanding);
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        loader.create(path(root, i), data);
+      }
+      loader.await();
+      report("async, " + outstanding + " outstanding", count, start, loader.latency());
+      delete(zk, root);
+    }
+    zk.delete(ROOT, -1);
+    zk.close();
+  }
+
+  private static String parent(String root, int i) {
+    return String.format("%s/p%05d", root, i / FANOUT);
+  }
+
+  private static String path(String root, int i) {
+    return String.format("%s/n%07d", parent(root, i), i);
+  }
+
+  private static void createIfMissing(ZooKeeper zk, String path) throws Exception {
+    try {
+      zk.create(path, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    } catch (KeeperException.NodeExistsException e) {
+      // Left over from a previous run.
+    }
+  }
+
+  private static void report(String name, int count, long start, LatencyHistogram latency) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf(
+        "%s: %d creates in %.2f s, %.0f creates/s\n  latency: %s\n",
+        name, count, seconds, count / seconds, latency.summary());
+  }
+
+  /** Deletes a subtree of depth two with asynchronous deletes. */
+  private static void delete(ZooKeeper zk, String root) throws Exception {
+    Semaphore window = new Semaphore(1000);
+    for (String parent : zk.getChildren(root, false)) {
+      List<String> children = zk.getChildren(root + "/" + parent, false);
+      for (String child : children) {
+        window.acquire();
+        zk.delete(root + "/" + parent + "/" + child, -1, (rc, p, ctx) -> window.release(), null);
+      }
+      window.acquire();
+      zk.delete(root + "/" + parent, -1, (rc, p, ctx) -> window.release(), null);
+    }
+    window.acquire(1000);
+    zk.delete(root, -1);
+  }
+
+  private static ZooKeeper connect(String hostPort) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+}
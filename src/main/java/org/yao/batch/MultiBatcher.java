@@ -0,0 +1,321 @@
+package org.yao.batch;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.proto.CheckVersionRequest;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.CreateTTLRequest;
+import org.apache.zookeeper.proto.DeleteRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+import org.yao.jute.JuteBuffers;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coalesces independent writes submitted by any number of threads into <tt>multi</tt> requests,
+ * so that many writes share one round trip and one commit. A single thread sends a batch whenever
+ * fewer than <tt>maxInFlight</tt> batches are outstanding; while they are, new writes queue up and
+ * go out together in the next batch, so batches grow with the load and no write waits for a
+ * timer. A batch holds at most <tt>maxOps</tt> writes, and its request at most <tt>maxBytes</tt>
+ * bytes, which must not exceed the <tt>jute.maxbuffer</tt> of the servers or they drop the
+ * connection. The size counts the paths as given: on a handle opened with a chroot, the client
+ * prepends the chroot to every path, so leave its length times <tt>maxOps</tt> as headroom.
+ *
+ * <p>A <tt>multi</tt> fails as a whole when one of its writes fails. The writes whose own result
+ * reports the error are then failed with the matching {@link KeeperException}, and the others are
+ * sent again; if no result singles out a write, the batch is split in halves until one does. So a
+ * write only fails for its own reason, but the writes submitted after a failed one may be
+ * committed before it is retried. Writes are therefore meant to be independent: a write must not
+ * rely on another one pending in the batcher.
+ *
+ * <p>Futures are completed on the event thread of the session, so their callbacks must not block.
+ * Connection loss fails every write of the batches in flight, since the batcher cannot tell
+ * whether they were committed.
+ */
+public class MultiBatcher implements Closeable {
+  /** The request length, the request header and the terminating multi header. */
+  private static final int BATCH_OVERHEAD = 4 + 8 + 9;
+  /** The multi header of an operation. */
+  private static final int OP_OVERHEAD = 9;
+  /** The default <tt>jute.maxbuffer</tt> of ZooKeeper. */
+  private static final int MAX_BUFFER = Integer.getInteger("jute.maxbuffer", 0xfffff);
+
+  private static final Pending CLOSE = new Pending(null, 0);
+
+  private final ZooKeeper zk;
+  private final int maxOps;
+  private final int maxBytes;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final Thread sender;
+  /** Held to queue a write, and exclusively to close: no write is queued after the last drain. */
+  private final ReadWriteLock closing = new ReentrantReadWriteLock();
+  private volatile boolean closed;
+
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder ops = new LongAdder();
+
+  private static final class Pending {
+    final Op op;
+    final int size;
+    final CompletableFuture<OpResult> future = new CompletableFuture<>();
+    /** The unfinished writes of the batch this write was first sent in. */
+    AtomicInteger unfinished;
+
+    Pending(Op op, int size) {
+      this.op = op;
+      this.size = size;
+    }
+  }
+
+  public MultiBatcher(ZooKeeper zk) {
+    this(zk, 1000, MAX_BUFFER, 2);
+  }
+
+  public MultiBatcher(ZooKeeper zk, int maxOps, int maxBytes, int maxInFlight) {
+    if (maxOps < 1 || maxBytes <= BATCH_OVERHEAD || maxInFlight < 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "maxOps %d, maxBytes %d, maxInFlight %d", maxOps, maxBytes, maxInFlight));
+    }
+    this.zk = zk;
+    this.maxOps = maxOps;
+    this.maxBytes = maxBytes;
+    this.maxInFlight = maxInFlight;
+    inFlight = new Semaphore(maxInFlight);
+    sender = new Thread(this::run, "multi-batcher");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /**
+   * Queues a create, setData, delete or check and returns the future of its result. A write too
+   * large for a request of <tt>maxBytes</tt> fails at once with {@link IllegalArgumentException}.
+   */
+  public CompletableFuture<OpResult> submit(Op op) {
+    Pending pending = new Pending(op, size(op));
+    if (BATCH_OVERHEAD + pending.size > maxBytes) {
+      pending.future.completeExceptionally(
+          new IllegalArgumentException(
+              String.format(
+                  "%s: request of %d bytes exceeds %d",
+                  op.getPath(), BATCH_OVERHEAD + pending.size, maxBytes)));
+      return pending.future;
+    }
+    closing.readLock().lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("batcher closed");
+      }
+      queue.add(pending);
+    } finally {
+      closing.readLock().unlock();
+    }
+    return pending.future;
+  }
+
+  /** Returns the number of <tt>multi</tt> requests sent, including retries. */
+  public long batches() {
+    return batches.sum();
+  }
+
+  /** Returns the number of <tt>multi</tt> requests sent again after a batch failed. */
+  public long retries() {
+    return retries.sum();
+  }
+
+  /** Returns the number of writes sent, counting a write once however often it was retried. */
+  public long ops() {
+    return ops.sum();
+  }
+
+  /** Returns the serialized size of an operation in a <tt>multi</tt> request. */
+  static int size(Op op) {
+    Record r = op.toRequestRecord();
+    if (r instanceof CreateRequest) {
+      CreateRequest c = (CreateRequest) r;
+      return OP_OVERHEAD
+          + JuteBuffers.sizeOf(c.getPath())
+          + JuteBuffers.sizeOf(c.getData())
+          + size(c.getAcl())
+          + 4;
+    } else if (r instanceof CreateTTLRequest) {
+      CreateTTLRequest c = (CreateTTLRequest) r;
+      return OP_OVERHEAD
+          + JuteBuffers.sizeOf(c.getPath())
+          + JuteBuffers.sizeOf(c.getData())
+          + size(c.getAcl())
+          + 4
+          + 8;
+    } else if (r instanceof SetDataRequest) {
+      SetDataRequest s = (SetDataRequest) r;
+      return OP_OVERHEAD + JuteBuffers.sizeOf(s.getPath()) + JuteBuffers.sizeOf(s.getData()) + 4;
+    } else if (r instanceof DeleteRequest) {
+      return OP_OVERHEAD + JuteBuffers.sizeOf(((DeleteRequest) r).getPath()) + 4;
+    } else if (r instanceof CheckVersionRequest) {
+      return OP_OVERHEAD + JuteBuffers.sizeOf(((CheckVersionRequest) r).getPath()) + 4;
+    }
+    throw new IllegalArgumentException("not a multi operation: " + r.getClass().getSimpleName());
+  }
+
+  private static int size(List<ACL> acl) {
+    int size = 4;
+    if (acl != null) {
+      for (ACL a : acl) {
+        size +=
+            4 + JuteBuffers.sizeOf(a.getId().getScheme()) + JuteBuffers.sizeOf(a.getId().getId());
+      }
+    }
+    return size;
+  }
+
+  private void run() {
+    try {
+      Pending next = queue.take();
+      while (next != CLOSE) {
+        // Writes keep queueing while every slot is taken, which is what makes batches grow.
+        inFlight.acquire();
+        List<Pending> batch = new ArrayList<>();
+        int bytes = BATCH_OVERHEAD;
+        do {
+          batch.add(next);
+          bytes += next.size;
+          next = queue.poll();
+        } while (next != null
+            && next != CLOSE
+            && batch.size() < maxOps
+            && bytes + next.size <= maxBytes);
+        AtomicInteger unfinished = new AtomicInteger(batch.size());
+        for (Pending p : batch) {
+          p.unfinished = unfinished;
+        }
+        ops.add(batch.size());
+        send(batch);
+        if (next == null) {
+          next = queue.take();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Pending p = queue.poll(); p != null; p = queue.poll()) {
+      if (p != CLOSE) {
+        p.future.completeExceptionally(new IllegalStateException("batcher closed"));
+      }
+    }
+  }
+
+  private void send(List<Pending> batch) {
+    List<Op> multi = new ArrayList<>(batch.size());
+    for (Pending p : batch) {
+      multi.add(p.op);
+    }
+    batches.increment();
+    zk.multi(multi, (rc, path, ctx, results) -> completed(batch, rc, results), null);
+  }
+
+  /**
+   * Sends the writes of a failed batch again. This happens on the event thread, which must not
+   * wait for a slot, so the writes keep the slot of the batch they were first sent in.
+   */
+  private void retry(List<Pending> batch) {
+    retries.increment();
+    send(batch);
+  }
+
+  /** Completes a write, and frees the slot of its batch when it is the last one. */
+  private void finish(Pending p, OpResult result, int err) {
+    if (result != null) {
+      p.future.complete(result);
+    } else {
+      p.future.completeExceptionally(KeeperException.create(Code.get(err), p.op.getPath()));
+    }
+    if (p.unfinished.decrementAndGet() == 0) {
+      inFlight.release();
+    }
+  }
+
+  private void completed(List<Pending> batch, int rc, List<OpResult> results) {
+    if (rc == Code.OK.intValue()) {
+      for (int i = 0; i < batch.size(); i++) {
+        finish(batch.get(i), results.get(i), rc);
+      }
+      return;
+    }
+    if (results == null || results.size() != batch.size()) {
+      // The request itself failed, e.g. with connection loss.
+      for (Pending p : batch) {
+        finish(p, null, rc);
+      }
+      return;
+    }
+    List<Pending> rest = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      OpResult result = results.get(i);
+      int err =
+          result instanceof OpResult.ErrorResult
+              ? ((OpResult.ErrorResult) result).getErr()
+              : Code.OK.intValue();
+      if (err == Code.OK.intValue() || err == Code.RUNTIMEINCONSISTENCY.intValue()) {
+        rest.add(batch.get(i));
+      } else {
+        finish(batch.get(i), null, err);
+      }
+    }
+    if (rest.isEmpty()) {
+      return;
+    }
+    if (rest.size() < batch.size()) {
+      retry(rest);
+    } else if (rest.size() == 1) {
+      finish(rest.get(0), null, rc);
+    } else {
+      int half = rest.size() / 2;
+      retry(new ArrayList<>(rest.subList(0, half)));
+      retry(new ArrayList<>(rest.subList(half, rest.size())));
+    }
+  }
+
+  /**
+   * Sends the writes already submitted, waits for every batch in flight, retries included, and
+   * stops the sender.
+   */
+  @Override
+  public void close() {
+    closing.writeLock().lock();
+    try {
+      closed = true;
+      queue.add(CLOSE);
+    } finally {
+      closing.writeLock().unlock();
+    }
+    boolean interrupted = false;
+    try {
+      sender.join();
+      inFlight.acquire(maxInFlight);
+      inFlight.release(maxInFlight);
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares writers that each call <tt>create</tt> and <tt>setData</tt> synchronously, one round
+ * trip per write, with the same writers waiting on the futures of a shared {@link MultiBatcher}.
+ * Every writer still has one write outstanding at a time; only the round trips are shared.
+ *
+ * <pre>
+ * java -cp build/classes/java/main:$CLASSPATH \
+ *     org.yao.batch.MultiBatcherBenchmark localhost:2181 64 200
+ * </pre>
+ */
+public class MultiBatcherBenchmark {
+  private static final String PARENT = "/batcher-bench";
+
+  private interface Writer {
+    void write(String path, byte[] data, boolean create) throws Exception;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.err.println("USAGE: MultiBatcherBenchmark hostPort threads writesPerThread");
+      System.exit(2);
+    }
+    int threads = Integer.parseInt(args[1]);
+    int writes = Integer.parseInt(args[2]);
+    ZooKeeper zk = connect(args[0]);
+    try {
+      zk.create(PARENT, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    } catch (KeeperException.NodeExistsException e) {
+      // Left over from a previous run.
+    }
+
+    run(
+        "single",
+        threads,
+        writes,
+        (path, data, create) -> {
+          if (create) {
+            zk.create(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+          } else {
+            zk.setData(path, data, -1);
+          }
+        });
+    clear(zk);
+
+    MultiBatcher batcher = new MultiBatcher(zk);
+    run(
+        "batched",
+        threads,
+        writes,
+        (path, data, create) -> {
+          Op op =
+              create
+                  ? Op.create(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT)
+                  : Op.setData(path, data, -1);
+          batcher.submit(op).get();
+        });
+    batcher.close();
+    System.out.printf(
+        "batched: %d writes in %d multi requests, %.1f writes per request\n",
+        batcher.ops(), batcher.batches(), (double) batcher.ops() / batcher.batches());
+    clear(zk);
+    zk.delete(PARENT, -1);
+    zk.close();
+  }
+
+  /** Creates <tt>writes</tt> znodes per thread and then sets the data of each. */
+  private static void run(String name, int threads, int writes, Writer writer) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> done = new ArrayList<>();
+    byte[] data = new byte[100];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      String prefix = String.format("%s/t%03d-", PARENT, t);
+      done.add(
+          pool.submit(
+              () -> {
+                for (int i = 0; i < writes; i++) {
+                  writer.write(prefix + i, data, true);
+                }
+                for (int i = 0; i < writes; i++) {
+                  writer.write(prefix + i, data, false);
+                }
+                return null;
+              }));
+    }
+    for (Future<?> f : done) {
+      f.get();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    pool.shutdown();
+    long total = 2L * threads * writes;
+    System.out.printf(
+        "%s: %d writes in %.2f s, %.0f writes/s\n", name, total, seconds, total / seconds);
+  }
+
+  private static void clear(ZooKeeper zk) throws Exception {
+    List<Op> ops = new ArrayList<>();
+    for (String child : zk.getChildren(PARENT, false)) {
+      ops.add(Op.delete(PARENT + "/" + child, -1));
+      if (ops.size() == 1000) {
+        zk.multi(ops);
+        ops.clear();
+      }
+    }
+    if (!ops.isEmpty()) {
+      zk.multi(ops);
+    }
+  }
+
+  private static ZooKeeper connect(String hostPort) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+}
@@ -0,0 +1,281 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.server.EphemeralType;
+import org.yao.jute.RecordFile;
+import org.yao.jute.RecordFileWriter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dumps a subtree to a {@link RecordFile} of {@link CreateRequest}s, one per znode, and restores
+ * it with a {@link BulkLoader}. The crawl keeps up to <tt>outstanding</tt> znodes in flight on one
+ * session: a znode is visited with an asynchronous <tt>getData</tt>, a <tt>getACL</tt> if ACLs are
+ * kept, and a <tt>getChildren</tt>, and its children are visited once the last of them completes.
+ * Since a session answers in order, a znode is written before any of its children, so the dump
+ * can be restored front to back.
+ *
+ * <p>The children of the znode visited last are visited first, so the znodes waiting for a slot
+ * are the siblings along one path rather than a whole level of the tree, and the memory needed
+ * does not grow with the size of the subtree. Ephemeral znodes and <tt>/zookeeper</tt> are
+ * skipped, containers stay containers, and TTL znodes become persistent ones, since a create
+ * request has no TTL. Without ACLs every znode is restored with an open ACL.
+ *
+ * <p>Usage: <tt>SubtreeDumper dump hostPort path file</tt> or <tt>SubtreeDumper restore hostPort
+ * file [path]</tt>, where the path of a restore replaces the root of the dump, with the system
+ * properties <tt>outstanding</tt> (1000) and <tt>acls</tt> (false).
+ */
+public class SubtreeDumper {
+  /** Marks the end of the crawl in the queue of znodes to visit; compared by identity. */
+  private static final String DONE = new String("");
+  /** The flags of a znode whose data has not been read, and of an ephemeral one. */
+  private static final int UNREAD = -2;
+  private static final int EPHEMERAL = -1;
+  /** The high byte of the ephemeral owner of a TTL znode. */
+  private static final long TTL_MASK = 0xff00000000000000L;
+
+  private final ZooKeeper zk;
+  private final int outstanding;
+  private final boolean acls;
+  private final Semaphore window;
+  private final BlockingDeque<String> pending = new LinkedBlockingDeque<>();
+  /** The znodes queued or in flight whose children are not queued yet. */
+  private final AtomicLong unfinished = new AtomicLong();
+
+  // Only touched by the event thread until the crawl is over.
+  private RecordFileWriter out;
+  private long written;
+  private long skipped;
+  private long vanished;
+  private Exception failure;
+
+  public SubtreeDumper(ZooKeeper zk, int outstanding, boolean acls) {
+    this.zk = zk;
+    this.outstanding = outstanding;
+    this.acls = acls;
+    window = new Semaphore(outstanding);
+  }
+
+  /** Returns the number of znodes written by the last dump. */
+  public long written() {
+    return written;
+  }
+
+  /** Returns the number of ephemeral znodes left out of the last dump. */
+  public long skipped() {
+    return skipped;
+  }
+
+  /** Returns the number of znodes deleted while the last dump listed them. */
+  public long vanished() {
+    return vanished;
+  }
+
+  /** Writes <tt>root</tt> and its descendants to <tt>out</tt>, parents before children. */
+  public void dump(String root, RecordFileWriter out)
+      throws IOException, KeeperException, InterruptedException {
+    this.out = out;
+    written = skipped = vanished = 0;
+    failure = null;
+    pending.clear();
+    unfinished.set(1);
+    pending.push(root);
+    for (String path = pending.take(); path != DONE; path = pending.take()) {
+      window.acquire();
+      visit(path);
+    }
+    window.acquire(outstanding);
+    window.release(outstanding);
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure != null) {
+      throw (KeeperException) failure;
+    }
+    if (written == 0 && skipped == 0) {
+      throw KeeperException.create(Code.NONODE, root);
+    }
+  }
+
+  private void visit(String path) {
+    CreateRequest node = new CreateRequest(path, null, Ids.OPEN_ACL_UNSAFE, UNREAD);
+    zk.getData(
+        path,
+        false,
+        (rc, p, ctx, data, stat) -> {
+          if (rc == Code.OK.intValue()) {
+            node.setData(data);
+            node.setFlags(flags(stat));
+            if (!acls) {
+              write(node);
+            }
+          }
+        },
+        null);
+    if (acls) {
+      zk.getACL(
+          path,
+          new Stat(),
+          (rc, p, ctx, acl, stat) -> {
+            if (rc == Code.OK.intValue() && node.getFlags() != UNREAD) {
+              node.setAcl(acl);
+              write(node);
+            }
+          },
+          null);
+    }
+    zk.getChildren(
+        path,
+        false,
+        (rc, p, ctx, children) -> {
+          if (rc == Code.OK.intValue()) {
+            // Pushed in reverse, so that the children are visited in order.
+            Collections.sort(children);
+            for (int i = children.size() - 1; i >= 0; i--) {
+              String name = children.get(i);
+              String child = path.equals("/") ? "/" + name : path + "/" + name;
+              if (!child.equals("/zookeeper")) {
+                unfinished.incrementAndGet();
+                pending.push(child);
+              }
+            }
+          } else if (rc == Code.NONODE.intValue()) {
+            vanished++;
+          } else if (failure == null) {
+            failure = KeeperException.create(Code.get(rc), path);
+          }
+          if (unfinished.decrementAndGet() == 0 || failure != null) {
+            pending.push(DONE);
+          }
+          window.release();
+        },
+        null);
+  }
+
+  /** Returns the create flags of a znode, or {@link #EPHEMERAL}. */
+  private static int flags(Stat stat) {
+    long owner = stat.getEphemeralOwner();
+    if (owner == 0 || (owner & TTL_MASK) == TTL_MASK) {
+      return CreateMode.PERSISTENT.toFlag();
+    } else if (owner == EphemeralType.CONTAINER_EPHEMERAL_OWNER) {
+      return CreateMode.CONTAINER.toFlag();
+    }
+    return EPHEMERAL;
+  }
+
+  private void write(CreateRequest node) {
+    if (node.getFlags() == EPHEMERAL) {
+      skipped++;
+      return;
+    }
+    if (failure != null) {
+      return;
+    }
+    try {
+      out.append(node);
+      written++;
+    } catch (IOException e) {
+      failure = e;
+    }
+  }
+
+  /**
+   * Creates the znodes of a dump in order, with the root of the dump moved to <tt>root</tt>, or
+   * left in place if <tt>root</tt> is null, and returns their number. A dump of <tt>/</tt> skips
+   * the root itself. Call {@link BulkLoader#await} to wait for the creates.
+   */
+  public static long restore(RecordFile file, BulkLoader loader, String root)
+      throws KeeperException, InterruptedException {
+    Iterator<CreateRequest> it = file.records(CreateRequest::new).iterator();
+    String from = null;
+    long n = 0;
+    while (it.hasNext()) {
+      CreateRequest node = it.next();
+      if (from == null) {
+        from = node.getPath();
+      }
+      String path = relocate(node.getPath(), from, root == null ? from : root);
+      if (!path.equals("/")) {
+        loader.create(path, node.getData(), node.getAcl(), CreateMode.fromFlag(node.getFlags()));
+        n++;
+      }
+    }
+    return n;
+  }
+
+  private static String relocate(String path, String from, String to) {
+    String rest = from.equals("/") ? path : path.substring(from.length());
+    if (rest.equals("/")) {
+      return to;
+    }
+    return to.equals("/") ? rest : to + rest;
+  }
+
+  private static ZooKeeper connect(String hostPort) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+
+  public static void main(String[] args) throws Exception {
+    boolean dump = args.length == 4 && args[0].equals("dump");
+    boolean restore = (args.length == 3 || args.length == 4) && args[0].equals("restore");
+    if (!dump && !restore) {
+      System.err.println("USAGE: SubtreeDumper dump hostPort path file");
+      System.err.println("       SubtreeDumper restore hostPort file [path]");
+      System.exit(2);
+    }
+    int outstanding = Integer.getInteger("outstanding", 1000);
+    ZooKeeper zk = connect(args[1]);
+    long start = System.nanoTime();
+    if (dump) {
+      SubtreeDumper dumper = new SubtreeDumper(zk, outstanding, Boolean.getBoolean("acls"));
+      try (RecordFileWriter out = new RecordFileWriter(Paths.get(args[3]))) {
+        dumper.dump(args[2], out);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf(
+          "dumped %d znodes in %.1f s, %.0f znodes/s, %d ephemeral skipped, %d vanished\n",
+          dumper.written(),
+          seconds,
+          dumper.written() / seconds,
+          dumper.skipped(),
+          dumper.vanished());
+    } else {
+      BulkLoader loader = new BulkLoader(zk, outstanding);
+      long n;
+      try (RecordFile file = new RecordFile(Paths.get(args[2]))) {
+        n = restore(file, loader, args.length == 4 ? args[3] : null);
+        loader.await();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("restored %d znodes in %.1f s, %.0f znodes/s\n", n, seconds, n / seconds);
+      System.out.printf("results: %s\n", loader.results());
+      System.out.printf("latency: %s\n", loader.latency().summary());
+    }
+    zk.close();
+  }
+}
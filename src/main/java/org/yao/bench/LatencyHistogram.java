@@ -0,0 +1,126 @@
+package org.yao.bench;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, log-linear histogram of latencies in nanoseconds. Every power of two is split into
+ * 64 buckets, so a recorded value is reported with a relative error below 1.6%. Recording is
+ * lock-free and may happen from any number of threads.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BITS = 7;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int HALF = SUB >> 1;
+  private static final int BUCKETS = SUB + (63 - SUB_BITS) * HALF;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  public void recordNanos(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(index(nanos));
+    total.increment();
+    sum.add(nanos);
+  }
+
+  public long count() {
+    return total.sum();
+  }
+
+  public double meanNanos() {
+    long n = total.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /** Returns the upper bound of the bucket holding the given percentile, e.g. 99.9. */
+  public long percentileNanos(double percentile) {
+    // Count the buckets rather than use total, which may be ahead of them under concurrent updates.
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      n += counts.get(i);
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  /** Adds all the values of another histogram to this one. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long c = other.counts.get(i);
+      if (c != 0) {
+        counts.addAndGet(i, c);
+      }
+    }
+    total.add(other.total.sum());
+    sum.add(other.sum.sum());
+  }
+
+  /**
+   * Moves everything recorded so far to a new histogram and returns it. A value recorded meanwhile
+   * ends up in exactly one of the two, so successive intervals neither lose nor repeat a value.
+   */
+  public LatencyHistogram takeInterval() {
+    LatencyHistogram interval = new LatencyHistogram();
+    for (int i = 0; i < BUCKETS; i++) {
+      long c = counts.getAndSet(i, 0);
+      if (c != 0) {
+        interval.counts.set(i, c);
+      }
+    }
+    interval.total.add(total.sumThenReset());
+    interval.sum.add(sum.sumThenReset());
+    return interval;
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.reset();
+    sum.reset();
+  }
+
+  /** One line with the count, the mean and the usual percentiles in microseconds. */
+  public String summary() {
+    return String.format(
+        "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+        count(),
+        meanNanos() / 1e3,
+        percentileNanos(50) / 1e3,
+        percentileNanos(90) / 1e3,
+        percentileNanos(99) / 1e3,
+        percentileNanos(99.9) / 1e3,
+        percentileNanos(100) / 1e3);
+  }
+
+  static int index(long value) {
+    if (value < SUB) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+    return SUB + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB) {
+      return index;
+    }
+    int shift = (index - SUB) / HALF + 1;
+    long mantissa = (index - SUB) % HALF + HALF;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
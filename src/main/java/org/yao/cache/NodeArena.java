@@ -0,0 +1,543 @@
+package org.yao.cache;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The znodes of a subtree packed into buffers: a fixed record of {@value #RECORD} bytes per znode
+ * holding its links and its stat, and the names and data appended to chunks of {@value
+ * #BLOB_CHUNK} bytes. A znode is found by hashing its parent and name into a chained index, so a
+ * path is looked up one component at a time without storing any path. Nothing per znode lives on
+ * the Java heap unless the storage is {@link SubtreeMirror.Storage#HEAP}.
+ *
+ * <p>Records are numbered and reused after a delete. Replaced data and the names and data of
+ * deleted znodes stay in the chunks until they make up more than half of them; the live ones are
+ * then copied to new chunks. Not thread-safe.
+ */
+final class NodeArena implements Closeable {
+  static final int RECORD = 112;
+  static final int BLOB_CHUNK = 1 << 20;
+  private static final int PAGE_SHIFT = 13;
+  private static final int PAGE_NODES = 1 << PAGE_SHIFT;
+  private static final int NONE = -1;
+  private static final int FREE = -2;
+  private static final long NULL_DATA = -1;
+
+  // The fields of a record.
+  private static final int PARENT = 0;
+  private static final int FIRST_CHILD = 4;
+  private static final int NEXT_SIBLING = 8;
+  private static final int PREV_SIBLING = 12;
+  private static final int HASH_NEXT = 16;
+  private static final int HASH = 20;
+  private static final int NAME_LENGTH = 24;
+  private static final int DATA_LENGTH = 28;
+  private static final int NAME_REF = 32;
+  private static final int DATA_REF = 40;
+  private static final int CZXID = 48;
+  private static final int MZXID = 56;
+  private static final int CTIME = 64;
+  private static final int MTIME = 72;
+  private static final int EPHEMERAL_OWNER = 80;
+  private static final int PZXID = 88;
+  private static final int VERSION = 96;
+  private static final int CVERSION = 100;
+  private static final int AVERSION = 104;
+  private static final int NUM_CHILDREN = 108;
+
+  private final String rootPath;
+  private final SubtreeMirror.Storage storage;
+  private final Allocator records;
+  private final List<ByteBuffer> pages = new ArrayList<>();
+  private int root = NONE;
+  private int nextId;
+  private int free = NONE;
+  private int size;
+
+  private Allocator blobs;
+  private List<ByteBuffer> chunks = new ArrayList<>();
+  private ByteBuffer chunk;
+  private int chunkIndex;
+  private int chunkUsed;
+  private long blobBytes;
+  private long liveBlobBytes;
+
+  /** The first record of every hash chain. */
+  private ByteBuffer heads;
+  private int mask;
+
+  /** Allocates the buffers of one kind of storage; mapped ones come from a deleted temp file. */
+  private static final class Allocator implements Closeable {
+    private final SubtreeMirror.Storage storage;
+    private FileChannel channel;
+    private long fileSize;
+
+    Allocator(SubtreeMirror.Storage storage) {
+      this.storage = storage;
+      if (storage == SubtreeMirror.Storage.MAPPED) {
+        try {
+          Path file = Files.createTempFile("mirror", ".arena");
+          channel =
+              FileChannel.open(
+                  file,
+                  StandardOpenOption.READ,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    ByteBuffer allocate(int size) {
+      switch (storage) {
+        case HEAP:
+          return ByteBuffer.allocate(size);
+        case DIRECT:
+          return ByteBuffer.allocateDirect(size);
+        default:
+          try {
+            ByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+            fileSize += size;
+            return b;
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+
+  NodeArena(String rootPath, SubtreeMirror.Storage storage) {
+    this.rootPath = rootPath;
+    this.storage = storage;
+    records = new Allocator(storage);
+    blobs = new Allocator(storage);
+    resize(1024);
+  }
+
+  /** Returns the number of znodes. */
+  int size() {
+    return size;
+  }
+
+  /** Returns the bytes allocated for records, chunks and the index. */
+  long bytes() {
+    return (long) pages.size() * PAGE_NODES * RECORD + blobBytes + heads.capacity();
+  }
+
+  private int getInt(int id, int field) {
+    return pages.get(id >>> PAGE_SHIFT).getInt((id & (PAGE_NODES - 1)) * RECORD + field);
+  }
+
+  private void putInt(int id, int field, int value) {
+    pages.get(id >>> PAGE_SHIFT).putInt((id & (PAGE_NODES - 1)) * RECORD + field, value);
+  }
+
+  private long getLong(int id, int field) {
+    return pages.get(id >>> PAGE_SHIFT).getLong((id & (PAGE_NODES - 1)) * RECORD + field);
+  }
+
+  private void putLong(int id, int field, long value) {
+    pages.get(id >>> PAGE_SHIFT).putLong((id & (PAGE_NODES - 1)) * RECORD + field, value);
+  }
+
+  /** Returns the record of a path, or -1. */
+  int find(String path) {
+    if (root == NONE) {
+      return NONE;
+    }
+    if (path.equals(rootPath)) {
+      return root;
+    }
+    int start;
+    if (rootPath.equals("/")) {
+      start = 1;
+    } else {
+      start = rootPath.length() + 1;
+      if (!path.startsWith(rootPath) || path.length() < start || path.charAt(start - 1) != '/') {
+        return NONE;
+      }
+    }
+    if (!path.startsWith("/")) {
+      return NONE;
+    }
+    int id = root;
+    while (true) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = path.length();
+      }
+      id = child(id, path, start, end);
+      if (id == NONE || end == path.length()) {
+        return id;
+      }
+      start = end + 1;
+    }
+  }
+
+  /** Returns the child named by <tt>path</tt> from <tt>start</tt> to <tt>end</tt>, or -1. */
+  private int child(int parent, String path, int start, int end) {
+    // ASCII names, the common case, are hashed and compared without encoding them.
+    int h = parent * 0x9e3779b9;
+    for (int i = start; i < end; i++) {
+      char c = path.charAt(i);
+      if (c >= 0x80) {
+        return child(parent, path.substring(start, end).getBytes(StandardCharsets.UTF_8));
+      }
+      h = 31 * h + c;
+    }
+    h ^= h >>> 16;
+    int length = end - start;
+    for (int id = heads.getInt((h & mask) * 4); id != NONE; id = getInt(id, HASH_NEXT)) {
+      if (getInt(id, HASH) == h
+          && getInt(id, PARENT) == parent
+          && getInt(id, NAME_LENGTH) == length
+          && nameEquals(id, path, start)) {
+        return id;
+      }
+    }
+    return NONE;
+  }
+
+  private boolean nameEquals(int id, String path, int start) {
+    long ref = getLong(id, NAME_REF);
+    ByteBuffer b = chunks.get((int) (ref >>> 32));
+    int offset = (int) ref;
+    int length = getInt(id, NAME_LENGTH);
+    for (int i = 0; i < length; i++) {
+      if (b.get(offset + i) != (byte) path.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int child(int parent, byte[] name) {
+    int h = hash(parent, name);
+    for (int id = heads.getInt((h & mask) * 4); id != NONE; id = getInt(id, HASH_NEXT)) {
+      if (getInt(id, HASH) == h && getInt(id, PARENT) == parent && nameEquals(id, name)) {
+        return id;
+      }
+    }
+    return NONE;
+  }
+
+  private static int hash(int parent, byte[] name) {
+    int h = parent * 0x9e3779b9;
+    for (byte b : name) {
+      h = 31 * h + b;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private boolean nameEquals(int id, byte[] name) {
+    if (getInt(id, NAME_LENGTH) != name.length) {
+      return false;
+    }
+    long ref = getLong(id, NAME_REF);
+    ByteBuffer b = chunks.get((int) (ref >>> 32));
+    int offset = (int) ref;
+    for (int i = 0; i < name.length; i++) {
+      if (b.get(offset + i) != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds or replaces a znode and returns its record, or returns -1 if its parent is missing. The
+   * stat is copied except for the data length, which is that of <tt>data</tt>.
+   */
+  int put(String path, byte[] data, Stat stat) {
+    int id = find(path);
+    if (id == NONE) {
+      int parent = NONE;
+      byte[] name;
+      if (path.equals(rootPath)) {
+        name = path.getBytes(StandardCharsets.UTF_8);
+      } else {
+        int slash = path.lastIndexOf('/');
+        parent = find(slash == 0 ? "/" : path.substring(0, slash));
+        if (parent == NONE) {
+          return NONE;
+        }
+        name = path.substring(slash + 1).getBytes(StandardCharsets.UTF_8);
+      }
+      id = allocate();
+      putInt(id, PARENT, parent);
+      putInt(id, FIRST_CHILD, NONE);
+      putInt(id, PREV_SIBLING, NONE);
+      putInt(id, NAME_LENGTH, name.length);
+      putLong(id, NAME_REF, writeBlob(name));
+      if (parent == NONE) {
+        putInt(id, NEXT_SIBLING, NONE);
+        root = id;
+      } else {
+        int next = getInt(parent, FIRST_CHILD);
+        putInt(id, NEXT_SIBLING, next);
+        if (next != NONE) {
+          putInt(next, PREV_SIBLING, id);
+        }
+        putInt(parent, FIRST_CHILD, id);
+        int h = hash(parent, name);
+        putInt(id, HASH, h);
+        link(id, h);
+      }
+    } else if (getLong(id, DATA_REF) != NULL_DATA) {
+      liveBlobBytes -= getInt(id, DATA_LENGTH);
+    }
+    putLong(id, DATA_REF, data == null ? NULL_DATA : writeBlob(data));
+    putInt(id, DATA_LENGTH, data == null ? 0 : data.length);
+    putLong(id, CZXID, stat.getCzxid());
+    putLong(id, MZXID, stat.getMzxid());
+    putLong(id, CTIME, stat.getCtime());
+    putLong(id, MTIME, stat.getMtime());
+    putLong(id, EPHEMERAL_OWNER, stat.getEphemeralOwner());
+    putInt(id, VERSION, stat.getVersion());
+    putInt(id, AVERSION, stat.getAversion());
+    setChildStat(id, stat);
+    if (blobBytes - liveBlobBytes > Math.max(liveBlobBytes, 4L * BLOB_CHUNK)) {
+      compact();
+    }
+    return id;
+  }
+
+  /** Copies the fields of a stat that change with the children: cversion, numChildren, pzxid. */
+  void setChildStat(int id, Stat stat) {
+    putInt(id, CVERSION, stat.getCversion());
+    putInt(id, NUM_CHILDREN, stat.getNumChildren());
+    putLong(id, PZXID, stat.getPzxid());
+  }
+
+  private int allocate() {
+    int id;
+    if (free != NONE) {
+      id = free;
+      free = getInt(id, NEXT_SIBLING);
+    } else {
+      id = nextId++;
+      if ((id >>> PAGE_SHIFT) == pages.size()) {
+        pages.add(records.allocate(PAGE_NODES * RECORD));
+      }
+    }
+    size++;
+    return id;
+  }
+
+  /** Removes a znode and its descendants, and returns whether it was there. */
+  boolean remove(String path) {
+    int top = find(path);
+    if (top == NONE) {
+      return false;
+    }
+    int parent = getInt(top, PARENT);
+    if (parent == NONE) {
+      root = NONE;
+    } else {
+      int prev = getInt(top, PREV_SIBLING);
+      int next = getInt(top, NEXT_SIBLING);
+      if (prev == NONE) {
+        putInt(parent, FIRST_CHILD, next);
+      } else {
+        putInt(prev, NEXT_SIBLING, next);
+      }
+      if (next != NONE) {
+        putInt(next, PREV_SIBLING, prev);
+      }
+    }
+    // Depth first without recursion: detach a child and descend, or free a leaf and go up.
+    int id = top;
+    while (true) {
+      int child = getInt(id, FIRST_CHILD);
+      if (child != NONE) {
+        putInt(id, FIRST_CHILD, getInt(child, NEXT_SIBLING));
+        id = child;
+        continue;
+      }
+      int up = getInt(id, PARENT);
+      release(id);
+      if (id == top) {
+        return true;
+      }
+      id = up;
+    }
+  }
+
+  private void release(int id) {
+    if (getInt(id, PARENT) != NONE) {
+      unlink(id);
+    }
+    liveBlobBytes -= getInt(id, NAME_LENGTH);
+    if (getLong(id, DATA_REF) != NULL_DATA) {
+      liveBlobBytes -= getInt(id, DATA_LENGTH);
+    }
+    putInt(id, PARENT, FREE);
+    putInt(id, NEXT_SIBLING, free);
+    free = id;
+    size--;
+  }
+
+  private void link(int id, int h) {
+    int slot = (h & mask) * 4;
+    putInt(id, HASH_NEXT, heads.getInt(slot));
+    heads.putInt(slot, id);
+    if (size > mask + 1) {
+      resize((mask + 1) * 2);
+    }
+  }
+
+  private void unlink(int id) {
+    int slot = (getInt(id, HASH) & mask) * 4;
+    int next = getInt(id, HASH_NEXT);
+    int i = heads.getInt(slot);
+    if (i == id) {
+      heads.putInt(slot, next);
+      return;
+    }
+    while (getInt(i, HASH_NEXT) != id) {
+      i = getInt(i, HASH_NEXT);
+    }
+    putInt(i, HASH_NEXT, next);
+  }
+
+  private void resize(int capacity) {
+    heads =
+        storage == SubtreeMirror.Storage.HEAP
+            ? ByteBuffer.allocate(capacity * 4)
+            : ByteBuffer.allocateDirect(capacity * 4);
+    for (int i = 0; i < capacity; i++) {
+      heads.putInt(i * 4, NONE);
+    }
+    mask = capacity - 1;
+    for (int id = 0; id < nextId; id++) {
+      int parent = getInt(id, PARENT);
+      if (parent != FREE && parent != NONE) {
+        int slot = (getInt(id, HASH) & mask) * 4;
+        putInt(id, HASH_NEXT, heads.getInt(slot));
+        heads.putInt(slot, id);
+      }
+    }
+  }
+
+  private long writeBlob(byte[] b) {
+    int n = b.length;
+    long ref;
+    if (n > BLOB_CHUNK / 4) {
+      // Large data gets a chunk of its own, so that it does not waste the rest of one.
+      ByteBuffer own = blobs.allocate(n);
+      own.put(0, b);
+      chunks.add(own);
+      blobBytes += n;
+      ref = (long) (chunks.size() - 1) << 32;
+    } else {
+      if (chunk == null || BLOB_CHUNK - chunkUsed < n) {
+        chunk = blobs.allocate(BLOB_CHUNK);
+        chunks.add(chunk);
+        chunkIndex = chunks.size() - 1;
+        chunkUsed = 0;
+        blobBytes += BLOB_CHUNK;
+      }
+      chunk.put(chunkUsed, b);
+      ref = ((long) chunkIndex << 32) | chunkUsed;
+      chunkUsed += n;
+    }
+    liveBlobBytes += n;
+    return ref;
+  }
+
+  private static byte[] readBlob(List<ByteBuffer> chunks, long ref, int length) {
+    byte[] b = new byte[length];
+    if (length > 0) {
+      chunks.get((int) (ref >>> 32)).get((int) ref, b);
+    }
+    return b;
+  }
+
+  /** Copies the live names and data to new chunks and frees the old ones. */
+  private void compact() {
+    Allocator old = blobs;
+    List<ByteBuffer> oldChunks = chunks;
+    blobs = new Allocator(storage);
+    chunks = new ArrayList<>();
+    chunk = null;
+    blobBytes = 0;
+    liveBlobBytes = 0;
+    for (int id = 0; id < nextId; id++) {
+      if (getInt(id, PARENT) == FREE) {
+        continue;
+      }
+      putLong(
+          id,
+          NAME_REF,
+          writeBlob(readBlob(oldChunks, getLong(id, NAME_REF), getInt(id, NAME_LENGTH))));
+      long data = getLong(id, DATA_REF);
+      if (data != NULL_DATA) {
+        putLong(id, DATA_REF, writeBlob(readBlob(oldChunks, data, getInt(id, DATA_LENGTH))));
+      }
+    }
+    try {
+      old.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  String name(int id) {
+    return new String(
+        readBlob(chunks, getLong(id, NAME_REF), getInt(id, NAME_LENGTH)), StandardCharsets.UTF_8);
+  }
+
+  byte[] data(int id) {
+    long ref = getLong(id, DATA_REF);
+    return ref == NULL_DATA ? null : readBlob(chunks, ref, getInt(id, DATA_LENGTH));
+  }
+
+  Stat stat(int id) {
+    return new Stat(
+        getLong(id, CZXID),
+        getLong(id, MZXID),
+        getLong(id, CTIME),
+        getLong(id, MTIME),
+        getInt(id, VERSION),
+        getInt(id, CVERSION),
+        getInt(id, AVERSION),
+        getLong(id, EPHEMERAL_OWNER),
+        getInt(id, DATA_LENGTH),
+        getInt(id, NUM_CHILDREN),
+        getLong(id, PZXID));
+  }
+
+  /** Returns the names of the children of a znode, in no particular order. */
+  List<String> children(int id) {
+    List<String> names = new ArrayList<>();
+    for (int c = getInt(id, FIRST_CHILD); c != NONE; c = getInt(c, NEXT_SIBLING)) {
+      names.add(name(c));
+    }
+    return names;
+  }
+
+  @Override
+  public void close() throws IOException {
+    records.close();
+    blobs.close();
+  }
+}
@@ -0,0 +1,336 @@
+package org.yao.cache;
+
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A read-only copy of a whole subtree, kept up to date with data and child watches on every znode
+ * like Curator's <tt>TreeCache</tt>. Where <tt>PathChildrenCache</tt> keeps a <tt>ChildData</tt>
+ * with its own path, <tt>byte[]</tt> and {@link Stat} for each child of one znode, the mirror
+ * packs the data and stats of every level into a {@link NodeArena}, which can live on the heap, in
+ * direct buffers or in a memory-mapped temp file.
+ *
+ * <p>The subtree is loaded with asynchronous calls, at most {@value #MAX_LOADS} znodes at a time,
+ * and the znodes found while loading wait in a stack, so the memory it takes does not grow with
+ * the subtree. Reads take a read lock and copy what they return; the changes are applied by the
+ * event thread of the session.
+ *
+ * <p>Calls which fail with a connection loss are sent again, since their watches were not set.
+ * After the client reconnects, the whole subtree is read again the same way, as
+ * <tt>TreeCache</tt> does. After the session expires the mirror stops following changes. The
+ * ZooKeeper client still keeps two watches, with their paths, per mirrored znode.
+ */
+public class SubtreeMirror implements Closeable {
+  private static final int MAX_LOADS = 1000;
+
+  /** Where the arena keeps the znodes. */
+  public enum Storage {
+    HEAP,
+    DIRECT,
+    MAPPED
+  }
+
+  private final ZooKeeper zk;
+  private final String root;
+  private final NodeArena arena;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final CountDownLatch initialized = new CountDownLatch(1);
+  private volatile boolean closed;
+
+  // Guarded by this.
+  private final ArrayDeque<Load> waiting = new ArrayDeque<>();
+  private int loads;
+  // Only used by the event thread.
+  private boolean disconnected;
+
+  private final Watcher watcher = this::process;
+  private final AsyncCallback.DataCallback dataLoaded = this::dataLoaded;
+  private final AsyncCallback.Children2Callback childrenLoaded = this::childrenLoaded;
+  private final AsyncCallback.StatCallback rootExists = this::rootExists;
+
+  /** How a znode is loaded: only its new children are loaded as well, or all of them. */
+  private enum Mode {
+    LOAD,
+    RESYNC
+  }
+
+  private static final class Load {
+    final String path;
+    final Mode mode;
+
+    Load(String path, Mode mode) {
+      this.path = path;
+      this.mode = mode;
+    }
+  }
+
+  public SubtreeMirror(ZooKeeper zk, String root, Storage storage) {
+    this.zk = zk;
+    this.root = root;
+    arena = new NodeArena(root, storage);
+  }
+
+  /** Starts loading the subtree; the mirror is empty until the root is loaded. */
+  public void start() {
+    load(root, Mode.LOAD);
+  }
+
+  /** Waits until the subtree found at start has been loaded. */
+  public boolean awaitInitialized(long timeout, TimeUnit unit) throws InterruptedException {
+    return initialized.await(timeout, unit);
+  }
+
+  /** Loads a znode and its children once fewer than {@link #MAX_LOADS} loads are in flight. */
+  private synchronized void load(String path, Mode mode) {
+    waiting.push(new Load(path, mode));
+    drain();
+  }
+
+  private synchronized void loaded() {
+    loads--;
+    drain();
+    if (loads == 0) {
+      initialized.countDown();
+    }
+  }
+
+  private void drain() {
+    while (loads < MAX_LOADS && !waiting.isEmpty() && !closed) {
+      Load load = waiting.pop();
+      loads++;
+      // The session answers in order, so the data is in the arena before the children arrive.
+      zk.getData(load.path, watcher, dataLoaded, load.mode);
+      zk.getChildren(load.path, watcher, childrenLoaded, load.mode);
+    }
+  }
+
+  /** Returns whether a call should be sent again. */
+  private boolean retry(int rc) {
+    return !closed
+        && (rc == Code.CONNECTIONLOSS.intValue() || rc == Code.OPERATIONTIMEOUT.intValue());
+  }
+
+  private void dataLoaded(int rc, String path, Object ctx, byte[] data, Stat stat) {
+    if (rc == Code.OK.intValue()) {
+      write(() -> arena.put(path, data, stat));
+    } else if (rc == Code.NONODE.intValue()) {
+      deleted(path);
+    } else if (retry(rc) && ctx == null) {
+      zk.getData(path, watcher, dataLoaded, null);
+    }
+    // The getChildren of a load, sent after the getData, fails too and sends both again.
+  }
+
+  /** <tt>ctx</tt> is the {@link Mode} of a load, or null for a change of the children. */
+  private void childrenLoaded(
+      int rc, String path, Object ctx, List<String> children, Stat stat) {
+    if (retry(rc)) {
+      // Still counted as a load in flight. Retried one by one, the getData of a load could end up
+      // behind its getChildren after failing twice, so both are sent again in order.
+      if (ctx != null) {
+        zk.getData(path, watcher, dataLoaded, ctx);
+      }
+      zk.getChildren(path, watcher, childrenLoaded, ctx);
+      return;
+    }
+    List<String> added = new ArrayList<>();
+    if (rc == Code.OK.intValue()) {
+      write(
+          () -> {
+            int id = arena.find(path);
+            if (id < 0) {
+              return;
+            }
+            arena.setChildStat(id, stat);
+            Set<String> known = new HashSet<>(arena.children(id));
+            String prefix = path.equals("/") ? "/" : path + "/";
+            for (String child : children) {
+              if (!known.remove(child)) {
+                added.add(prefix + child);
+              }
+            }
+            for (String gone : known) {
+              arena.remove(prefix + gone);
+            }
+            if (ctx == Mode.RESYNC) {
+              // Those already mirrored may have changed while the watches were not set.
+              added.clear();
+              for (String child : children) {
+                added.add(prefix + child);
+              }
+            }
+          });
+    }
+    Mode mode = ctx == Mode.RESYNC ? Mode.RESYNC : Mode.LOAD;
+    for (String child : added) {
+      if (!child.equals("/zookeeper")) {
+        load(child, mode);
+      }
+    }
+    if (ctx != null) {
+      loaded();
+    }
+  }
+
+  private void deleted(String path) {
+    write(() -> arena.remove(path));
+    if (path.equals(root) && !closed) {
+      // Wait for the root to come back.
+      zk.exists(root, watcher, rootExists, null);
+    }
+  }
+
+  private void rootExists(int rc, String path, Object ctx, Stat stat) {
+    if (rc == Code.OK.intValue()) {
+      load(root, Mode.LOAD);
+    } else if (retry(rc)) {
+      zk.exists(root, watcher, rootExists, null);
+    }
+  }
+
+  private void connectionChanged(Watcher.Event.KeeperState state) {
+    switch (state) {
+      case Disconnected:
+        disconnected = true;
+        break;
+      case SyncConnected:
+        if (disconnected) {
+          disconnected = false;
+          load(root, Mode.RESYNC);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void process(WatchedEvent event) {
+    if (closed) {
+      return;
+    }
+    if (event.getType() == Watcher.Event.EventType.None) {
+      // Every watcher with a watch set is told of the state of the connection.
+      connectionChanged(event.getState());
+      return;
+    }
+    String path = event.getPath();
+    switch (event.getType()) {
+      case NodeDataChanged:
+        zk.getData(path, watcher, dataLoaded, null);
+        break;
+      case NodeChildrenChanged:
+        zk.getChildren(path, watcher, childrenLoaded, null);
+        break;
+      case NodeDeleted:
+        deleted(path);
+        break;
+      case NodeCreated:
+        load(path, Mode.LOAD);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void write(Runnable change) {
+    lock.writeLock().lock();
+    try {
+      if (!closed) {
+        change.run();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns whether a znode is in the mirror. */
+  public boolean exists(String path) {
+    lock.readLock().lock();
+    try {
+      return !closed && arena.find(path) >= 0;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the data of a znode, or null if it has none or is not in the mirror. */
+  public byte[] getData(String path) {
+    lock.readLock().lock();
+    try {
+      int id = closed ? -1 : arena.find(path);
+      return id < 0 ? null : arena.data(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the stat of a znode, or null if it is not in the mirror. */
+  public Stat getStat(String path) {
+    lock.readLock().lock();
+    try {
+      int id = closed ? -1 : arena.find(path);
+      return id < 0 ? null : arena.stat(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the children of a znode in no particular order, or null if it is not mirrored. */
+  public List<String> getChildren(String path) {
+    lock.readLock().lock();
+    try {
+      int id = closed ? -1 : arena.find(path);
+      return id < 0 ? null : arena.children(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the number of znodes in the mirror. */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return arena.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the bytes the arena has allocated. */
+  public long bytes() {
+    lock.readLock().lock();
+    try {
+      return arena.bytes();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Stops following changes and frees the arena; the session stays open. */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      closed = true;
+      arena.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package org.yao.cache;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.zookeeper.data.Stat;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+
+/**
+ * Measures the memory per znode of a namespace of <tt>nodes</tt> znodes, 1000 per parent, held
+ * the way <tt>PathChildrenCache</tt> holds children, as a map from path to {@link ChildData}, and
+ * in a {@link NodeArena} on each storage, and the rate of lookups by path. Watches and the
+ * ZooKeeper client are left out; they cost the same for both.
+ *
+ * <pre>
+ * java -Xmx2g -cp build/classes/java/main:$CLASSPATH \
+ *     org.yao.cache.SubtreeMirrorBenchmark 1000000 32
+ * </pre>
+ */
+public class SubtreeMirrorBenchmark {
+  private static final int FANOUT = 1000;
+
+  public static void main(String[] args) throws Exception {
+    int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int dataSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+    String[] paths = new String[4096];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = path(ThreadLocalRandom.current().nextInt(nodes));
+    }
+
+    run(
+        "ChildData map",
+        nodes,
+        paths,
+        () -> {
+          Map<String, ChildData> map = new ConcurrentHashMap<>();
+          populate(
+              nodes,
+              dataSize,
+              (path, data, stat) -> map.put(path, new ChildData(path, stat, data)));
+          return map;
+        },
+        (map, path) -> map.get(path).getStat());
+    for (SubtreeMirror.Storage storage : SubtreeMirror.Storage.values()) {
+      run(
+          "arena, " + storage.name().toLowerCase(),
+          nodes,
+          paths,
+          () -> {
+            NodeArena arena = new NodeArena("/bench", storage);
+            populate(nodes, dataSize, arena::put);
+            return arena;
+          },
+          (arena, path) -> arena.stat(arena.find(path)));
+    }
+  }
+
+  private interface Sink {
+    void put(String path, byte[] data, Stat stat);
+  }
+
+  private interface Builder<T> {
+    T build() throws Exception;
+  }
+
+  private static String path(int i) {
+    return String.format("/bench/p%04d/node-%08d", i / FANOUT, i);
+  }
+
+  private static void populate(int nodes, int dataSize, Sink sink) {
+    long time = 1_600_000_000_000L;
+    Stat stat = new Stat(1, 1, time, time, 0, 0, 0, 0, 0, FANOUT, 1);
+    sink.put("/bench", new byte[0], stat);
+    for (int i = 0; i < nodes; i++) {
+      if (i % FANOUT == 0) {
+        sink.put(String.format("/bench/p%04d", i / FANOUT), new byte[0], stat);
+      }
+      Stat s = new Stat(i, i, time + i, time + i, 0, 0, 0, 0, dataSize, 0, i);
+      sink.put(path(i), new byte[dataSize], s);
+    }
+  }
+
+  private static long heapUsed() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /** Returns the bytes of the direct and mapped buffers. */
+  private static long offHeapUsed() {
+    long used = 0;
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      used += pool.getMemoryUsed();
+    }
+    return used;
+  }
+
+  private static <T> void run(
+      String name,
+      int nodes,
+      String[] paths,
+      Builder<T> builder,
+      BiFunction<T, String, Stat> lookup)
+      throws Exception {
+    long heap = heapUsed();
+    long offHeap = offHeapUsed();
+    long start = System.nanoTime();
+    T cache = builder.build();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long heapPerNode = (heapUsed() - heap) / nodes;
+    long offHeapPerNode = (offHeapUsed() - offHeap) / nodes;
+
+    int lookups = 2_000_000;
+    long sum = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < lookups; i++) {
+      sum += lookup.apply(cache, paths[i & (paths.length - 1)]).getMzxid();
+    }
+    double lookupSeconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf(
+        "%-14s %4d heap + %4d off-heap bytes/znode, built in %5.2f s, %9.0f lookups/s (%d)\n",
+        name, heapPerNode, offHeapPerNode, seconds, lookups / lookupSeconds, sum % 10);
+    if (cache instanceof NodeArena) {
+      ((NodeArena) cache).close();
+    }
+  }
+}
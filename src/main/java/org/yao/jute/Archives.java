@@ -0,0 +1,50 @@
+package org.yao.jute;
+
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.Index;
+
+import java.io.IOException;
+
+/** The parts of the Jute binary format shared by the buffer-backed archives. */
+final class Archives {
+  private Archives() {}
+
+  /**
+   * Returns the number of bytes {@link org.apache.jute.BinaryOutputArchive} writes for
+   * <tt>s</tt>. It encodes every char on its own, so a surrogate pair takes 6 bytes instead of 4.
+   */
+  static int encodedLength(CharSequence s) {
+    int length = s.length();
+    int n = length;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        n += c < 0x800 ? 1 : 2;
+      }
+    }
+    return n;
+  }
+
+  /** The same limit as {@link BinaryInputArchive} puts on string and buffer lengths. */
+  static void checkLength(int length) throws IOException {
+    if (length < 0 || length > BinaryInputArchive.maxBuffer + 1024) {
+      throw new IOException("Unreasonable length = " + length);
+    }
+  }
+
+  static Index index(int size) {
+    return new Index() {
+      private int remaining = size;
+
+      @Override
+      public boolean done() {
+        return remaining <= 0;
+      }
+
+      @Override
+      public void incr() {
+        remaining--;
+      }
+    };
+  }
+}
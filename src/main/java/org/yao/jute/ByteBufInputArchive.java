@@ -0,0 +1,137 @@
+package org.yao.jute;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.Record;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Reads what {@link org.apache.jute.BinaryOutputArchive} writes straight from a Netty {@link
+ * ByteBuf}, advancing its reader index. Like {@link ByteBufferInputArchive}, strings go through a
+ * reusable scratch array and a {@link StringCache}, and reading past the end throws {@link
+ * EOFException}.
+ */
+public class ByteBufInputArchive implements InputArchive {
+  private final StringCache cache;
+  private ByteBuf buf;
+  private byte[] scratch = new byte[256];
+
+  public ByteBufInputArchive(ByteBuf buf) {
+    this(buf, new StringCache());
+  }
+
+  public ByteBufInputArchive(ByteBuf buf, StringCache cache) {
+    this.buf = buf;
+    this.cache = cache;
+  }
+
+  /**
+   * Points the archive at another buffer, so one archive, with its scratch array and cache, can
+   * serve many messages.
+   */
+  public ByteBufInputArchive reset(ByteBuf buf) {
+    this.buf = buf;
+    return this;
+  }
+
+  private void need(int n) throws EOFException {
+    if (buf.readableBytes() < n) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public byte readByte(String tag) throws IOException {
+    need(1);
+    return buf.readByte();
+  }
+
+  @Override
+  public boolean readBool(String tag) throws IOException {
+    need(1);
+    return buf.readByte() != 0;
+  }
+
+  @Override
+  public int readInt(String tag) throws IOException {
+    need(4);
+    return buf.readInt();
+  }
+
+  @Override
+  public long readLong(String tag) throws IOException {
+    need(8);
+    return buf.readLong();
+  }
+
+  @Override
+  public float readFloat(String tag) throws IOException {
+    need(4);
+    return buf.readFloat();
+  }
+
+  @Override
+  public double readDouble(String tag) throws IOException {
+    need(8);
+    return buf.readDouble();
+  }
+
+  @Override
+  public String readString(String tag) throws IOException {
+    int length = readInt(tag);
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    need(length);
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length << 1)];
+    }
+    buf.readBytes(scratch, 0, length);
+    return cache.decode(scratch, length);
+  }
+
+  @Override
+  public byte[] readBuffer(String tag) throws IOException {
+    int length = readInt(tag);
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    need(length);
+    byte[] b = new byte[length];
+    buf.readBytes(b);
+    return b;
+  }
+
+  @Override
+  public void readRecord(Record r, String tag) throws IOException {
+    r.deserialize(this, tag);
+  }
+
+  @Override
+  public void startRecord(String tag) {}
+
+  @Override
+  public void endRecord(String tag) {}
+
+  @Override
+  public Index startVector(String tag) throws IOException {
+    int size = readInt(tag);
+    return size == -1 ? null : Archives.index(size);
+  }
+
+  @Override
+  public void endVector(String tag) {}
+
+  @Override
+  public Index startMap(String tag) throws IOException {
+    return Archives.index(readInt(tag));
+  }
+
+  @Override
+  public void endMap(String tag) {}
+}
@@ -0,0 +1,124 @@
+package org.yao.jute;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Writes the same bytes as {@link org.apache.jute.BinaryOutputArchive} straight into a Netty
+ * {@link ByteBuf}, which grows as needed. ASCII strings are copied by {@link
+ * ByteBuf#writeCharSequence}, other strings are encoded by {@link JuteBuffers} into the buffer.
+ */
+public class ByteBufOutputArchive implements OutputArchive {
+  private ByteBuf buf;
+
+  public ByteBufOutputArchive(ByteBuf buf) {
+    this.buf = buf;
+  }
+
+  /** Points the archive at another buffer, so one archive can serve many messages. */
+  public ByteBufOutputArchive reset(ByteBuf buf) {
+    this.buf = buf;
+    return this;
+  }
+
+  @Override
+  public void writeByte(byte b, String tag) {
+    buf.writeByte(b);
+  }
+
+  @Override
+  public void writeBool(boolean b, String tag) {
+    buf.writeBoolean(b);
+  }
+
+  @Override
+  public void writeInt(int i, String tag) {
+    buf.writeInt(i);
+  }
+
+  @Override
+  public void writeLong(long l, String tag) {
+    buf.writeLong(l);
+  }
+
+  @Override
+  public void writeFloat(float f, String tag) {
+    buf.writeFloat(f);
+  }
+
+  @Override
+  public void writeDouble(double d, String tag) {
+    buf.writeDouble(d);
+  }
+
+  @Override
+  public void writeString(String s, String tag) {
+    if (s == null) {
+      buf.writeInt(-1);
+      return;
+    }
+    int length = s.length();
+    int n = Archives.encodedLength(s);
+    buf.ensureWritable(4 + n);
+    buf.writeInt(n);
+    if (n == length) {
+      buf.writeCharSequence(s, CharsetUtil.US_ASCII);
+      return;
+    }
+    int index = buf.writerIndex();
+    if (buf.nioBufferCount() == 1) {
+      JuteBuffers.putChars(buf.internalNioBuffer(index, n), s);
+      buf.writerIndex(index + n);
+    } else {
+      // A composite buffer has no single NIO buffer to encode into.
+      ByteBuffer encoded = ByteBuffer.allocate(n);
+      JuteBuffers.putChars(encoded, s);
+      buf.writeBytes(encoded.array());
+    }
+  }
+
+  @Override
+  public void writeBuffer(byte[] b, String tag) {
+    if (b == null) {
+      buf.writeInt(-1);
+      return;
+    }
+    buf.ensureWritable(4 + b.length);
+    buf.writeInt(b.length);
+    buf.writeBytes(b);
+  }
+
+  @Override
+  public void writeRecord(Record r, String tag) throws IOException {
+    r.serialize(this, tag);
+  }
+
+  @Override
+  public void startRecord(Record r, String tag) {}
+
+  @Override
+  public void endRecord(Record r, String tag) {}
+
+  @Override
+  public void startVector(List<?> v, String tag) {
+    buf.writeInt(v == null ? -1 : v.size());
+  }
+
+  @Override
+  public void endVector(List<?> v, String tag) {}
+
+  @Override
+  public void startMap(TreeMap<?, ?> v, String tag) {
+    buf.writeInt(v.size());
+  }
+
+  @Override
+  public void endMap(TreeMap<?, ?> v, String tag) {}
+}
@@ -0,0 +1,130 @@
+package org.yao.jute;
+
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.Record;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads what {@link org.apache.jute.BinaryOutputArchive} writes straight from a heap or direct
+ * {@link ByteBuffer}. String bytes are copied into a scratch array that is reused for the life of
+ * the archive and decoded through a {@link StringCache}, so repeated strings cost no allocation.
+ * Reading past the limit throws {@link EOFException} like a stream would.
+ */
+public class ByteBufferInputArchive implements InputArchive {
+  private final ByteBuffer bb;
+  private final StringCache cache;
+  private byte[] scratch = new byte[256];
+
+  /** Reads from the position of <tt>bb</tt>, which is switched to big-endian. */
+  public ByteBufferInputArchive(ByteBuffer bb) {
+    this(bb, new StringCache());
+  }
+
+  public ByteBufferInputArchive(ByteBuffer bb, StringCache cache) {
+    this.bb = bb.order(ByteOrder.BIG_ENDIAN);
+    this.cache = cache;
+  }
+
+  private void need(int n) throws EOFException {
+    if (bb.remaining() < n) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public byte readByte(String tag) throws IOException {
+    need(1);
+    return bb.get();
+  }
+
+  @Override
+  public boolean readBool(String tag) throws IOException {
+    need(1);
+    return bb.get() != 0;
+  }
+
+  @Override
+  public int readInt(String tag) throws IOException {
+    need(4);
+    return bb.getInt();
+  }
+
+  @Override
+  public long readLong(String tag) throws IOException {
+    need(8);
+    return bb.getLong();
+  }
+
+  @Override
+  public float readFloat(String tag) throws IOException {
+    need(4);
+    return bb.getFloat();
+  }
+
+  @Override
+  public double readDouble(String tag) throws IOException {
+    need(8);
+    return bb.getDouble();
+  }
+
+  @Override
+  public String readString(String tag) throws IOException {
+    int length = readInt(tag);
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    need(length);
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length << 1)];
+    }
+    bb.get(scratch, 0, length);
+    return cache.decode(scratch, length);
+  }
+
+  @Override
+  public byte[] readBuffer(String tag) throws IOException {
+    int length = readInt(tag);
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    need(length);
+    byte[] b = new byte[length];
+    bb.get(b);
+    return b;
+  }
+
+  @Override
+  public void readRecord(Record r, String tag) throws IOException {
+    r.deserialize(this, tag);
+  }
+
+  @Override
+  public void startRecord(String tag) {}
+
+  @Override
+  public void endRecord(String tag) {}
+
+  @Override
+  public Index startVector(String tag) throws IOException {
+    int size = readInt(tag);
+    return size == -1 ? null : Archives.index(size);
+  }
+
+  @Override
+  public void endVector(String tag) {}
+
+  @Override
+  public Index startMap(String tag) throws IOException {
+    return Archives.index(readInt(tag));
+  }
+
+  @Override
+  public void endMap(String tag) {}
+}
@@ -0,0 +1,127 @@
+package org.yao.jute;
+
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Writes the same bytes as {@link org.apache.jute.BinaryOutputArchive} straight into a heap or
+ * direct {@link ByteBuffer}, without a stream or an intermediate buffer for strings. When the
+ * buffer is full, it is replaced by one twice as large of the same kind, so always get the result
+ * from {@link #buffer()}.
+ */
+public class ByteBufferOutputArchive implements OutputArchive {
+  private ByteBuffer bb;
+
+  /** Writes from the position of <tt>bb</tt>, which is switched to big-endian. */
+  public ByteBufferOutputArchive(ByteBuffer bb) {
+    this.bb = bb.order(ByteOrder.BIG_ENDIAN);
+  }
+
+  /** Returns the buffer written so far; its position is the end of the data. */
+  public ByteBuffer buffer() {
+    return bb;
+  }
+
+  private void ensure(int n) {
+    if (bb.remaining() >= n) {
+      return;
+    }
+    int capacity = Math.max(bb.capacity() << 1, bb.position() + n);
+    ByteBuffer larger =
+        bb.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    bb.flip();
+    bb = larger.put(bb);
+  }
+
+  @Override
+  public void writeByte(byte b, String tag) {
+    ensure(1);
+    bb.put(b);
+  }
+
+  @Override
+  public void writeBool(boolean b, String tag) {
+    ensure(1);
+    bb.put((byte) (b ? 1 : 0));
+  }
+
+  @Override
+  public void writeInt(int i, String tag) {
+    ensure(4);
+    bb.putInt(i);
+  }
+
+  @Override
+  public void writeLong(long l, String tag) {
+    ensure(8);
+    bb.putLong(l);
+  }
+
+  @Override
+  public void writeFloat(float f, String tag) {
+    ensure(4);
+    bb.putFloat(f);
+  }
+
+  @Override
+  public void writeDouble(double d, String tag) {
+    ensure(8);
+    bb.putDouble(d);
+  }
+
+  @Override
+  public void writeString(String s, String tag) {
+    if (s == null) {
+      writeInt(-1, tag);
+      return;
+    }
+    int n = Archives.encodedLength(s);
+    ensure(4 + n);
+    bb.putInt(n);
+    JuteBuffers.putChars(bb, s);
+  }
+
+  @Override
+  public void writeBuffer(byte[] b, String tag) {
+    if (b == null) {
+      writeInt(-1, tag);
+      return;
+    }
+    ensure(4 + b.length);
+    bb.putInt(b.length);
+    bb.put(b);
+  }
+
+  @Override
+  public void writeRecord(Record r, String tag) throws IOException {
+    r.serialize(this, tag);
+  }
+
+  @Override
+  public void startRecord(Record r, String tag) {}
+
+  @Override
+  public void endRecord(Record r, String tag) {}
+
+  @Override
+  public void startVector(List<?> v, String tag) {
+    writeInt(v == null ? -1 : v.size(), tag);
+  }
+
+  @Override
+  public void endVector(List<?> v, String tag) {}
+
+  @Override
+  public void startMap(TreeMap<?, ?> v, String tag) {
+    writeInt(v.size(), tag);
+  }
+
+  @Override
+  public void endMap(TreeMap<?, ?> v, String tag) {}
+}
@@ -0,0 +1,95 @@
+package org.yao.jute;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The string and buffer encodings of the Jute binary format on a big-endian {@link ByteBuffer},
+ * for the serializers generated for {@link JuteRecord} classes.
+ */
+public final class JuteBuffers {
+  private JuteBuffers() {}
+
+  /** Returns the number of bytes {@link #writeString} writes for <tt>s</tt>. */
+  public static int sizeOf(String s) {
+    return s == null ? 4 : 4 + Archives.encodedLength(s);
+  }
+
+  /** Returns the number of bytes {@link #writeBuffer} writes for <tt>b</tt>. */
+  public static int sizeOf(byte[] b) {
+    return b == null ? 4 : 4 + b.length;
+  }
+
+  public static void writeString(ByteBuffer bb, String s) {
+    if (s == null) {
+      bb.putInt(-1);
+      return;
+    }
+    bb.putInt(Archives.encodedLength(s));
+    putChars(bb, s);
+  }
+
+  /**
+   * Encodes every char of <tt>s</tt> on its own, as {@link org.apache.jute.BinaryOutputArchive}
+   * does, into {@link Archives#encodedLength} bytes.
+   */
+  static void putChars(ByteBuffer bb, String s) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        bb.put((byte) c);
+      } else if (c < 0x800) {
+        bb.put((byte) (0xc0 | (c >> 6)));
+        bb.put((byte) (0x80 | (c & 0x3f)));
+      } else {
+        bb.put((byte) (0xe0 | (c >> 12)));
+        bb.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        bb.put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+  }
+
+  public static void writeBuffer(ByteBuffer bb, byte[] b) {
+    if (b == null) {
+      bb.putInt(-1);
+      return;
+    }
+    bb.putInt(b.length);
+    bb.put(b);
+  }
+
+  public static String readString(ByteBuffer bb) throws IOException {
+    int length = bb.getInt();
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    if (bb.remaining() < length) {
+      throw new BufferUnderflowException();
+    }
+    String s;
+    if (bb.hasArray()) {
+      s = new String(bb.array(), bb.arrayOffset() + bb.position(), length, StandardCharsets.UTF_8);
+      bb.position(bb.position() + length);
+    } else {
+      byte[] b = new byte[length];
+      bb.get(b);
+      s = new String(b, StandardCharsets.UTF_8);
+    }
+    return s;
+  }
+
+  public static byte[] readBuffer(ByteBuffer bb) throws IOException {
+    int length = bb.getInt();
+    if (length == -1) {
+      return null;
+    }
+    Archives.checkLength(length);
+    byte[] b = new byte[length];
+    bb.get(b);
+    return b;
+  }
+}
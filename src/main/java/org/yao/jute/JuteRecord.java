@@ -0,0 +1,26 @@
+package org.yao.jute;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks the processor in <tt>src/processor</tt> to generate a serializer for a class. For a class
+ * <tt>Foo</tt> it generates <tt>FooSerializer</tt> in the same package
+ * (<tt>Outer_FooSerializer</tt> for a nested class), with static <tt>size</tt>,
+ * <tt>serialize</tt> and <tt>deserialize</tt> methods working on a big-endian
+ * {@link java.nio.ByteBuffer}. The bytes are those a hand-written {@link org.apache.jute.Record}
+ * writing the same fields in declaration order would produce through
+ * {@link org.apache.jute.BinaryOutputArchive}.
+ *
+ * <p>The class needs a non-private no-arg constructor and its fields must be non-private and not
+ * final; static and transient fields are skipped. Fields declared in a superclass are not
+ * serialized, so a superclass with any is rejected. Supported field types are the primitives
+ * <tt>boolean</tt>, <tt>byte</tt>, <tt>int</tt>, <tt>long</tt>, <tt>float</tt> and
+ * <tt>double</tt>, <tt>String</tt>, <tt>byte[]</tt>, other <tt>@JuteRecord</tt> classes, which
+ * must not be null, and <tt>java.util.List</tt>s of any of these or of boxed primitives.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface JuteRecord {}
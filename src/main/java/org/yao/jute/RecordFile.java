@@ -0,0 +1,260 @@
+package org.yao.jute;
+
+import org.apache.jute.Record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A read-only view of a file of length-prefixed Jute records, as written by {@link
+ * RecordFileWriter}: each record is a big-endian int length followed by that many bytes.
+ *
+ * <p>The file is memory-mapped in segments of at most {@link #SEGMENT_SIZE} bytes, each starting
+ * at a record boundary, so files larger than 2 GiB work. Opening the file walks the lengths once
+ * and keeps the position of every {@link #STRIDE}th record, so the index costs 8 bytes per
+ * {@value #STRIDE} records. Nothing is decoded until a record is accessed: {@link #get} seeks to
+ * the nearest indexed record and skips forward over lengths. {@link #records} streams the records
+ * and splits at indexed records, so a parallel stream decodes disjoint ranges on ForkJoinPool
+ * workers.
+ */
+public class RecordFile implements Closeable {
+  /** Every STRIDEth record is indexed. */
+  public static final int STRIDE = 64;
+
+  static final int SEGMENT_SIZE = 1 << 30;
+
+  private final FileChannel channel;
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  // The segment in the high 32 bits and the position in the low 32 bits of every STRIDEth record.
+  private long[] index = new long[1024];
+  private long size;
+
+  public RecordFile(Path path) throws IOException {
+    this(path, SEGMENT_SIZE);
+  }
+
+  RecordFile(Path path, int segmentSize) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      buildIndex(segmentSize);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private void buildIndex(int segmentSize) throws IOException {
+    long fileSize = channel.size();
+    long base = 0;
+    while (base < fileSize) {
+      MappedByteBuffer segment =
+          channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(segmentSize, fileSize - base));
+      int s = segments.size();
+      int position = 0;
+      while (segment.capacity() - position >= 4) {
+        int length = segment.getInt(position);
+        if (length < 0) {
+          throw new IOException("negative length " + length + " at offset " + (base + position));
+        }
+        long end = (long) position + 4 + length;
+        if (end > segment.capacity()) {
+          if (position == 0) {
+            throw new IOException("truncated record at offset " + base);
+          }
+          break;
+        }
+        if (size % STRIDE == 0) {
+          int i = (int) (size / STRIDE);
+          if (i == index.length) {
+            index = Arrays.copyOf(index, i * 2);
+          }
+          index[i] = ((long) s << 32) | position;
+        }
+        size++;
+        position = (int) end;
+      }
+      if (position == 0) {
+        throw new IOException("truncated record at offset " + base);
+      }
+      segment.limit(position);
+      segments.add(segment);
+      base += position;
+    }
+  }
+
+  /** Returns the number of records. */
+  public long size() {
+    return size;
+  }
+
+  /** Decodes record <tt>i</tt> into <tt>record</tt> and returns it. */
+  public <R extends Record> R get(long i, R record) throws IOException {
+    Cursor cursor = new Cursor(new StringCache());
+    cursor.seek(i);
+    cursor.next(record);
+    return record;
+  }
+
+  /**
+   * Returns a stream decoding every record into a new instance from <tt>factory</tt>. The stream
+   * can be made parallel; see {@link #forEach} for running it in a given pool.
+   */
+  public <R extends Record> Stream<R> records(Supplier<? extends R> factory) {
+    return StreamSupport.stream(new RecordSpliterator<>(factory, 0, size), false);
+  }
+
+  /**
+   * Decodes all records in parallel on the workers of <tt>pool</tt>, calling <tt>action</tt>
+   * concurrently and in no particular order.
+   */
+  public <R extends Record> void forEach(
+      ForkJoinPool pool, Supplier<? extends R> factory, Consumer<? super R> action)
+      throws IOException, InterruptedException {
+    try {
+      pool.submit(() -> records(factory).parallel().forEach(action)).get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /** Walks the records from some position on, with its own buffers and string cache. */
+  private class Cursor {
+    private final ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+    private final ByteBufferInputArchive[] archives = new ByteBufferInputArchive[segments.size()];
+    private final StringCache cache;
+    private int segment;
+    private long next;
+
+    Cursor(StringCache cache) {
+      this.cache = cache;
+    }
+
+    private ByteBuffer buffer(int s) {
+      if (buffers[s] == null) {
+        buffers[s] = segments.get(s).duplicate();
+        archives[s] = new ByteBufferInputArchive(buffers[s], cache);
+      }
+      return buffers[s];
+    }
+
+    void seek(long i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException("record " + i + " of " + size);
+      }
+      long entry = index[(int) (i / STRIDE)];
+      segment = (int) (entry >>> 32);
+      ByteBuffer bb = buffer(segment);
+      bb.position((int) entry);
+      for (long skip = i % STRIDE; skip > 0; skip--) {
+        bb = advance(bb);
+        bb.position(bb.position() + 4 + bb.getInt(bb.position()));
+      }
+      next = i;
+    }
+
+    private ByteBuffer advance(ByteBuffer bb) {
+      if (bb.hasRemaining()) {
+        return bb;
+      }
+      segment++;
+      ByteBuffer b = buffer(segment);
+      b.position(0);
+      return b;
+    }
+
+    void next(Record record) throws IOException {
+      ByteBuffer bb = advance(buffer(segment));
+      int length = bb.getInt();
+      int start = bb.position();
+      record.deserialize(archives[segment], "record");
+      if (bb.position() - start != length) {
+        throw new IOException(
+            "record " + next + " has " + length + " bytes but " + (bb.position() - start)
+                + " were decoded");
+      }
+      next++;
+    }
+  }
+
+  private class RecordSpliterator<R extends Record> implements Spliterator<R> {
+    private final Supplier<? extends R> factory;
+    private long from;
+    private final long to;
+    private Cursor cursor;
+
+    RecordSpliterator(Supplier<? extends R> factory, long from, long to) {
+      this.factory = factory;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+      if (from >= to) {
+        return false;
+      }
+      if (cursor == null) {
+        cursor = new Cursor(new StringCache());
+        cursor.seek(from);
+      }
+      R record = factory.get();
+      try {
+        cursor.next(record);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      from++;
+      action.accept(record);
+      return true;
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+      if (cursor != null) {
+        return null;
+      }
+      // Split at an indexed record, so both halves start with a cheap seek.
+      long mid = (from + (to - from) / 2) / STRIDE * STRIDE;
+      if (mid <= from) {
+        return null;
+      }
+      RecordSpliterator<R> prefix = new RecordSpliterator<>(factory, from, mid);
+      from = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+  }
+}
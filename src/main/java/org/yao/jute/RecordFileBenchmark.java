@@ -0,0 +1,83 @@
+package org.yao.jute;
+
+import org.apache.jute.BinaryInputArchive;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.proto.CreateRequest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares decoding a file of length-prefixed {@link CreateRequest}s through a stream with {@link
+ * RecordFile}, sequentially and in parallel. The file is written first if it does not exist.
+ *
+ * <p>Usage: <tt>RecordFileBenchmark file [records] [threads]</tt>
+ */
+public class RecordFileBenchmark {
+  public static void main(String[] args) throws Exception {
+    Path path = Paths.get(args[0]);
+    long records = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000;
+    int threads =
+        args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    if (!Files.exists(path)) {
+      byte[] data = new byte[100];
+      try (RecordFileWriter writer = new RecordFileWriter(path)) {
+        for (long i = 0; i < records; i++) {
+          String name = String.format("/app/config/node-%06d", i % 100_000);
+          writer.append(
+              new CreateRequest(name, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT.toFlag()));
+        }
+      }
+    }
+    long bytes = Files.size(path);
+
+    long start = System.nanoTime();
+    long n = 0;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+      DataInputStream din = new DataInputStream(in);
+      BinaryInputArchive ia = BinaryInputArchive.getArchive(in);
+      while (true) {
+        try {
+          din.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        new CreateRequest().deserialize(ia, "record");
+        n++;
+      }
+    }
+    report("stream", n, bytes, start);
+
+    start = System.nanoTime();
+    try (RecordFile file = new RecordFile(path)) {
+      report("index", file.size(), bytes, start);
+
+      start = System.nanoTime();
+      // The filter keeps count() from skipping the traversal of a sized stream.
+      long decoded = file.records(CreateRequest::new).filter(r -> r.getPath() != null).count();
+      report("mmap", decoded, bytes, start);
+
+      LongAdder count = new LongAdder();
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      start = System.nanoTime();
+      file.forEach(pool, CreateRequest::new, r -> count.increment());
+      report("mmap, " + threads + " threads", count.sum(), bytes, start);
+      pool.shutdown();
+    }
+  }
+
+  private static void report(String name, long records, long bytes, long start) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf(
+        "%s: %d records in %.2f s, %.0f records/s, %.0f MiB/s\n",
+        name, records, seconds, records / seconds, bytes / seconds / (1 << 20));
+  }
+}
@@ -0,0 +1,36 @@
+package org.yao.jute;
+
+import org.apache.jute.Record;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Writes a file of length-prefixed Jute records for {@link RecordFile}. */
+public class RecordFileWriter implements Closeable {
+  private final OutputStream out;
+  private final ByteBufferOutputArchive oa = new ByteBufferOutputArchive(ByteBuffer.allocate(4096));
+
+  public RecordFileWriter(Path path) throws IOException {
+    out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+  }
+
+  public void append(Record record) throws IOException {
+    ByteBuffer bb = oa.buffer();
+    bb.clear();
+    bb.putInt(0);
+    record.serialize(oa, "record");
+    bb = oa.buffer();
+    bb.putInt(0, bb.position() - 4);
+    out.write(bb.array(), 0, bb.position());
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,51 @@
+package org.yao.jute;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Remembers the strings decoded from short byte sequences, so that decoding the same path or name
+ * again returns the cached {@link String} without allocating. The cache is direct-mapped by the
+ * hash of the bytes: a new string simply replaces whatever shared its slot. It is not thread-safe;
+ * use one per thread, or one per archive.
+ */
+public final class StringCache {
+  /** Longer strings are decoded but not cached. */
+  public static final int MAX_LENGTH = 128;
+
+  private final byte[][] keys;
+  private final String[] values;
+  private final int mask;
+
+  public StringCache() {
+    this(1024);
+  }
+
+  /** @param size the number of slots, rounded up to a power of two */
+  public StringCache(int size) {
+    int slots = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+    keys = new byte[slots][];
+    values = new String[slots];
+    mask = slots - 1;
+  }
+
+  /** Decodes the first <tt>length</tt> bytes of <tt>bytes</tt> as UTF-8. */
+  public String decode(byte[] bytes, int length) {
+    if (length > MAX_LENGTH) {
+      return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    int h = 0;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    int slot = (h ^ (h >>> 16)) & mask;
+    byte[] key = keys[slot];
+    if (key != null && Arrays.equals(key, 0, key.length, bytes, 0, length)) {
+      return values[slot];
+    }
+    String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+    keys[slot] = Arrays.copyOf(bytes, length);
+    values[slot] = value;
+    return value;
+  }
+}
@@ -0,0 +1,99 @@
+package org.yao.jute;
+
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A map from strings to ints which stores its values unboxed and serializes like a Jute
+ * <tt>map&lt;ustring, int&gt;</tt>. Entries are iterated by index in insertion order, or in key
+ * order after {@link #sort()}, which writes the same bytes as a <tt>TreeMap&lt;String,
+ * Integer&gt;</tt> with the same entries. Not thread-safe.
+ */
+public final class StringIntMap extends StringKeyedMap {
+  private int[] values;
+
+  public StringIntMap() {
+    this(16);
+  }
+
+  public StringIntMap(int expectedSize) {
+    super(expectedSize);
+    values = new int[keys.length];
+  }
+
+  @Override
+  void growValues(int capacity) {
+    values = Arrays.copyOf(values, capacity);
+  }
+
+  @Override
+  void swapValues(int i, int j) {
+    int value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  public void put(String key, int value) {
+    // Not values[insert(key)]: the array is loaded before insert may grow it.
+    int i = insert(key);
+    values[i] = value;
+  }
+
+  /** Adds <tt>delta</tt> to the value of <tt>key</tt>, which starts at 0, and returns the sum. */
+  public int add(String key, int delta) {
+    int size = this.size;
+    int i = insert(key);
+    return values[i] = i == size ? delta : values[i] + delta;
+  }
+
+  public int get(String key, int defaultValue) {
+    int i = indexOf(key);
+    return i < 0 ? defaultValue : values[i];
+  }
+
+  /** Returns the value of entry <tt>i</tt>, where <tt>0 &lt;= i &lt; size()</tt>. */
+  public int valueAt(int i) {
+    return values[Objects.checkIndex(i, size)];
+  }
+
+  /**
+   * Writes the entries in their current order. Like {@link
+   * org.apache.jute.BinaryOutputArchive#startMap}, which needs a <tt>TreeMap</tt> to take the size
+   * from, the map starts with the number of entries.
+   */
+  public void serialize(OutputArchive oa, String tag) throws IOException {
+    oa.writeInt(size, tag);
+    for (int i = 0; i < size; i++) {
+      oa.writeString(keys[i], "key");
+      oa.writeInt(values[i], "value");
+    }
+    oa.endMap(null, tag);
+  }
+
+  /** Replaces the entries with those read from <tt>ia</tt>, in the order they were written. */
+  public void deserialize(InputArchive ia, String tag) throws IOException {
+    clear();
+    for (Index index = ia.startMap(tag); !index.done(); index.incr()) {
+      String key = ia.readString("key");
+      if (key == null) {
+        throw new IOException("Null map key");
+      }
+      put(key, ia.readInt("value"));
+    }
+    ia.endMap(tag);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < size; i++) {
+      sb.append(i == 0 ? "" : ", ").append(keys[i]).append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+}
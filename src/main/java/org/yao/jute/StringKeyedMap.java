@@ -0,0 +1,156 @@
+package org.yao.jute;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The keys of {@link StringIntMap} and {@link StringLongMap}. Keys are kept densely in insertion
+ * order, so entry <tt>i</tt> is <tt>keys[i]</tt> and <tt>values[i]</tt> of the subclass, and an
+ * open-addressing table of indexes into them finds a key with linear probing.
+ */
+abstract class StringKeyedMap {
+  String[] keys;
+  int size;
+  /** The index of a key plus one, or 0 for an empty slot. Never more than half full. */
+  private int[] slots;
+
+  StringKeyedMap(int expectedSize) {
+    int capacity = Math.max(expectedSize, 4);
+    keys = new String[capacity];
+    slots = new int[tableSize(capacity)];
+  }
+
+  private static int tableSize(int capacity) {
+    return Integer.highestOneBit(capacity * 2 - 1) << 1;
+  }
+
+  /** Grows the values to <tt>capacity</tt> entries, keeping the first {@link #size}. */
+  abstract void growValues(int capacity);
+
+  abstract void swapValues(int i, int j);
+
+  private int slot(String key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & (slots.length - 1);
+  }
+
+  /** Returns the index of <tt>key</tt>, or -1 if it is absent. */
+  final int indexOf(String key) {
+    int mask = slots.length - 1;
+    for (int s = slot(key); ; s = (s + 1) & mask) {
+      int i = slots[s] - 1;
+      if (i < 0) {
+        return -1;
+      }
+      if (keys[i].equals(key)) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of <tt>key</tt>, adding it at index {@link #size} first if it is absent. The
+   * value of an added key is whatever its index held before; callers set it.
+   */
+  final int insert(String key) {
+    Objects.requireNonNull(key, "key");
+    int mask = slots.length - 1;
+    int s = slot(key);
+    for (; slots[s] != 0; s = (s + 1) & mask) {
+      int i = slots[s] - 1;
+      if (keys[i].equals(key)) {
+        return i;
+      }
+    }
+    if (size == keys.length) {
+      int capacity = keys.length * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      growValues(capacity);
+      slots = new int[tableSize(capacity)];
+      rehash();
+      return insert(key);
+    }
+    keys[size] = key;
+    slots[s] = ++size;
+    return size - 1;
+  }
+
+  private void rehash() {
+    Arrays.fill(slots, 0);
+    int mask = slots.length - 1;
+    for (int i = 0; i < size; i++) {
+      int s = slot(keys[i]);
+      while (slots[s] != 0) {
+        s = (s + 1) & mask;
+      }
+      slots[s] = i + 1;
+    }
+  }
+
+  public final int size() {
+    return size;
+  }
+
+  public final boolean isEmpty() {
+    return size == 0;
+  }
+
+  public final boolean containsKey(String key) {
+    return indexOf(key) >= 0;
+  }
+
+  /** Returns the key of entry <tt>i</tt>, where <tt>0 &lt;= i &lt; size()</tt>. */
+  public final String keyAt(int i) {
+    Objects.checkIndex(i, size);
+    return keys[i];
+  }
+
+  public final void clear() {
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+  /**
+   * Puts the entries in key order, the order a <tt>TreeMap</tt> iterates and therefore serializes
+   * them in. Entries put afterwards are again appended.
+   */
+  public final void sort() {
+    sort(0, size - 1);
+    rehash();
+  }
+
+  private void sort(int lo, int hi) {
+    while (lo < hi) {
+      String pivot = keys[(lo + hi) >>> 1];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (keys[i].compareTo(pivot) < 0) {
+          i++;
+        }
+        while (keys[j].compareTo(pivot) > 0) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i++, j--);
+        }
+      }
+      // Recurse into the smaller half, loop on the larger one.
+      if (j - lo < hi - i) {
+        sort(lo, j);
+        lo = i;
+      } else {
+        sort(i, hi);
+        hi = j;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    String key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    swapValues(i, j);
+  }
+}
@@ -0,0 +1,59 @@
+package org.yao.netty;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte and message counters shared by all the channels of a benchmark. The counters are striped
+ * {@link LongAdder}s, so event loops can update them without contending on one cache line.
+ */
+public class TrafficCounter {
+  private final String name;
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder messages = new LongAdder();
+  // Only accessed by the reporting thread.
+  private long lastBytes;
+  private long lastMessages;
+  private long lastNanos = System.nanoTime();
+
+  public TrafficCounter(String name) {
+    this.name = name;
+  }
+
+  public void add(long bytes, long messages) {
+    this.bytes.add(bytes);
+    this.messages.add(messages);
+  }
+
+  public long bytes() {
+    return bytes.sum();
+  }
+
+  public long messages() {
+    return messages.sum();
+  }
+
+  /** Returns the throughput since the previous call. */
+  public synchronized String report() {
+    long now = System.nanoTime();
+    long b = bytes.sum();
+    long m = messages.sum();
+    double seconds = (now - lastNanos) / 1e9;
+    String report =
+        String.format(
+            "%s: %.2f MiB/s, %.0f msg/s",
+            name, (b - lastBytes) / seconds / (1 << 20), (m - lastMessages) / seconds);
+    lastBytes = b;
+    lastMessages = m;
+    lastNanos = now;
+    return report;
+  }
+
+  /** Prints {@link #report()} periodically, e.g. on an event loop group. */
+  public ScheduledFuture<?> printEvery(ScheduledExecutorService executor, long seconds) {
+    return executor.scheduleAtFixedRate(
+        () -> System.out.println(report()), seconds, seconds, TimeUnit.SECONDS);
+  }
+}
@@ -8,8 +8,17 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.yao.netty.TrafficCounter;
 
+/**
+ * Discards any incoming data. With <tt>-Dsink</tt>, the data is dropped by {@link SinkHandler}
+ * without being printed, and the global throughput is reported every <tt>-Dinterval</tt> seconds.
+ */
 public class DiscardServer {
+  static final int PORT = Integer.parseInt(System.getProperty("port", "8080"));
+  static final boolean SINK = System.getProperty("sink") != null;
+  static final int INTERVAL = Integer.parseInt(System.getProperty("interval", "1"));
+
   private int port;
 
   public DiscardServer(int port) {
@@ -19,6 +28,7 @@ public class DiscardServer {
   public void run() throws Exception {
     EventLoopGroup bossGroup = new NioEventLoopGroup();
     EventLoopGroup workerGroup = new NioEventLoopGroup();
+    TrafficCounter counter = new TrafficCounter("discard");
 
     try {
       ServerBootstrap b = new ServerBootstrap();
@@ -27,13 +37,20 @@ public class DiscardServer {
           .childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch)  {
-              ch.pipeline().addLast(new DiscardServerHandler());
+              if (SINK) {
+                ch.pipeline().addLast(new SinkHandler(counter));
+              } else {
+                ch.pipeline().addLast(new DiscardServerHandler());
+              }
             }
           })
           .option(ChannelOption.SO_BACKLOG, 128)
           .childOption(ChannelOption.SO_KEEPALIVE, true);
 
       ChannelFuture f = b.bind(port).sync();
+      if (SINK) {
+        counter.printEvery(workerGroup, INTERVAL);
+      }
 
       f.channel().closeFuture().sync();
     } finally {
@@ -43,7 +60,6 @@ public class DiscardServer {
   }
 
   public static void main(String[] args) throws Exception {
-    int port = 8080;
-    new DiscardServer(port).run();
+    new DiscardServer(PORT).run();
   }
 }
@@ -0,0 +1,52 @@
+package org.yao.netty.discard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import org.yao.netty.TrafficCounter;
+
+/**
+ * Discards received data without looking at it. A buffer is only measured with {@link
+ * ByteBuf#readableBytes()} and released. Every channel has its own handler whose counters are
+ * plain fields updated by the channel's event loop, while the global counter is shared by all
+ * channels. A "message" is one <tt>channelRead</tt>, i.e. one socket read.
+ */
+public class SinkHandler extends ChannelInboundHandlerAdapter {
+  private final TrafficCounter counter;
+  private long start;
+  private long bytes;
+  private long messages;
+
+  public SinkHandler(TrafficCounter counter) {
+    this.counter = counter;
+  }
+
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) {
+    start = System.nanoTime();
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    int n = ((ByteBuf) msg).readableBytes();
+    ReferenceCountUtil.release(msg);
+    bytes += n;
+    messages++;
+    counter.add(n, 1);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf(
+        "%s closed: %d bytes, %d messages, %.2f MiB/s\n",
+        ctx.channel().remoteAddress(), bytes, messages, bytes / seconds / (1 << 20));
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    cause.printStackTrace();
+    ctx.close();
+  }
+}
@@ -0,0 +1,50 @@
+package org.yao.netty.echo;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Handler implementation for the echo server which stops reading from a client that does not read
+ * its echoes. When the outbound buffer of a channel goes above the high water mark, the channel
+ * becomes unwritable and <tt>autoRead</tt> is turned off, so nothing more is read from the socket.
+ * Once the outbound buffer drains below the low water mark, {@link #channelWritabilityChanged}
+ * turns <tt>autoRead</tt> back on. The memory held for a client is therefore bounded by the high
+ * water mark plus one read, instead of by how much the client sends.
+ */
+@Sharable
+public class BackpressureEchoServerHandler extends ChannelInboundHandlerAdapter {
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    ctx.write(msg);
+    Channel channel = ctx.channel();
+    if (!channel.isWritable()) {
+      // Stop the current read loop too, not only the next one.
+      channel.config().setAutoRead(false);
+      ctx.flush();
+    }
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    ctx.flush();
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+    Channel channel = ctx.channel();
+    if (channel.isWritable()) {
+      channel.config().setAutoRead(true);
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    // Close the connection when an exception is raised.
+    cause.printStackTrace();
+    ctx.close();
+  }
+}
@@ -0,0 +1,63 @@
+package org.yao.netty.echo;
+
+import org.yao.bench.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stresses the accept path of an echo server. Every client opens a connection, exchanges one
+ * message, closes the connection and starts over. Reports connections per second and the latency
+ * of connect plus one echo. Run it with <tt>-Dclients=</tt>, <tt>-Dseconds=</tt>, and
+ * <tt>-Dhost=</tt>/<tt>-Dport=</tt> like {@link EchoClient}.
+ */
+public final class ChurnBenchmark {
+  static final String HOST = System.getProperty("host", "127.0.0.1");
+  static final int PORT = Integer.parseInt(System.getProperty("port", "8007"));
+  static final int CLIENTS = Integer.parseInt(System.getProperty("clients", "64"));
+  static final int SECONDS = Integer.parseInt(System.getProperty("seconds", "10"));
+
+  public static void main(String[] args) throws Exception {
+    byte[] message = "ping\n".getBytes();
+    LatencyHistogram latency = new LatencyHistogram();
+    AtomicLong failures = new AtomicLong();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < CLIENTS; i++) {
+        executor.execute(
+            () -> {
+              byte[] buf = new byte[message.length];
+              while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                try (Socket socket = new Socket(HOST, PORT)) {
+                  socket.setTcpNoDelay(true);
+                  OutputStream out = socket.getOutputStream();
+                  InputStream in = socket.getInputStream();
+                  out.write(message);
+                  int n = 0;
+                  while (n < buf.length) {
+                    int rc = in.read(buf, n, buf.length - n);
+                    if (rc < 0) {
+                      throw new IOException("connection closed");
+                    }
+                    n += rc;
+                  }
+                  latency.recordNanos(System.nanoTime() - start);
+                } catch (IOException e) {
+                  failures.incrementAndGet();
+                }
+              }
+            });
+      }
+    }
+    System.out.printf(
+        "%.0f connections/s, %d failures, latency: %s\n",
+        (double) latency.count() / SECONDS, failures.get(), latency.summary());
+  }
+}
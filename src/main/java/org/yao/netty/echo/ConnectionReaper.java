@@ -0,0 +1,49 @@
+package org.yao.netty.echo;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the open connections and closes the ones an
+ * {@link io.netty.handler.timeout.IdleStateHandler} reports as idle. One instance is shared by all
+ * channels.
+ */
+@Sharable
+public class ConnectionReaper extends ChannelInboundHandlerAdapter {
+  private final LongAdder connections = new LongAdder();
+  private final LongAdder reaped = new LongAdder();
+
+  public long connections() {
+    return connections.sum();
+  }
+
+  public long reaped() {
+    return reaped.sum();
+  }
+
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) {
+    connections.increment();
+    ctx.fireChannelActive();
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) {
+    connections.decrement();
+    ctx.fireChannelInactive();
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+    if (evt instanceof IdleStateEvent) {
+      reaped.increment();
+      ctx.close();
+    } else {
+      ctx.fireUserEventTriggered(evt);
+    }
+  }
+}
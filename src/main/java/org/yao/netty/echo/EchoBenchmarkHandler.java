@@ -0,0 +1,94 @@
+package org.yao.netty.echo;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.yao.bench.LatencyHistogram;
+import org.yao.netty.TrafficCounter;
+
+/**
+ * Handler implementation for the benchmark mode of the echo client. Instead of printing the echoed
+ * bytes, it only counts them with {@link ByteBuf#readableBytes()}. Every <tt>size</tt> bytes
+ * received complete the oldest message in flight, whose round trip is recorded.
+ *
+ * <p>A channel keeps up to <tt>pipeline</tt> messages in flight, but stops writing while the
+ * channel is not writable, that is while the outbound buffer is above the high water mark, and
+ * resumes in {@link #channelWritabilityChanged}.
+ */
+public class EchoBenchmarkHandler extends ChannelInboundHandlerAdapter {
+  private final ByteBuf message;
+  private final int size;
+  private final int pipeline;
+  private final TrafficCounter counter;
+  private final LatencyHistogram latency;
+  // The send times of the messages in flight, oldest first.
+  private final long[] sent;
+  private int head;
+  private int inFlight;
+  private long received;
+
+  /** @param message a read-only message shared by all channels */
+  public EchoBenchmarkHandler(
+      ByteBuf message, int pipeline, TrafficCounter counter, LatencyHistogram latency) {
+    this.message = message;
+    this.size = message.readableBytes();
+    this.pipeline = pipeline;
+    this.counter = counter;
+    this.latency = latency;
+    this.sent = new long[pipeline];
+  }
+
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) {
+    fill(ctx);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    ByteBuf in = (ByteBuf) msg;
+    int n = in.readableBytes();
+    in.release();
+    long now = System.nanoTime();
+    received += n;
+    int messages = 0;
+    while (received >= size && inFlight > 0) {
+      received -= size;
+      latency.recordNanos(now - sent[head]);
+      head = (head + 1) % pipeline;
+      inFlight--;
+      messages++;
+    }
+    counter.add(n, messages);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    fill(ctx);
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+    fill(ctx);
+  }
+
+  private void fill(ChannelHandlerContext ctx) {
+    boolean written = false;
+    while (inFlight < pipeline && ctx.channel().isWritable()) {
+      // Writing a duplicate shares the content of the message instead of copying it.
+      ctx.write(message.retainedDuplicate());
+      sent[(head + inFlight) % pipeline] = System.nanoTime();
+      inFlight++;
+      written = true;
+    }
+    if (written) {
+      ctx.flush();
+    }
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    // Close the connection when an exception is raised.
+    cause.printStackTrace();
+    ctx.close();
+  }
+}
@@ -1,27 +1,55 @@
 package org.yao.netty.echo;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import org.yao.bench.LatencyHistogram;
+import org.yao.netty.TrafficCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Sends one message when a connection is open and echoes back any received
  * data to the server.  Simply put, the echo client initiates the ping-pong
  * traffic between the echo client and server by sending the first message to
  * the server.
+ *
+ * <p>With <tt>-Dbench</tt>, the client measures the echo server instead: it opens
+ * <tt>-Dchannels</tt> connections which keep <tt>-Dpipeline</tt> messages of
+ * <tt>-Dsize</tt> bytes in flight for <tt>-Dduration</tt> seconds, and prints the
+ * throughput and the round-trip latency every <tt>-Dinterval</tt> seconds.
  */
 public final class EchoClient {
   static final boolean SSL = System.getProperty("ssl") != null;
   static final String HOST = System.getProperty("host", "127.0.0.1");
   static final int PORT = Integer.parseInt(System.getProperty("port", "8007"));
+  static final boolean BENCH = System.getProperty("bench") != null;
+  static final int SIZE = Integer.parseInt(System.getProperty("size", "256"));
+  static final int CHANNELS = Integer.parseInt(System.getProperty("channels", "1"));
+  static final int PIPELINE = Integer.parseInt(System.getProperty("pipeline", "1"));
+  static final int DURATION = Integer.parseInt(System.getProperty("duration", "30"));
+  static final int INTERVAL = Integer.parseInt(System.getProperty("interval", "1"));
+  static final int LOW_WATER_MARK = Integer.parseInt(System.getProperty("lowWaterMark", "32768"));
+  static final int HIGH_WATER_MARK = Integer.parseInt(System.getProperty("highWaterMark", "65536"));
 
   public static void main(String[] args) throws Exception {
+    if (BENCH) {
+      bench();
+      return;
+    }
     // Configure the client.
     EventLoopGroup group = new NioEventLoopGroup();
     try {
@@ -47,4 +75,59 @@ public final class EchoClient {
       group.shutdownGracefully();
     }
   }
-}
\ No newline at end of file
+
+  private static void bench() throws Exception {
+    ByteBuf message = Unpooled.directBuffer(SIZE);
+    for (int i = 0; i < SIZE - 1; i++) {
+      message.writeByte('a' + i % 26);
+    }
+    message.writeByte('\n');
+    ByteBuf shared = Unpooled.unreleasableBuffer(message.asReadOnly());
+
+    TrafficCounter counter = new TrafficCounter("echo");
+    LatencyHistogram interval = new LatencyHistogram();
+    LatencyHistogram total = new LatencyHistogram();
+    EventLoopGroup group = new NioEventLoopGroup();
+    try {
+      Bootstrap b = new Bootstrap();
+      b.group(group)
+          .channel(NioSocketChannel.class)
+          .option(ChannelOption.TCP_NODELAY, true)
+          .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .option(
+              ChannelOption.WRITE_BUFFER_WATER_MARK,
+              new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK))
+          .handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            public void initChannel(SocketChannel ch) throws Exception {
+              ch.pipeline().addLast(new EchoBenchmarkHandler(shared, PIPELINE, counter, interval));
+            }
+          });
+
+      List<Channel> channels = new ArrayList<>(CHANNELS);
+      for (int i = 0; i < CHANNELS; i++) {
+        channels.add(b.connect(HOST, PORT).sync().channel());
+      }
+      group.scheduleAtFixedRate(
+          () -> {
+            LatencyHistogram last = interval.takeInterval();
+            System.out.printf("%s, latency: %s\n", counter.report(), last.summary());
+            total.add(last);
+          },
+          INTERVAL,
+          INTERVAL,
+          TimeUnit.SECONDS);
+
+      TimeUnit.SECONDS.sleep(DURATION);
+      for (Channel channel : channels) {
+        channel.close().sync();
+      }
+      total.add(interval.takeInterval());
+      System.out.printf(
+          "total: %d bytes, %d messages, latency: %s\n",
+          counter.bytes(), counter.messages(), total.summary());
+    } finally {
+      group.shutdownGracefully();
+    }
+  }
+}
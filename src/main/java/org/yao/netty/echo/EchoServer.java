@@ -1,48 +1,159 @@
 package org.yao.netty.echo;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Echoes back any received data from a client.
+ *
+ * <p>With <tt>-Dtransport=epoll</tt> (the default on Linux) the server uses Netty's native epoll
+ * transport, and <tt>-Dtransport=nio</tt> forces the JDK selector. With epoll,
+ * <tt>-Dacceptors=N</tt> binds N server channels to the same port with <tt>SO_REUSEPORT</tt>, so
+ * the kernel spreads new connections over N boss threads.
+ *
+ * <p>With <tt>-Dbackpressure</tt>, the server uses {@link BackpressureEchoServerHandler}, which
+ * stops reading from a client while its outbound buffer is above <tt>-DhighWaterMark</tt> until it
+ * drains below <tt>-DlowWaterMark</tt>. Flushes are batched by a {@link FlushConsolidationHandler}.
+ *
+ * <p>With <tt>-Didle=N</tt>, the server is tuned for many mostly idle connections: connections
+ * without any traffic for N seconds are closed by a shared {@link ConnectionReaper}, receive
+ * buffers start at 256 bytes, and every <tt>-Dinterval</tt> seconds the server prints the number
+ * of connections and the heap and pooled direct memory per connection. The report runs a GC first
+ * so the heap figure only counts live objects, on a thread of its own rather than an event loop.
+ * Use <tt>-Dbacklog</tt> for connection bursts.
  */
 public final class EchoServer {
   static final int PORT = Integer.parseInt(System.getProperty("port", "8007"));
+  static final String TRANSPORT = System.getProperty("transport", "epoll");
+  static final int ACCEPTORS = Integer.parseInt(System.getProperty("acceptors", "1"));
+  static final boolean BACKPRESSURE = System.getProperty("backpressure") != null;
+  static final int LOW_WATER_MARK = Integer.parseInt(System.getProperty("lowWaterMark", "32768"));
+  static final int HIGH_WATER_MARK = Integer.parseInt(System.getProperty("highWaterMark", "65536"));
+  static final int IDLE = Integer.parseInt(System.getProperty("idle", "0"));
+  static final int INTERVAL = Integer.parseInt(System.getProperty("interval", "10"));
+  static final int BACKLOG = Integer.parseInt(System.getProperty("backlog", "100"));
 
   public static void main(String[] args) throws Exception {
+    boolean epoll = "epoll".equals(TRANSPORT) && Epoll.isAvailable();
+    if ("epoll".equals(TRANSPORT) && !epoll) {
+      System.err.printf("epoll is not available, using nio: %s\n", Epoll.unavailabilityCause());
+    }
+    int acceptors = epoll ? ACCEPTORS : 1;
+
     // Configure the server.
-    EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-    EventLoopGroup workerGroup = new NioEventLoopGroup();
-    final EchoServerHandler serverHandler = new EchoServerHandler();
+    EventLoopGroup bossGroup =
+        epoll ? new EpollEventLoopGroup(acceptors) : new NioEventLoopGroup(1);
+    EventLoopGroup workerGroup = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+    Class<? extends ServerChannel> channelClass =
+        epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    final ChannelHandler serverHandler =
+        BACKPRESSURE ? new BackpressureEchoServerHandler() : new EchoServerHandler();
+    final ConnectionReaper reaper = new ConnectionReaper();
+    final ScheduledExecutorService reporter =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "memory-report");
+              thread.setDaemon(true);
+              return thread;
+            });
     try {
       ServerBootstrap b = new ServerBootstrap();
       b.group(bossGroup, workerGroup)
-          .channel(NioServerSocketChannel.class)
-          .option(ChannelOption.SO_BACKLOG, 100)
+          .channel(channelClass)
+          .option(ChannelOption.SO_BACKLOG, BACKLOG)
+          .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .childOption(
+              ChannelOption.WRITE_BUFFER_WATER_MARK,
+              new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK))
           .childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
               ChannelPipeline p = ch.pipeline();
+              if (IDLE > 0) {
+                p.addLast(new IdleStateHandler(0, 0, IDLE), reaper);
+              }
+              if (BACKPRESSURE) {
+                p.addLast(new FlushConsolidationHandler());
+              }
               p.addLast(serverHandler);
             }
           });
+      if (acceptors > 1) {
+        b.option(EpollChannelOption.SO_REUSEPORT, true);
+      }
+      if (IDLE > 0) {
+        b.childOption(
+            ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 256, 65536));
+      }
 
-      // Start the server.
-      ChannelFuture f = b.bind(PORT).sync();
+      // Start the server. Each bind registers a server channel with the next boss event loop.
+      List<ChannelFuture> futures = new ArrayList<>();
+      for (int i = 0; i < acceptors; i++) {
+        futures.add(b.bind(PORT).sync());
+      }
+      System.out.printf(
+          "listening on %d with %s, %d acceptor(s)\n", PORT, epoll ? "epoll" : "nio", acceptors);
+      if (IDLE > 0) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ByteBufAllocatorMetric metric = PooledByteBufAllocator.DEFAULT.metric();
+        memory.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed();
+        long direct = metric.usedDirectMemory();
+        reporter.scheduleAtFixedRate(
+            () -> {
+              memory.gc();
+              long connections = reaper.connections();
+              System.out.printf("%d connections, %d reaped", connections, reaper.reaped());
+              if (connections > 0) {
+                System.out.printf(
+                    ", %d heap bytes/connection, %d direct bytes/connection",
+                    (memory.getHeapMemoryUsage().getUsed() - heap) / connections,
+                    (metric.usedDirectMemory() - direct) / connections);
+              }
+              System.out.println();
+            },
+            INTERVAL,
+            INTERVAL,
+            TimeUnit.SECONDS);
+      }
 
-      // Wait until the server socket is closed.
-      f.channel().closeFuture().sync();
+      // Wait until the server sockets are closed.
+      for (ChannelFuture f : futures) {
+        f.channel().closeFuture().sync();
+      }
     } finally {
       // Shut down all event loops to terminate all threads.
+      reporter.shutdownNow();
       bossGroup.shutdownGracefully();
       workerGroup.shutdownGracefully();
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package org.yao.netty.echo;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens <tt>-Dconnections</tt> mostly idle connections to an echo server started with
+ * <tt>-Didle</tt>, which reports its memory per connection, and holds them for <tt>-Dhold</tt>
+ * seconds. With <tt>-Dping=N</tt> every connection sends one byte every N seconds, otherwise it
+ * stays silent and is eventually reaped by the server.
+ *
+ * <p>A loopback source address only has about 28k ephemeral ports, so the connections are spread
+ * over the source addresses 127.0.0.1 to 127.0.0.<tt>-Dsources</tt>. At most <tt>-Dconcurrency</tt>
+ * connects are in flight. Both processes need a file descriptor limit above the number of
+ * connections, e.g. <tt>ulimit -n 200000</tt>.
+ */
+public final class IdleConnectionBenchmark {
+  static final String HOST = System.getProperty("host", "127.0.0.1");
+  static final int PORT = Integer.parseInt(System.getProperty("port", "8007"));
+  static final int CONNECTIONS = Integer.parseInt(System.getProperty("connections", "100000"));
+  static final int SOURCES =
+      Integer.parseInt(
+          System.getProperty("sources", String.valueOf((CONNECTIONS + 24999) / 25000)));
+  static final int CONCURRENCY = Integer.parseInt(System.getProperty("concurrency", "1000"));
+  static final int HOLD = Integer.parseInt(System.getProperty("hold", "60"));
+  static final int PING = Integer.parseInt(System.getProperty("ping", "0"));
+
+  /** Drops the echoes. */
+  @Sharable
+  private static class DropHandler extends ChannelInboundHandlerAdapter {
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      ReferenceCountUtil.release(msg);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      ctx.close();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    boolean epoll = Epoll.isAvailable();
+    EventLoopGroup group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+    ByteBuf ping = Unpooled.unreleasableBuffer(Unpooled.directBuffer(1).writeByte('\n'));
+    // Closed channels are removed from the group automatically.
+    ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    LongAdder failures = new LongAdder();
+    try {
+      Bootstrap b = new Bootstrap();
+      b.group(group)
+          .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+          .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .option(ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 256, 1024))
+          .handler(new DropHandler());
+      InetSocketAddress server = new InetSocketAddress(HOST, PORT);
+
+      Semaphore window = new Semaphore(CONCURRENCY);
+      long start = System.nanoTime();
+      for (int i = 0; i < CONNECTIONS; i++) {
+        window.acquire();
+        InetSocketAddress source = new InetSocketAddress("127.0.0." + (1 + i % SOURCES), 0);
+        ChannelFuture future = b.connect(server, source);
+        future.addListener(
+            f -> {
+              window.release();
+              if (f.isSuccess()) {
+                open(future.channel(), channels, ping);
+              } else {
+                failures.increment();
+              }
+            });
+        if ((i + 1) % 10000 == 0) {
+          System.out.printf("%d connects issued, %d failures\n", i + 1, failures.sum());
+        }
+      }
+      window.acquire(CONCURRENCY);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf(
+          "%d connections in %.1f s (%.0f/s), %d failures\n",
+          CONNECTIONS - failures.sum(), seconds, CONNECTIONS / seconds, failures.sum());
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(HOLD);
+      while (System.nanoTime() < deadline) {
+        TimeUnit.SECONDS.sleep(Math.min(10, HOLD));
+        System.out.printf("%d connections open\n", channels.size());
+      }
+      channels.close().awaitUninterruptibly();
+    } finally {
+      group.shutdownGracefully();
+    }
+  }
+
+  private static void open(Channel channel, ChannelGroup channels, ByteBuf ping) {
+    channels.add(channel);
+    if (PING > 0) {
+      ScheduledFuture<?> task =
+          channel
+              .eventLoop()
+              .scheduleAtFixedRate(
+                  () -> channel.writeAndFlush(ping.duplicate()), PING, PING, TimeUnit.SECONDS);
+      channel.closeFuture().addListener(f -> task.cancel(false));
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.yao.netty.rpc;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.apache.jute.InputArchive;
+import org.yao.jute.ByteBufInputArchive;
+import org.yao.jute.ByteBufOutputArchive;
+
+/**
+ * Length-prefixed framing of Jute records. Frames are decoded by {@link #frameDecoder()} into
+ * {@link ByteBuf}s without the length, and records are deserialized straight from the frame with
+ * {@link #inputArchive(ByteBuf)}. {@link Encoder} serializes a {@link Packet} straight into the
+ * outbound buffer and fills in the length afterwards.
+ *
+ * <p>Each event loop thread reuses one input archive, so paths and other repeated strings are
+ * decoded from its string cache.
+ */
+public final class Framing {
+  /** The largest frame accepted, the default <tt>jute.maxbuffer</tt> of ZooKeeper. */
+  public static final int MAX_FRAME = 0xfffff;
+
+  private static final ThreadLocal<ByteBufInputArchive> INPUT_ARCHIVES =
+      ThreadLocal.withInitial(() -> new ByteBufInputArchive(null));
+
+  private Framing() {}
+
+  public static LengthFieldBasedFrameDecoder frameDecoder() {
+    return new LengthFieldBasedFrameDecoder(MAX_FRAME, 0, 4, 0, 4);
+  }
+
+  public static InputArchive inputArchive(ByteBuf frame) {
+    return INPUT_ARCHIVES.get().reset(frame);
+  }
+
+  @Sharable
+  public static class Encoder extends MessageToByteEncoder<Packet> {
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Packet packet, ByteBuf out) throws Exception {
+      int start = out.writerIndex();
+      out.writeInt(0);
+      ByteBufOutputArchive oa = new ByteBufOutputArchive(out);
+      packet.header.serialize(oa, "header");
+      if (packet.body != null) {
+        packet.body.serialize(oa, "body");
+      }
+      out.setInt(start, out.writerIndex() - start - 4);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package org.yao.netty.rpc;
+
+import org.apache.jute.Record;
+
+/**
+ * A header record followed by an optional body record, e.g. a {@link
+ * org.apache.zookeeper.proto.RequestHeader} and a {@link
+ * org.apache.zookeeper.proto.GetDataRequest}. On the wire, a packet is one frame: a 4-byte length
+ * followed by the serialized header and body, like a ZooKeeper client packet.
+ */
+public final class Packet {
+  final Record header;
+  final Record body;
+
+  public Packet(Record header, Record body) {
+    this.header = header;
+    this.body = body;
+  }
+}
@@ -0,0 +1,112 @@
+package org.yao.netty.rpc;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.zookeeper.KeeperException;
+import org.yao.bench.LatencyHistogram;
+import org.yao.netty.TrafficCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pipelined request throughput against {@link RpcServer}. Each of <tt>-Dconnections</tt>
+ * clients keeps <tt>-Doutstanding</tt> requests in flight on its own znode, issuing a new request
+ * as soon as one completes. <tt>-Dwrites</tt> percent of the requests are setData and the rest are
+ * getData, with <tt>-Dsize</tt> bytes of data. Prints requests per second and latency every second
+ * for <tt>-Dseconds</tt> seconds. Use <tt>-Dhost=</tt>/<tt>-Dport=</tt> to find the server.
+ */
+public final class RpcBenchmark {
+  static final String HOST = System.getProperty("host", "127.0.0.1");
+  static final int PORT = Integer.parseInt(System.getProperty("port", "2191"));
+  static final int CONNECTIONS = Integer.parseInt(System.getProperty("connections", "4"));
+  static final int OUTSTANDING = Integer.parseInt(System.getProperty("outstanding", "100"));
+  static final int WRITES = Integer.parseInt(System.getProperty("writes", "10"));
+  static final int SIZE = Integer.parseInt(System.getProperty("size", "100"));
+  static final int SECONDS = Integer.parseInt(System.getProperty("seconds", "10"));
+
+  private static volatile boolean running = true;
+
+  public static void main(String[] args) throws Exception {
+    byte[] data = new byte[SIZE];
+    TrafficCounter counter = new TrafficCounter("rpc");
+    LatencyHistogram interval = new LatencyHistogram();
+    LatencyHistogram total = new LatencyHistogram();
+    EventLoopGroup group = new NioEventLoopGroup();
+    List<RpcClient> clients = new ArrayList<>();
+    try {
+      for (int i = 0; i < CONNECTIONS; i++) {
+        RpcClient client = RpcClient.connect(group, HOST, PORT);
+        String path = "/bench-" + i;
+        try {
+          client.create(path, data).join();
+        } catch (CompletionException e) {
+          if (!(e.getCause() instanceof KeeperException.NodeExistsException)) {
+            throw e;
+          }
+        }
+        clients.add(client);
+      }
+      for (int i = 0; i < CONNECTIONS; i++) {
+        for (int j = 0; j < OUTSTANDING; j++) {
+          issue(clients.get(i), "/bench-" + i, data, counter, interval);
+        }
+      }
+      ScheduledFuture<?> report =
+          group.scheduleAtFixedRate(
+              () -> {
+                LatencyHistogram last = interval.takeInterval();
+                System.out.printf("%s, latency: %s\n", counter.report(), last.summary());
+                total.add(last);
+              },
+              1,
+              1,
+              TimeUnit.SECONDS);
+
+      TimeUnit.SECONDS.sleep(SECONDS);
+      running = false;
+      report.cancel(false);
+      total.add(interval.takeInterval());
+      System.out.printf(
+          "total: %d requests, %.0f requests/s, latency: %s\n",
+          counter.messages(), (double) counter.messages() / SECONDS, total.summary());
+    } finally {
+      for (RpcClient client : clients) {
+        client.close();
+      }
+      group.shutdownGracefully();
+    }
+  }
+
+  private static void issue(
+      RpcClient client,
+      String path,
+      byte[] data,
+      TrafficCounter counter,
+      LatencyHistogram latency) {
+    long start = System.nanoTime();
+    CompletableFuture<?> future =
+        ThreadLocalRandom.current().nextInt(100) < WRITES
+            ? client.setData(path, data, -1)
+            : client.getData(path);
+    future.whenComplete(
+        (result, e) -> {
+          if (e != null) {
+            if (running) {
+              e.printStackTrace();
+            }
+            return;
+          }
+          latency.recordNanos(System.nanoTime() - start);
+          counter.add(SIZE, 1);
+          if (running) {
+            issue(client, path, data, counter, latency);
+          }
+        });
+  }
+}
@@ -0,0 +1,176 @@
+package org.yao.netty.rpc;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import org.apache.jute.InputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.CreateResponse;
+import org.apache.zookeeper.proto.GetDataRequest;
+import org.apache.zookeeper.proto.GetDataResponse;
+import org.apache.zookeeper.proto.ReplyHeader;
+import org.apache.zookeeper.proto.RequestHeader;
+import org.apache.zookeeper.proto.SetDataRequest;
+import org.apache.zookeeper.proto.SetDataResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A client of {@link RpcServer} with any number of outstanding requests. Every request gets the
+ * next xid, and the reply carrying the same xid completes the request's future, so replies may
+ * arrive in any order. Requests issued outside the event loop are flushed together by a {@link
+ * FlushConsolidationHandler}.
+ *
+ * <p>Futures are completed on the event loop of the connection, so their callbacks must not block.
+ * An error reply completes the future with the matching {@link KeeperException}, and a closed
+ * connection fails all outstanding requests with connection loss.
+ */
+public class RpcClient implements Closeable {
+  private static final Framing.Encoder ENCODER = new Framing.Encoder();
+
+  private Channel channel;
+  private final AtomicInteger xid = new AtomicInteger();
+  private final ConcurrentMap<Integer, Call> pending = new ConcurrentHashMap<>();
+
+  private static final class Call {
+    final Record response;
+    final CompletableFuture<Record> future = new CompletableFuture<>();
+
+    Call(Record response) {
+      this.response = response;
+    }
+  }
+
+  private RpcClient() {}
+
+  public static RpcClient connect(EventLoopGroup group, String host, int port)
+      throws InterruptedException {
+    RpcClient client = new RpcClient();
+    Bootstrap b = new Bootstrap();
+    b.group(group)
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          public void initChannel(SocketChannel ch) {
+            ch.pipeline()
+                .addLast(
+                    new FlushConsolidationHandler(256, true),
+                    Framing.frameDecoder(),
+                    ENCODER,
+                    client.new ReplyHandler());
+          }
+        });
+    client.channel = b.connect(host, port).sync().channel();
+    return client;
+  }
+
+  /**
+   * Sends <tt>request</tt> and deserializes the reply body into <tt>response</tt>, which completes
+   * the returned future.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Record> CompletableFuture<T> call(int type, Record request, T response) {
+    int x = xid.incrementAndGet();
+    Call call = new Call(response);
+    pending.put(x, call);
+    channel
+        .writeAndFlush(new Packet(new RequestHeader(x, type), request))
+        .addListener(
+            f -> {
+              if (!f.isSuccess() && pending.remove(x) != null) {
+                call.future.completeExceptionally(f.cause());
+              }
+            });
+    return (CompletableFuture<T>) call.future;
+  }
+
+  public CompletableFuture<String> create(String path, byte[] data) {
+    CreateRequest request =
+        new CreateRequest(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT.toFlag());
+    return call(OpCode.create, request, new CreateResponse()).thenApply(CreateResponse::getPath);
+  }
+
+  public CompletableFuture<GetDataResponse> getData(String path) {
+    return call(OpCode.getData, new GetDataRequest(path, false), new GetDataResponse());
+  }
+
+  public CompletableFuture<Stat> setData(String path, byte[] data, int version) {
+    return call(OpCode.setData, new SetDataRequest(path, data, version), new SetDataResponse())
+        .thenApply(SetDataResponse::getStat);
+  }
+
+  public int outstanding() {
+    return pending.size();
+  }
+
+  @Override
+  public void close() {
+    channel.close().awaitUninterruptibly();
+  }
+
+  private void received(ByteBuf frame) throws IOException {
+    InputArchive ia = Framing.inputArchive(frame);
+    ReplyHeader header = new ReplyHeader();
+    header.deserialize(ia, "header");
+    Call call = pending.remove(header.getXid());
+    if (call == null) {
+      throw new IOException("unexpected xid " + header.getXid());
+    }
+    if (header.getErr() != Code.OK.intValue()) {
+      call.future.completeExceptionally(KeeperException.create(Code.get(header.getErr())));
+      return;
+    }
+    call.response.deserialize(ia, "body");
+    call.future.complete(call.response);
+  }
+
+  private void closed() {
+    for (Integer x : pending.keySet()) {
+      Call call = pending.remove(x);
+      if (call != null) {
+        call.future.completeExceptionally(new KeeperException.ConnectionLossException());
+      }
+    }
+  }
+
+  private class ReplyHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws IOException {
+      received(frame);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      closed();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      cause.printStackTrace();
+      ctx.close();
+    }
+  }
+}
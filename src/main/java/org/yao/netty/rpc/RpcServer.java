@@ -0,0 +1,66 @@
+package org.yao.netty.rpc;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+
+/**
+ * A server speaking a subset of the ZooKeeper client protocol over Jute frames, see {@link
+ * RpcServerHandler}. There are no sessions: a client sends requests right after connecting. Run it
+ * with <tt>-Dport=</tt>.
+ */
+public class RpcServer implements Closeable {
+  static final int PORT = Integer.parseInt(System.getProperty("port", "2191"));
+
+  private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+  private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+  private final RpcServerHandler handler = new RpcServerHandler();
+  private final Framing.Encoder encoder = new Framing.Encoder();
+  private Channel channel;
+
+  /** Returns the bound address, whose port is chosen by the system if <tt>port</tt> is 0. */
+  public InetSocketAddress bind(String host, int port) throws InterruptedException {
+    ServerBootstrap b = new ServerBootstrap();
+    b.group(bossGroup, workerGroup)
+        .channel(NioServerSocketChannel.class)
+        .option(ChannelOption.SO_BACKLOG, 100)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          public void initChannel(SocketChannel ch) {
+            ch.pipeline().addLast(Framing.frameDecoder(), encoder, handler);
+          }
+        });
+    channel = b.bind(host, port).sync().channel();
+    return (InetSocketAddress) channel.localAddress();
+  }
+
+  @Override
+  public void close() {
+    if (channel != null) {
+      channel.close().awaitUninterruptibly();
+    }
+    bossGroup.shutdownGracefully();
+    workerGroup.shutdownGracefully();
+  }
+
+  public static void main(String[] args) throws Exception {
+    RpcServer server = new RpcServer();
+    try {
+      System.out.printf("listening on %s\n", server.bind("0.0.0.0", PORT));
+      server.channel.closeFuture().sync();
+    } finally {
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.yao.netty.rpc;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.apache.jute.InputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.CreateResponse;
+import org.apache.zookeeper.proto.GetDataRequest;
+import org.apache.zookeeper.proto.GetDataResponse;
+import org.apache.zookeeper.proto.ReplyHeader;
+import org.apache.zookeeper.proto.RequestHeader;
+import org.apache.zookeeper.proto.SetDataRequest;
+import org.apache.zookeeper.proto.SetDataResponse;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves create, getData and setData from an in-memory map of znodes, with ZooKeeper's request and
+ * reply headers and error codes. There is no tree, so a znode can be created without its parent.
+ * Replies are written in request order and flushed once per read, so pipelined requests share
+ * syscalls. One instance is shared by all channels.
+ */
+@Sharable
+public class RpcServerHandler extends SimpleChannelInboundHandler<ByteBuf> {
+  private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+  private final AtomicLong zxid = new AtomicLong();
+
+  private static final class Node {
+    final byte[] data;
+    final Stat stat;
+
+    Node(byte[] data, Stat stat) {
+      this.data = data;
+      this.stat = stat;
+    }
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws IOException {
+    InputArchive ia = Framing.inputArchive(frame);
+    RequestHeader header = new RequestHeader();
+    header.deserialize(ia, "header");
+    ReplyHeader reply = new ReplyHeader(header.getXid(), 0, Code.OK.intValue());
+    Record response;
+    switch (header.getType()) {
+      case OpCode.create:
+        CreateRequest create = new CreateRequest();
+        create.deserialize(ia, "body");
+        response = create(create, reply);
+        break;
+      case OpCode.getData:
+        GetDataRequest get = new GetDataRequest();
+        get.deserialize(ia, "body");
+        response = getData(get, reply);
+        break;
+      case OpCode.setData:
+        SetDataRequest set = new SetDataRequest();
+        set.deserialize(ia, "body");
+        response = setData(set, reply);
+        break;
+      default:
+        reply.setZxid(zxid.get());
+        reply.setErr(Code.UNIMPLEMENTED.intValue());
+        response = null;
+    }
+    ctx.write(new Packet(reply, reply.getErr() == Code.OK.intValue() ? response : null));
+  }
+
+  private Record create(CreateRequest request, ReplyHeader reply) {
+    long now = System.currentTimeMillis();
+    long txn = zxid.incrementAndGet();
+    byte[] data = request.getData();
+    int length = data == null ? 0 : data.length;
+    Stat stat = new Stat(txn, txn, now, now, 0, 0, 0, 0, length, 0, txn);
+    reply.setZxid(txn);
+    if (nodes.putIfAbsent(request.getPath(), new Node(data, stat)) != null) {
+      reply.setErr(Code.NODEEXISTS.intValue());
+      return null;
+    }
+    return new CreateResponse(request.getPath());
+  }
+
+  private Record getData(GetDataRequest request, ReplyHeader reply) {
+    reply.setZxid(zxid.get());
+    Node node = nodes.get(request.getPath());
+    if (node == null) {
+      reply.setErr(Code.NONODE.intValue());
+      return null;
+    }
+    return new GetDataResponse(node.data, node.stat);
+  }
+
+  private Record setData(SetDataRequest request, ReplyHeader reply) {
+    long now = System.currentTimeMillis();
+    long txn = zxid.incrementAndGet();
+    byte[] data = request.getData();
+    int length = data == null ? 0 : data.length;
+    reply.setZxid(txn);
+    while (true) {
+      Node node = nodes.get(request.getPath());
+      if (node == null) {
+        reply.setErr(Code.NONODE.intValue());
+        return null;
+      }
+      Stat s = node.stat;
+      if (request.getVersion() != -1 && request.getVersion() != s.getVersion()) {
+        reply.setErr(Code.BADVERSION.intValue());
+        return null;
+      }
+      Stat stat =
+          new Stat(
+              s.getCzxid(), txn, s.getCtime(), now, s.getVersion() + 1, s.getCversion(),
+              s.getAversion(), s.getEphemeralOwner(), length, s.getNumChildren(), s.getPzxid());
+      if (nodes.replace(request.getPath(), node, new Node(data, stat))) {
+        return new SetDataResponse(stat);
+      }
+    }
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    ctx.flush();
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    // A malformed request leaves the stream in an unknown state, so close the connection.
+    cause.printStackTrace();
+    ctx.close();
+  }
+}
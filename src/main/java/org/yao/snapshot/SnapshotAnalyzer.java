@@ -0,0 +1,236 @@
+package org.yao.snapshot;
+
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Id;
+import org.apache.zookeeper.server.persistence.FileSnap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Summarizes a ZooKeeper 3.5 snapshot without loading its <tt>DataTree</tt>, unlike
+ * <tt>SnapshotFormatter</tt>. One thread decodes the snapshot and hands batches of znodes to a pool
+ * of aggregating threads; since only a fixed number of batches exist, memory does not grow with
+ * the snapshot. Znode data is skipped, not read.
+ *
+ * <p>Usage: <tt>SnapshotAnalyzer snapshot-file</tt>, with the system properties:
+ *
+ * <ul>
+ *   <li><tt>depth</tt>: the number of path components a prefix has, 2 by default.
+ *   <li><tt>threads</tt>: the number of aggregating threads, the number of processors by default.
+ *   <li><tt>format</tt>: <tt>text</tt> (default), <tt>csv</tt> or <tt>json</tt>.
+ *   <li><tt>top</tt>: the number of prefixes and owners in the text report, 20 by default.
+ * </ul>
+ */
+public class SnapshotAnalyzer {
+  /** The snapshot version of ZooKeeper 3.5, private in <tt>FileSnap</tt>. */
+  private static final int VERSION = 2;
+
+  private static final int BATCHES_PER_THREAD = 2;
+
+  private final int depth;
+  private final int threads;
+
+  public SnapshotAnalyzer(int depth, int threads) {
+    this.depth = depth;
+    this.threads = threads;
+  }
+
+  /** The znodes decoded but not yet aggregated. Their paths are kept as UTF-8 bytes. */
+  private static final class Batch {
+    static final int CAPACITY = 4096;
+
+    byte[] paths = new byte[CAPACITY * 64];
+    final int[] pathEnds = new int[CAPACITY];
+    final int[] dataLengths = new int[CAPACITY];
+    final long[] acls = new long[CAPACITY];
+    final long[] owners = new long[CAPACITY];
+    int size;
+
+    int pathBytes() {
+      return size == 0 ? 0 : pathEnds[size - 1];
+    }
+
+    void aggregate(SnapshotStats stats) {
+      int start = 0;
+      for (int i = 0; i < size; i++) {
+        String path = new String(paths, start, pathEnds[i] - start, StandardCharsets.UTF_8);
+        stats.add(path, dataLengths[i], acls[i], owners[i]);
+        start = pathEnds[i];
+      }
+      size = 0;
+    }
+  }
+
+  public SnapshotStats analyze(Path snapshot) throws IOException, InterruptedException {
+    try (InputStream in = Files.newInputStream(snapshot)) {
+      return analyze(in);
+    }
+  }
+
+  public SnapshotStats analyze(InputStream stream) throws IOException, InterruptedException {
+    SnapshotInput in = new SnapshotInput(stream);
+    SnapshotStats result = new SnapshotStats(depth);
+    readHeader(in, result);
+
+    BlockingQueue<Batch> free = new ArrayBlockingQueue<>(threads * BATCHES_PER_THREAD);
+    for (int i = 0; i < threads * BATCHES_PER_THREAD; i++) {
+      free.add(new Batch());
+    }
+    Queue<SnapshotStats> partials = new ConcurrentLinkedQueue<>();
+    ThreadLocal<SnapshotStats> local =
+        ThreadLocal.withInitial(
+            () -> {
+              SnapshotStats stats = new SnapshotStats(depth);
+              partials.add(stats);
+              return stats;
+            });
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      Batch batch = free.take();
+      while (readNode(in, batch)) {
+        if (batch.size == Batch.CAPACITY) {
+          submit(pool, batch, local, free, failure);
+          batch = free.take();
+        }
+      }
+      submit(pool, batch, local, free, failure);
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+    if (failure.get() != null) {
+      throw new IOException("aggregation failed", failure.get());
+    }
+    long checksum = in.checksum();
+    long expected = in.readLong();
+    if (checksum != expected) {
+      throw new IOException(
+          String.format("checksum 0x%x does not match 0x%x in the snapshot", checksum, expected));
+    }
+    for (SnapshotStats partial : partials) {
+      result.merge(partial);
+    }
+    return result;
+  }
+
+  private static void submit(
+      ExecutorService pool,
+      Batch batch,
+      ThreadLocal<SnapshotStats> local,
+      BlockingQueue<Batch> free,
+      AtomicReference<Throwable> failure)
+      throws IOException {
+    if (failure.get() != null) {
+      throw new IOException("aggregation failed", failure.get());
+    }
+    pool.execute(
+        () -> {
+          try {
+            batch.aggregate(local.get());
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            batch.size = 0;
+            free.add(batch);
+          }
+        });
+  }
+
+  /** Reads the file header, the sessions and the ACL cache. */
+  private static void readHeader(SnapshotInput in, SnapshotStats stats) throws IOException {
+    int magic = in.readInt();
+    int version = in.readInt();
+    in.readLong(); // dbid
+    if (magic != FileSnap.SNAP_MAGIC) {
+      throw new IOException(String.format("not a snapshot, magic is 0x%x", magic));
+    }
+    if (version != VERSION) {
+      throw new IOException("unsupported snapshot version " + version);
+    }
+    for (int i = in.readInt(); i > 0; i--) {
+      long id = in.readLong();
+      stats.sessions.put(id, in.readInt());
+    }
+    for (int i = in.readInt(); i > 0; i--) {
+      long ref = in.readLong();
+      List<ACL> acls = new ArrayList<>();
+      for (int j = in.readInt(); j > 0; j--) {
+        int perms = in.readInt();
+        acls.add(new ACL(perms, new Id(in.readString(), in.readString())));
+      }
+      stats.aclLists.put(ref, acls);
+    }
+  }
+
+  /** Adds the next znode to <tt>batch</tt>, or returns false at the "/" ending the znodes. */
+  private static boolean readNode(SnapshotInput in, Batch batch) throws IOException {
+    int length = in.readLength();
+    if (length < 0) {
+      throw new IOException("null path at offset " + (in.offset() - 4));
+    }
+    int start = batch.pathBytes();
+    if (start + length > batch.paths.length) {
+      batch.paths = Arrays.copyOf(batch.paths, Math.max(batch.paths.length * 2, start + length));
+    }
+    in.read(batch.paths, start, length);
+    // The root is written with an empty path, so "/" can only be the end.
+    if (length == 1 && batch.paths[start] == '/') {
+      return false;
+    }
+    int dataLength = in.readLength();
+    in.skip(dataLength);
+    long acl = in.readLong();
+    in.skip(4 * 8 + 3 * 4); // czxid, mzxid, ctime, mtime, version, cversion, aversion
+    long owner = in.readLong();
+    in.skip(8); // pzxid
+
+    int i = batch.size++;
+    batch.pathEnds[i] = start + length;
+    batch.dataLengths[i] = Math.max(dataLength, 0);
+    batch.acls[i] = acl;
+    batch.owners[i] = owner;
+    return true;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int depth = Integer.getInteger("depth", 2);
+    int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    String format = System.getProperty("format", "text");
+    int top = Integer.getInteger("top", 20);
+
+    long start = System.nanoTime();
+    Path snapshot = Paths.get(args[0]);
+    SnapshotStats stats = new SnapshotAnalyzer(depth, threads).analyze(snapshot);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    switch (format) {
+      case "csv":
+        stats.printCsv(System.out);
+        break;
+      case "json":
+        stats.printJson(System.out);
+        break;
+      default:
+        System.out.printf(
+            "%s: %d bytes in %.2f s with %d threads\n",
+            snapshot, Files.size(snapshot), seconds, threads);
+        stats.printText(System.out, top);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package org.yao.snapshot;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+
+/**
+ * Reads the Jute binary encoding from a stream through one reused buffer, and keeps the Adler32
+ * checksum of everything consumed, which is what a snapshot ends with. Unlike a
+ * <tt>DataInputStream</tt> over a <tt>CheckedInputStream</tt>, the checksum is updated a buffer at
+ * a time instead of a byte at a time, and skipped bytes are checksummed without being copied.
+ */
+final class SnapshotInput implements Closeable {
+  /** The largest string or buffer accepted, like <tt>jute.maxbuffer</tt> plus some slack. */
+  static final int MAX_LENGTH = 64 << 20;
+
+  private final InputStream in;
+  private final byte[] buf = new byte[1 << 16];
+  private final Adler32 adler = new Adler32();
+  private int pos;
+  private int limit;
+  /** The start of the bytes consumed but not yet added to the checksum. */
+  private int unchecked;
+  private long offset;
+
+  SnapshotInput(InputStream in) {
+    this.in = in;
+  }
+
+  /** The number of bytes consumed so far. */
+  long offset() {
+    return offset + pos;
+  }
+
+  private void require(int n) throws IOException {
+    if (limit - pos >= n) {
+      return;
+    }
+    adler.update(buf, unchecked, pos - unchecked);
+    System.arraycopy(buf, pos, buf, 0, limit - pos);
+    offset += pos;
+    limit -= pos;
+    pos = 0;
+    unchecked = 0;
+    while (limit < n) {
+      int read = in.read(buf, limit, buf.length - limit);
+      if (read < 0) {
+        throw new EOFException("snapshot truncated at offset " + (offset + limit));
+      }
+      limit += read;
+    }
+  }
+
+  int readInt() throws IOException {
+    require(4);
+    int v =
+        (buf[pos] & 0xff) << 24
+            | (buf[pos + 1] & 0xff) << 16
+            | (buf[pos + 2] & 0xff) << 8
+            | (buf[pos + 3] & 0xff);
+    pos += 4;
+    return v;
+  }
+
+  long readLong() throws IOException {
+    return (long) readInt() << 32 | (readInt() & 0xffffffffL);
+  }
+
+  /** Reads the length of a string or buffer, which is -1 for null. */
+  int readLength() throws IOException {
+    int length = readInt();
+    if (length < -1 || length > MAX_LENGTH) {
+      throw new IOException("Unreasonable length = " + length + " at offset " + (offset() - 4));
+    }
+    return length;
+  }
+
+  String readString() throws IOException {
+    int length = readLength();
+    if (length < 0) {
+      return null;
+    }
+    byte[] b = new byte[length];
+    read(b, 0, length);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  void read(byte[] b, int off, int length) throws IOException {
+    while (length > 0) {
+      require(1);
+      int n = Math.min(length, limit - pos);
+      System.arraycopy(buf, pos, b, off, n);
+      pos += n;
+      off += n;
+      length -= n;
+    }
+  }
+
+  void skip(int length) throws IOException {
+    while (length > 0) {
+      require(1);
+      int n = Math.min(length, limit - pos);
+      pos += n;
+      length -= n;
+    }
+  }
+
+  /** Returns the checksum of everything consumed so far. */
+  long checksum() {
+    adler.update(buf, unchecked, pos - unchecked);
+    unchecked = pos;
+    return adler.getValue();
+  }
+
+  /** Returns whether the stream has no more bytes. */
+  boolean atEnd() throws IOException {
+    if (pos < limit) {
+      return false;
+    }
+    try {
+      require(1);
+      return false;
+    } catch (EOFException e) {
+      return true;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,324 @@
+package org.yao.snapshot;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.zookeeper.ZooDefs.Perms;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.server.EphemeralType;
+import org.yao.jute.StringIntMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link SnapshotAnalyzer} found in a snapshot: znode counts, data bytes and ephemerals per
+ * path prefix, znodes per ephemeral owner and per ACL list. Every aggregating thread fills its own
+ * instance, and the instances are then {@link #merge merged}. Containers and TTL znodes also have
+ * an owner, which is not a session; they are counted apart from the ephemerals.
+ */
+public class SnapshotStats {
+  // The high byte of the owner of a TTL znode. EphemeralType.get only knows it when the server
+  // runs with zookeeper.extendedTypesEnabled, which the analyzer cannot tell.
+  private static final long TTL_MASK = 0xff00000000000000L;
+
+  final int depth;
+  long znodes;
+  long dataBytes;
+  long ephemerals;
+  long containers;
+  long ttls;
+  String largestPath;
+  long largestSize = -1;
+
+  /** The index of a prefix into the per-prefix arrays. */
+  private final StringIntMap prefixes = new StringIntMap();
+  private long[] prefixZnodes = new long[16];
+  private long[] prefixBytes = new long[16];
+  private long[] prefixEphemerals = new long[16];
+
+  /** Znodes per ephemeral owner session, and per ACL reference. */
+  final Map<Long, long[]> owners = new HashMap<>();
+  final Map<Long, long[]> acls = new HashMap<>();
+
+  /** Filled from the snapshot header by the reading thread. */
+  Map<Long, Integer> sessions = new HashMap<>();
+  Map<Long, List<ACL>> aclLists = new HashMap<>();
+
+  SnapshotStats(int depth) {
+    this.depth = depth;
+  }
+
+  /**
+   * Returns the first <tt>depth</tt> components of a path, the whole path if it has fewer, and "/"
+   * for the root, whose path is empty in a snapshot.
+   */
+  public static String prefix(String path, int depth) {
+    int end = 0;
+    for (int i = 0; i < depth; i++) {
+      end = path.indexOf('/', end + 1);
+      if (end < 0) {
+        return path.isEmpty() ? "/" : path;
+      }
+    }
+    return path.substring(0, end);
+  }
+
+  void add(String path, int dataLength, long acl, long owner) {
+    znodes++;
+    dataBytes += dataLength;
+    if (dataLength > largestSize) {
+      largestSize = dataLength;
+      largestPath = path.isEmpty() ? "/" : path;
+    }
+    int i = index(prefix(path, depth));
+    prefixZnodes[i]++;
+    prefixBytes[i] += dataLength;
+    if (owner == EphemeralType.CONTAINER_EPHEMERAL_OWNER) {
+      containers++;
+    } else if ((owner & TTL_MASK) == TTL_MASK) {
+      ttls++;
+    } else if (owner != 0) {
+      ephemerals++;
+      prefixEphemerals[i]++;
+      owners.computeIfAbsent(owner, k -> new long[1])[0]++;
+    }
+    acls.computeIfAbsent(acl, k -> new long[1])[0]++;
+  }
+
+  private int index(String prefix) {
+    int i = prefixes.get(prefix, -1);
+    if (i < 0) {
+      i = prefixes.size();
+      prefixes.put(prefix, i);
+      if (i == prefixZnodes.length) {
+        prefixZnodes = Arrays.copyOf(prefixZnodes, i * 2);
+        prefixBytes = Arrays.copyOf(prefixBytes, i * 2);
+        prefixEphemerals = Arrays.copyOf(prefixEphemerals, i * 2);
+      }
+    }
+    return i;
+  }
+
+  void merge(SnapshotStats other) {
+    znodes += other.znodes;
+    dataBytes += other.dataBytes;
+    ephemerals += other.ephemerals;
+    containers += other.containers;
+    ttls += other.ttls;
+    if (other.largestSize > largestSize) {
+      largestSize = other.largestSize;
+      largestPath = other.largestPath;
+    }
+    for (int j = 0; j < other.prefixes.size(); j++) {
+      int i = index(other.prefixes.keyAt(j));
+      prefixZnodes[i] += other.prefixZnodes[j];
+      prefixBytes[i] += other.prefixBytes[j];
+      prefixEphemerals[i] += other.prefixEphemerals[j];
+    }
+    other.owners.forEach((k, v) -> owners.computeIfAbsent(k, x -> new long[1])[0] += v[0]);
+    other.acls.forEach((k, v) -> acls.computeIfAbsent(k, x -> new long[1])[0] += v[0]);
+  }
+
+  public long znodes() {
+    return znodes;
+  }
+
+  public long dataBytes() {
+    return dataBytes;
+  }
+
+  public long ephemerals() {
+    return ephemerals;
+  }
+
+  public long containers() {
+    return containers;
+  }
+
+  public long ttls() {
+    return ttls;
+  }
+
+  /** Returns the znodes under each prefix, ordered by prefix. */
+  public Map<String, Long> prefixZnodes() {
+    Map<String, Long> map = new TreeMap<>();
+    for (int i = 0; i < prefixes.size(); i++) {
+      map.put(prefixes.keyAt(i), prefixZnodes[i]);
+    }
+    return map;
+  }
+
+  /** Returns the data bytes under each prefix, ordered by prefix. */
+  public Map<String, Long> prefixBytes() {
+    Map<String, Long> map = new TreeMap<>();
+    for (int i = 0; i < prefixes.size(); i++) {
+      map.put(prefixes.keyAt(i), prefixBytes[i]);
+    }
+    return map;
+  }
+
+  /** Returns the number of ephemeral znodes owned by each session. */
+  public Map<Long, Long> owners() {
+    Map<Long, Long> map = new TreeMap<>();
+    owners.forEach((k, v) -> map.put(k, v[0]));
+    return map;
+  }
+
+  /** Returns the number of znodes using each ACL list, keyed by its text. */
+  public Map<String, Long> aclUsage() {
+    Map<String, Long> map = new TreeMap<>();
+    acls.forEach((k, v) -> map.merge(aclText(k), v[0], Long::sum));
+    return map;
+  }
+
+  private String aclText(long ref) {
+    if (ref == -1) {
+      return "world:anyone:cdrwa";
+    }
+    List<ACL> list = aclLists.get(ref);
+    if (list == null) {
+      return "missing ref " + ref;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (ACL acl : list) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(acl.getId().getScheme()).append(':').append(acl.getId().getId()).append(':');
+      int perms = acl.getPerms();
+      sb.append((perms & Perms.CREATE) != 0 ? "c" : "");
+      sb.append((perms & Perms.DELETE) != 0 ? "d" : "");
+      sb.append((perms & Perms.READ) != 0 ? "r" : "");
+      sb.append((perms & Perms.WRITE) != 0 ? "w" : "");
+      sb.append((perms & Perms.ADMIN) != 0 ? "a" : "");
+    }
+    return sb.toString();
+  }
+
+  private List<Integer> prefixesByZnodes() {
+    List<Integer> order = new ArrayList<>(prefixes.size());
+    for (int i = 0; i < prefixes.size(); i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparingLong((Integer i) -> -prefixZnodes[i]));
+    return order;
+  }
+
+  private static <K> List<Map.Entry<K, long[]>> byCount(Map<K, long[]> map) {
+    List<Map.Entry<K, long[]>> entries = new ArrayList<>(map.entrySet());
+    entries.sort(Comparator.comparingLong(e -> -e.getValue()[0]));
+    return entries;
+  }
+
+  /** Prints the totals and the <tt>top</tt> largest prefixes, owners and ACL lists. */
+  public void printText(PrintStream out, int top) {
+    out.printf(
+        "%d znodes, %d data bytes, %d ephemerals, %d containers, %d TTL znodes, %d sessions,"
+            + " %d ACL lists\n",
+        znodes, dataBytes, ephemerals, containers, ttls, sessions.size(), aclLists.size());
+    if (largestPath != null) {
+      out.printf("largest znode: %s (%d bytes)\n", largestPath, largestSize);
+    }
+    String header = "prefix (depth " + depth + ")";
+    out.printf("\n%-48s %12s %14s %10s\n", header, "znodes", "bytes", "ephemeral");
+    List<Integer> order = prefixesByZnodes();
+    for (int i : order.subList(0, Math.min(top, order.size()))) {
+      out.printf(
+          "%-48s %12d %14d %10d\n",
+          prefixes.keyAt(i), prefixZnodes[i], prefixBytes[i], prefixEphemerals[i]);
+    }
+    if (order.size() > top) {
+      out.printf("... %d more prefixes\n", order.size() - top);
+    }
+    if (!owners.isEmpty()) {
+      out.printf("\n%-20s %12s %8s\n", "ephemeral owner", "znodes", "session");
+      List<Map.Entry<Long, long[]>> entries = byCount(owners);
+      for (Map.Entry<Long, long[]> e : entries.subList(0, Math.min(top, entries.size()))) {
+        out.printf(
+            "0x%-18x %12d %8s\n",
+            e.getKey(), e.getValue()[0], sessions.containsKey(e.getKey()) ? "live" : "gone");
+      }
+    }
+    out.printf("\n%12s  %s\n", "znodes", "acl");
+    for (Map.Entry<Long, long[]> e : byCount(acls)) {
+      out.printf("%12d  %s\n", e.getValue()[0], aclText(e.getKey()));
+    }
+  }
+
+  /** Prints one line per prefix, ordered by prefix. */
+  public void printCsv(PrintStream out) {
+    out.println("prefix,znodes,data_bytes,ephemerals");
+    Map<String, Integer> sorted = new TreeMap<>();
+    for (int i = 0; i < prefixes.size(); i++) {
+      sorted.put(prefixes.keyAt(i), i);
+    }
+    sorted.forEach(
+        (prefix, i) -> {
+          String field = prefix;
+          if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0) {
+            field = '"' + field.replace("\"", "\"\"") + '"';
+          }
+          out.printf("%s,%d,%d,%d\n", field, prefixZnodes[i], prefixBytes[i], prefixEphemerals[i]);
+        });
+  }
+
+  /** Writes everything, with prefixes ordered by znodes. */
+  public void printJson(OutputStream out) throws IOException {
+    JsonGenerator json =
+        new JsonFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    json.useDefaultPrettyPrinter();
+    json.writeStartObject();
+    json.writeNumberField("depth", depth);
+    json.writeNumberField("znodes", znodes);
+    json.writeNumberField("dataBytes", dataBytes);
+    json.writeNumberField("ephemerals", ephemerals);
+    json.writeNumberField("containers", containers);
+    json.writeNumberField("ttls", ttls);
+    json.writeNumberField("sessions", sessions.size());
+    if (largestPath != null) {
+      json.writeObjectFieldStart("largest");
+      json.writeStringField("path", largestPath);
+      json.writeNumberField("bytes", largestSize);
+      json.writeEndObject();
+    }
+    json.writeArrayFieldStart("prefixes");
+    for (int i : prefixesByZnodes()) {
+      json.writeStartObject();
+      json.writeStringField("prefix", prefixes.keyAt(i));
+      json.writeNumberField("znodes", prefixZnodes[i]);
+      json.writeNumberField("dataBytes", prefixBytes[i]);
+      json.writeNumberField("ephemerals", prefixEphemerals[i]);
+      json.writeEndObject();
+    }
+    json.writeEndArray();
+    json.writeArrayFieldStart("owners");
+    for (Map.Entry<Long, long[]> e : byCount(owners)) {
+      json.writeStartObject();
+      json.writeStringField("session", "0x" + Long.toHexString(e.getKey()));
+      json.writeNumberField("znodes", e.getValue()[0]);
+      json.writeBooleanField("live", sessions.containsKey(e.getKey()));
+      json.writeEndObject();
+    }
+    json.writeEndArray();
+    json.writeArrayFieldStart("acls");
+    for (Map.Entry<Long, long[]> e : byCount(acls)) {
+      json.writeStartObject();
+      json.writeStringField("acl", aclText(e.getKey()));
+      json.writeNumberField("znodes", e.getValue()[0]);
+      json.writeEndObject();
+    }
+    json.writeEndArray();
+    json.writeEndObject();
+    json.flush();
+    out.write("\n".getBytes(StandardCharsets.UTF_8));
+  }
+}
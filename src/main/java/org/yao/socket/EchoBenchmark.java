@@ -0,0 +1,97 @@
+package org.yao.socket;
+
+import org.yao.bench.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput and the round-trip latency of a line-based echo server with many
+ * concurrent connections. Every connection runs on its own virtual thread and sends a line as soon
+ * as the previous one has been echoed. It works against all the echo servers of this repository,
+ * e.g. the modes of {@link EchoServer} and the Netty <tt>EchoServer</tt>:
+ *
+ * <pre>
+ * ulimit -n 65536
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 virtual
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 pool 200
+ * java -Dport=6000 -cp build/classes/java/main:$CLASSPATH org.yao.netty.echo.EchoServer
+ * java -cp build/classes/java/main org.yao.socket.EchoBenchmark 127.0.0.1 6000 10000 30
+ * </pre>
+ */
+public class EchoBenchmark {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 4) {
+      System.err.println(
+          "Usage: java EchoBenchmark <ip> <port number> <connections> <seconds> [payload size]");
+      System.exit(1);
+    }
+    String ip = args[0];
+    int port = Integer.parseInt(args[1]);
+    int connections = Integer.parseInt(args[2]);
+    long seconds = Long.parseLong(args[3]);
+    int size = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+    byte[] line = new byte[size];
+    Arrays.fill(line, (byte) 'x');
+    line[size - 1] = '\n';
+
+    LatencyHistogram latency = new LatencyHistogram();
+    AtomicLong failures = new AtomicLong();
+    AtomicLong starved = new AtomicLong();
+    CountDownLatch connected = new CountDownLatch(connections);
+    CountDownLatch start = new CountDownLatch(1);
+    long[] deadline = new long[1];
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < connections; i++) {
+        executor.execute(
+            () -> {
+              try (Socket socket = new Socket(ip, port)) {
+                socket.setTcpNoDelay(true);
+                // A connection queued behind a busy thread pool may never be served.
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(seconds + 1));
+                OutputStream out = socket.getOutputStream();
+                BufferedReader in =
+                    new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                connected.countDown();
+                start.await();
+                while (System.nanoTime() < deadline[0]) {
+                  long sent = System.nanoTime();
+                  out.write(line);
+                  if (in.readLine() == null) {
+                    break;
+                  }
+                  latency.recordNanos(System.nanoTime() - sent);
+                }
+              } catch (SocketTimeoutException e) {
+                starved.incrementAndGet();
+              } catch (IOException e) {
+                failures.incrementAndGet();
+                connected.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+      connected.await();
+      System.out.printf("%d connections open, %d failed\n", connections, failures.get());
+      deadline[0] = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+      start.countDown();
+    }
+    System.out.printf(
+        "throughput: %.0f msg/s, %d connections starved, latency: %s\n",
+        (double) latency.count() / seconds, starved.get(), latency.summary());
+  }
+}
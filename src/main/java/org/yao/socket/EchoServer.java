@@ -10,19 +10,52 @@ import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * By default, the server serves a single connection. The other modes serve any number of
+ * connections: <tt>virtual</tt> serves every connection on its own virtual thread, <tt>pool</tt>
+ * on a fixed pool of platform threads, and <tt>nio</tt> with {@link NioEchoServer}.
+ *
  * <pre>
  * java -cp build/classes/java/main org.yao.socket.EchoServer 6000
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 virtual
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 pool 200
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 nio 4
  * </pre>
  */
 public class EchoServer {
   public static void main(String[] args) throws IOException {
-    if (args.length != 1) {
-      System.err.println("Usage: java EchoServer <port number>");
+    if (args.length < 1 || args.length > 3) {
+      System.err.println(
+          "Usage: java EchoServer <port number> [single|virtual|pool|nio] [threads]");
       System.exit(1);
     }
     int port = Integer.parseInt(args[0]);
+    String mode = args.length > 1 ? args[1] : "single";
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+    switch (mode) {
+      case "single":
+        serveOne(port);
+        break;
+      case "virtual":
+        serveAll(port, Executors.newVirtualThreadPerTaskExecutor());
+        break;
+      case "pool":
+        serveAll(port, Executors.newFixedThreadPool(threads > 0 ? threads : 200));
+        break;
+      case "nio":
+        int reactors = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        new NioEchoServer(port, reactors).run();
+        break;
+      default:
+        System.err.println("Unknown mode: " + mode);
+        System.exit(1);
+    }
+  }
+
+  private static void serveOne(int port) throws IOException {
     ServerSocket serverSocket = null;
     Socket socket = null;
     PrintWriter out = null;
@@ -52,6 +85,33 @@ public class EchoServer {
     }
   }
 
+  /** Serves every accepted connection as a task of the executor. */
+  private static void serveAll(int port, ExecutorService executor) throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket()) {
+      serverSocket.setReuseAddress(true);
+      serverSocket.bind(new InetSocketAddress(port), 1024);
+      while (true) {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> serve(socket));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void serve(Socket socket) {
+    try (socket;
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+      String msg;
+      while ((msg = in.readLine()) != null) {
+        out.println(msg);
+      }
+    } catch (IOException e) {
+      // The connection has been reset by the client.
+    }
+  }
+
   private static void close(Closeable closeable) {
     if (closeable == null) {
       return;
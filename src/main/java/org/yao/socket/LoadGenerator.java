@@ -0,0 +1,341 @@
+package org.yao.socket;
+
+import org.yao.bench.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load generator for the echo servers of this repository: the socket {@link EchoServer}, the
+ * Netty <tt>EchoServer</tt> and <tt>c-code/echo_server.c</tt>. Unlike {@link EchoClient}, which
+ * waits for every echo before sending the next line, each connection keeps up to <tt>depth</tt>
+ * messages in flight. A message is <tt>size</tt> bytes ending with a newline, so line-based
+ * servers work too.
+ *
+ * <p>With a <tt>rate</tt> of 0 the load is closed-loop: a message is sent as soon as a response
+ * frees a slot. Otherwise messages are scheduled at the given total rate regardless of how fast
+ * the server responds, and the latency is measured from the time a message was scheduled. A server
+ * which falls behind is therefore charged for the queueing delay it causes instead of slowing the
+ * load down.
+ *
+ * <pre>
+ * java -cp build/classes/java/main org.yao.socket.LoadGenerator 127.0.0.1 6000 1000 16 64 0 30
+ * java -cp build/classes/java/main org.yao.socket.LoadGenerator 127.0.0.1 8007 1000 4 64 200000 30
+ * java -cp build/classes/java/main org.yao.socket.LoadGenerator 127.0.0.1 5000 1 16 64 0 30
+ * </pre>
+ */
+public class LoadGenerator {
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final InetSocketAddress address;
+  private final int connections;
+  private final int depth;
+  private final int size;
+  private final double rate;
+  private final int threads;
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private volatile boolean stopped;
+
+  public LoadGenerator(
+      InetSocketAddress address, int connections, int depth, int size, double rate, int threads) {
+    if (size < 1) {
+      throw new IllegalArgumentException("payload size must be positive");
+    }
+    this.address = address;
+    this.connections = connections;
+    this.depth = depth;
+    this.size = size;
+    this.rate = rate;
+    this.threads = Math.min(threads, connections);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 7) {
+      System.err.println(
+          "Usage: java LoadGenerator <ip> <port number> <connections> <depth> <payload size> "
+              + "<rate, 0 for closed loop> <seconds> [threads]");
+      System.exit(1);
+    }
+    InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+    int connections = Integer.parseInt(args[2]);
+    int depth = Integer.parseInt(args[3]);
+    int size = Integer.parseInt(args[4]);
+    double rate = Double.parseDouble(args[5]);
+    long seconds = Long.parseLong(args[6]);
+    int threads =
+        args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+    LoadGenerator generator = new LoadGenerator(address, connections, depth, size, rate, threads);
+    LatencyHistogram latency = generator.run(seconds);
+    System.out.printf(
+        "total: %.0f msg/s, latency: %s\n", (double) latency.count() / seconds, latency.summary());
+    if (generator.failed() > 0) {
+      System.out.printf("%d of %d connections failed\n", generator.failed(), connections);
+    }
+  }
+
+  /** Returns the number of connections closed by the server or broken by an error. */
+  public long failed() {
+    return failed.sum();
+  }
+
+  /** Generates load for the given duration and returns the latencies of all the responses. */
+  public LatencyHistogram run(long seconds) throws IOException, InterruptedException {
+    ByteBuffer burst = ByteBuffer.allocateDirect(size * depth);
+    for (int i = 0; i < depth; i++) {
+      for (int j = 0; j < size - 1; j++) {
+        burst.put((byte) ('a' + j % 26));
+      }
+      burst.put((byte) '\n');
+    }
+    burst.flip();
+
+    List<Worker> workers = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      workers.add(new Worker(burst.asReadOnlyBuffer(), rate / threads));
+    }
+    for (int i = 0; i < connections; i++) {
+      SocketChannel channel = SocketChannel.open(address);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      channel.configureBlocking(false);
+      workers.get(i % threads).add(channel);
+    }
+
+    List<Thread> workerThreads = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      Thread thread = new Thread(workers.get(i), "load-" + i);
+      thread.start();
+      workerThreads.add(thread);
+    }
+    long last = 0;
+    for (long i = 1; i <= seconds; i++) {
+      Thread.sleep(1000);
+      long now = completed.sum();
+      System.out.printf("%ds: %d msg/s\n", i, now - last);
+      last = now;
+    }
+    stopped = true;
+    LatencyHistogram latency = new LatencyHistogram();
+    for (int i = 0; i < threads; i++) {
+      workerThreads.get(i).join();
+      latency.add(workers.get(i).latency);
+    }
+    return latency;
+  }
+
+  /** Drives a share of the connections and of the rate on one selector. */
+  private class Worker implements Runnable {
+    private final Selector selector = Selector.open();
+    private final ByteBuffer burst;
+    private final ByteBuffer readBuf = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final List<Connection> connections = new ArrayList<>();
+    private final long intervalNanos;
+    // Scheduled messages which no connection had room for yet. Their send times are
+    // backlogStart, backlogStart + intervalNanos, ...
+    private long backlogStart;
+    private long backlog;
+    private int next;
+
+    Worker(ByteBuffer burst, double rate) throws IOException {
+      this.burst = burst;
+      this.intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+    }
+
+    void add(SocketChannel channel) throws IOException {
+      Connection connection = new Connection(channel);
+      connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      connections.add(connection);
+    }
+
+    @Override
+    public void run() {
+      try {
+        long nextSend = System.nanoTime();
+        if (intervalNanos == 0) {
+          for (Connection connection : new ArrayList<>(connections)) {
+            while (connection.outstanding < depth) {
+              connection.enqueue(nextSend);
+            }
+            try {
+              connection.flush();
+            } catch (IOException e) {
+              connection.fail();
+            }
+          }
+        }
+        while (!stopped) {
+          if (intervalNanos > 0) {
+            long now = System.nanoTime();
+            if (backlog == 0) {
+              backlogStart = nextSend;
+            }
+            while (nextSend <= now) {
+              backlog++;
+              nextSend += intervalNanos;
+            }
+            assignBacklog();
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(nextSend - System.nanoTime());
+            selector.select(Math.max(1, waitMillis));
+          } else {
+            selector.select(100);
+          }
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            Connection connection = (Connection) key.attachment();
+            try {
+              // The key may have been cancelled by a failure while handling another one.
+              if (key.isValid() && key.isReadable()) {
+                connection.read();
+              }
+              if (key.isValid() && key.isWritable()) {
+                connection.flush();
+              }
+            } catch (IOException e) {
+              connection.fail();
+            }
+          }
+        }
+        for (Connection connection : connections) {
+          connection.close();
+        }
+        selector.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Hands scheduled messages to the connections round-robin. */
+    private void assignBacklog() {
+      int full = 0;
+      while (backlog > 0 && full < connections.size()) {
+        Connection connection = connections.get(next);
+        next = (next + 1) % connections.size();
+        if (connection.outstanding < depth) {
+          connection.enqueue(backlogStart);
+          try {
+            connection.flush();
+          } catch (IOException e) {
+            // Its messages go back to the backlog.
+            connection.fail();
+            continue;
+          }
+          backlogStart += intervalNanos;
+          backlog--;
+          full = 0;
+        } else {
+          full++;
+        }
+      }
+    }
+
+    private class Connection {
+      final SocketChannel channel;
+      SelectionKey key;
+      // The scheduled send times of the messages in flight, oldest first.
+      final long[] sent = new long[depth];
+      int head;
+      int outstanding;
+      // Messages which have been scheduled but not written yet.
+      int unsent;
+      ByteBuffer out;
+      long partial;
+
+      Connection(SocketChannel channel) {
+        this.channel = channel;
+      }
+
+      void enqueue(long scheduled) {
+        sent[(head + outstanding) % depth] = scheduled;
+        outstanding++;
+        unsent++;
+      }
+
+      /** Writes the unsent messages. As all messages are identical, n of them are one slice. */
+      void flush() throws IOException {
+        while (true) {
+          if (out == null || !out.hasRemaining()) {
+            if (unsent == 0) {
+              key.interestOps(SelectionKey.OP_READ);
+              return;
+            }
+            out = burst.duplicate();
+            out.limit(unsent * size);
+            unsent = 0;
+          }
+          channel.write(out);
+          if (out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+          }
+        }
+      }
+
+      /** Drops a connection the server has closed or which has failed; its messages are lost. */
+      void fail() {
+        int index = connections.indexOf(this);
+        if (index < 0) {
+          return;
+        }
+        connections.remove(index);
+        if (next > index) {
+          next--;
+        }
+        if (next >= connections.size()) {
+          next = 0;
+        }
+        failed.increment();
+        close();
+      }
+
+      void close() {
+        key.cancel();
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // Already closed.
+        }
+      }
+
+      void read() throws IOException {
+        readBuf.clear();
+        int n = channel.read(readBuf);
+        if (n < 0) {
+          fail();
+          return;
+        }
+        long now = System.nanoTime();
+        partial += n;
+        int responses = 0;
+        while (partial >= size && outstanding > 0) {
+          partial -= size;
+          latency.recordNanos(now - sent[head]);
+          head = (head + 1) % depth;
+          outstanding--;
+          responses++;
+        }
+        completed.add(responses);
+        if (intervalNanos == 0) {
+          while (outstanding < depth) {
+            enqueue(now);
+          }
+          flush();
+        } else if (backlog > 0) {
+          assignBacklog();
+        }
+      }
+    }
+  }
+}
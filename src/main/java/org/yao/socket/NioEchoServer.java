@@ -0,0 +1,176 @@
+package org.yao.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An echo server serving many connections with non-blocking channels, the Java counterpart of
+ * <tt>c-code/epoll_example.c</tt>. The main thread accepts connections and hands them out
+ * round-robin to the reactor threads. Every reactor owns a {@link Selector} and one direct buffer
+ * which all of its connections read into and write back from. Only the bytes a socket could not
+ * take immediately are copied, and the connection stops reading until they have been written.
+ *
+ * <pre>
+ * java -cp build/classes/java/main org.yao.socket.EchoServer 6000 nio 4
+ * </pre>
+ */
+public class NioEchoServer {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int BACKLOG = 1024;
+  private static final long ACCEPT_BACKOFF_MILLIS = 10;
+
+  private final int port;
+  private final Reactor[] reactors;
+
+  public NioEchoServer(int port, int reactorCount) throws IOException {
+    this.port = port;
+    this.reactors = new Reactor[reactorCount];
+    for (int i = 0; i < reactorCount; i++) {
+      reactors[i] = new Reactor();
+    }
+  }
+
+  public void run() throws IOException {
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+      for (int i = 0; i < reactors.length; i++) {
+        Thread thread = new Thread(reactors[i], "reactor-" + i);
+        thread.setDaemon(true);
+        thread.start();
+      }
+      for (int next = 0; ; next = (next + 1) % reactors.length) {
+        SocketChannel channel;
+        try {
+          channel = serverChannel.accept();
+        } catch (ClosedChannelException e) {
+          throw e;
+        } catch (IOException e) {
+          // Out of file descriptors, for example. Back off and let connections close.
+          System.err.printf("accept: %s\n", e);
+          sleep(ACCEPT_BACKOFF_MILLIS);
+          continue;
+        }
+        try {
+          channel.configureBlocking(false);
+          channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+          // Reset by the peer already.
+          closeQuietly(channel);
+          continue;
+        }
+        reactors[next].register(channel);
+      }
+    }
+  }
+
+  private static void sleep(long millis) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static void closeQuietly(Channel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Already closed.
+    }
+  }
+
+  private static class Reactor implements Runnable {
+    private final Selector selector;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+
+    Reactor() throws IOException {
+      selector = Selector.open();
+    }
+
+    void register(SocketChannel channel) {
+      registrations.add(channel);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          selector.select();
+          SocketChannel channel;
+          while ((channel = registrations.poll()) != null) {
+            try {
+              channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+              closeQuietly(channel);
+            }
+          }
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            try {
+              if (key.isReadable()) {
+                read(key);
+              } else if (key.isWritable()) {
+                write(key);
+              }
+            } catch (IOException e) {
+              close(key);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+      SocketChannel channel = (SocketChannel) key.channel();
+      buf.clear();
+      int n = channel.read(buf);
+      if (n < 0) {
+        // End of file. The remote has closed the connection.
+        close(key);
+        return;
+      }
+      buf.flip();
+      channel.write(buf);
+      if (buf.hasRemaining()) {
+        ByteBuffer pending = ByteBuffer.allocate(buf.remaining());
+        pending.put(buf).flip();
+        key.attach(pending);
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+      ByteBuffer pending = (ByteBuffer) key.attachment();
+      ((SocketChannel) key.channel()).write(pending);
+      if (!pending.hasRemaining()) {
+        key.attach(null);
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    }
+
+    private void close(SelectionKey key) {
+      key.cancel();
+      closeQuietly(key.channel());
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package org.yao.txnlog;
+
+import java.nio.file.Path;
+
+/**
+ * Summarizes ZooKeeper transaction logs: the operation mix, the write rate per path or path
+ * prefix and the payload sizes. The logs are streamed through {@link TxnLogFile}, so memory only
+ * grows with the number of distinct prefixes.
+ *
+ * <p>Usage: <tt>TxnLogAnalyzer log-file-or-directory ...</tt>, with the system properties:
+ *
+ * <ul>
+ *   <li><tt>depth</tt>: the number of path components a prefix has; whole paths by default.
+ *   <li><tt>format</tt>: <tt>text</tt> (default) or <tt>csv</tt>.
+ *   <li><tt>top</tt>: the number of prefixes in the text report, 20 by default.
+ * </ul>
+ */
+public class TxnLogAnalyzer {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("USAGE: TxnLogAnalyzer log-file-or-directory ...");
+      System.exit(2);
+    }
+    int depth = Integer.getInteger("depth", Integer.MAX_VALUE);
+    String format = System.getProperty("format", "text");
+    int top = Integer.getInteger("top", 20);
+
+    long start = System.nanoTime();
+    TxnLogStats stats = new TxnLogStats(depth);
+    int logs;
+    try (TxnLogs txns = TxnLogs.of(args)) {
+      logs = txns.size();
+      for (TxnLogFile.Entry entry = txns.next(); entry != null; entry = txns.next()) {
+        stats.add(entry);
+      }
+      for (Path path : txns.partial()) {
+        System.err.printf("%s ends with a partial transaction\n", path);
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if (format.equals("csv")) {
+      stats.printCsv(System.out);
+    } else {
+      System.out.printf("%d logs read in %.2f s\n", logs, seconds);
+      stats.printText(System.out, top);
+    }
+  }
+}
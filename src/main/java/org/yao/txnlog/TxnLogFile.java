@@ -0,0 +1,227 @@
+package org.yao.txnlog;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateContainerTxn;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTTLTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.yao.jute.ByteBufferInputArchive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+
+/**
+ * Reads the transactions of a ZooKeeper 3.5 transaction log file in order. The file is
+ * memory-mapped a window of at most {@link #WINDOW_SIZE} bytes at a time, every entry is checked
+ * against its Adler32 checksum and decoded straight from the mapping, and nothing is kept after
+ * {@link #next()} returns it.
+ *
+ * <p>An entry is the checksum, the length and the bytes of a {@link TxnHeader} followed by the
+ * transaction, and an 'B' byte. A log file is preallocated with zeros, so the first entry with
+ * length 0 ends it; so does an entry cut short by a crash.
+ */
+public final class TxnLogFile implements Closeable {
+  static final int WINDOW_SIZE = 1 << 30;
+  private static final int VERSION = 2;
+  private static final byte EOR = 'B';
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long fileSize;
+  private final int windowSize;
+  private final Adler32 crc = new Adler32();
+  private MappedByteBuffer window;
+  private long windowBase;
+  private boolean partial;
+
+  /** A decoded entry: the header, the transaction, which is null for some types, and its size. */
+  public static final class Entry {
+    public final TxnHeader header;
+    public final Record txn;
+    public final int size;
+
+    Entry(TxnHeader header, Record txn, int size) {
+      this.header = header;
+      this.txn = txn;
+      this.size = size;
+    }
+  }
+
+  public TxnLogFile(Path path) throws IOException {
+    this(path, WINDOW_SIZE);
+  }
+
+  TxnLogFile(Path path, int windowSize) throws IOException {
+    this.path = path;
+    this.windowSize = windowSize;
+    channel = FileChannel.open(path);
+    fileSize = channel.size();
+    map(0);
+    if (window.remaining() < 16) {
+      close();
+      throw new IOException(path + " is too short for a transaction log");
+    }
+    int magic = window.getInt();
+    int version = window.getInt();
+    window.getLong(); // dbid
+    if (magic != FileTxnLog.TXNLOG_MAGIC || version != VERSION) {
+      close();
+      throw new IOException(
+          String.format("%s is not a version %d transaction log", path, VERSION));
+    }
+  }
+
+  /** Returns the log files of a directory ordered by the zxid in their names, or a file itself. */
+  public static List<Path> logs(Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      List<Path> logs = new ArrayList<>();
+      logs.add(path);
+      return logs;
+    }
+    try (Stream<Path> files = Files.list(path)) {
+      return files
+          .filter(p -> p.getFileName().toString().startsWith("log."))
+          .sorted(
+              (a, b) ->
+                  Long.compareUnsigned(
+                      Long.parseUnsignedLong(a.getFileName().toString().substring(4), 16),
+                      Long.parseUnsignedLong(b.getFileName().toString().substring(4), 16)))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private void map(long base) throws IOException {
+    windowBase = base;
+    long size = Math.min(windowSize, fileSize - base);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, base, size);
+  }
+
+  /** Makes at least <tt>n</tt> bytes from the current position available, or returns false. */
+  private boolean require(int n) throws IOException {
+    if (window.remaining() >= n) {
+      return true;
+    }
+    long position = windowBase + window.position();
+    if (fileSize - position < n) {
+      return false;
+    }
+    if (n > windowSize) {
+      throw new IOException(path + ": entry of " + n + " bytes does not fit in a window");
+    }
+    map(position);
+    return true;
+  }
+
+  /** Returns whether the last {@link #next()} stopped at an entry cut short. */
+  public boolean partial() {
+    return partial;
+  }
+
+  /** Returns the next entry, or null at the end of the log. */
+  public Entry next() throws IOException {
+    if (!require(12)) {
+      partial = windowBase + window.position() < fileSize;
+      return null;
+    }
+    long checksum = window.getLong();
+    int length = window.getInt();
+    if (length == 0) {
+      return null;
+    }
+    if (length < 0 || !require(length + 1)) {
+      partial = true;
+      return null;
+    }
+    ByteBuffer bytes = window.slice();
+    bytes.limit(length);
+    window.position(window.position() + length);
+    if (window.get() != EOR) {
+      partial = true;
+      return null;
+    }
+    crc.reset();
+    crc.update(bytes.duplicate());
+    if (crc.getValue() != checksum) {
+      throw new IOException(
+          String.format("%s: checksum mismatch at offset %d", path, offset() - length - 13));
+    }
+    ByteBufferInputArchive ia = new ByteBufferInputArchive(bytes);
+    TxnHeader header = new TxnHeader();
+    header.deserialize(ia, "hdr");
+    Record txn = newTxn(header.getType());
+    if (txn != null) {
+      txn.deserialize(ia, "txn");
+    }
+    return new Entry(header, txn, length);
+  }
+
+  /** The offset of the next entry in the file. */
+  long offset() {
+    return windowBase + window.position();
+  }
+
+  /** Returns an empty transaction of a type, like <tt>SerializeUtils.deserializeTxn</tt>. */
+  static Record newTxn(int type) {
+    switch (type) {
+      case OpCode.createSession:
+        return new CreateSessionTxn();
+      case OpCode.create:
+      case OpCode.create2:
+        return new CreateTxn();
+      case OpCode.createTTL:
+        return new CreateTTLTxn();
+      case OpCode.createContainer:
+        return new CreateContainerTxn();
+      case OpCode.delete:
+      case OpCode.deleteContainer:
+        return new DeleteTxn();
+      case OpCode.reconfig:
+      case OpCode.setData:
+        return new SetDataTxn();
+      case OpCode.setACL:
+        return new SetACLTxn();
+      case OpCode.error:
+        return new ErrorTxn();
+      case OpCode.multi:
+        return new MultiTxn();
+      case OpCode.check:
+        return new CheckVersionTxn();
+      default:
+        return null;
+    }
+  }
+
+  /** Decodes the data of a transaction of a {@link MultiTxn}. */
+  static Record decode(int type, byte[] data) throws IOException {
+    Record txn = newTxn(type);
+    if (txn != null) {
+      txn.deserialize(new ByteBufferInputArchive(ByteBuffer.wrap(data)), "txn");
+    }
+    return txn;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+}
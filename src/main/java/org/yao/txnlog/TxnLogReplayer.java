@@ -0,0 +1,351 @@
+package org.yao.txnlog;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.txn.CreateContainerTxn;
+import org.apache.zookeeper.txn.CreateTTLTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.yao.bench.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-issues the writes recorded in transaction logs against an ensemble, with asynchronous calls
+ * so that up to <tt>outstanding</tt> of them are in flight. Each transaction is sent when it is
+ * due: at the time it was recorded, relative to the first one and divided by <tt>speedup</tt>.
+ * The load is open-loop like that of <tt>LoadGenerator</tt>, so the latency is measured from the
+ * due time and includes any time spent waiting for a free slot. With a <tt>speedup</tt> of 0 a
+ * transaction is due as soon as it is read.
+ *
+ * <p>The writes of one recorded session go to the same one of <tt>sessions</tt> sessions, so they
+ * stay in order. Znodes are created under <tt>root</tt>, with an open ACL since the recorded ACLs
+ * may lock the replayer out; <tt>setACL</tt> and <tt>createSession</tt> are skipped, and versions
+ * are not checked. The replaying sessions outlive the recorded ones, so the ephemerals created for
+ * a recorded session are deleted when its <tt>closeSession</tt> comes. Errors such as
+ * <tt>NONODE</tt> are counted rather than fatal.
+ *
+ * <p>Usage: <tt>TxnLogReplayer hostPort log-file-or-directory ...</tt>, with the system properties
+ * <tt>speedup</tt> (1, 0 for as fast as possible), <tt>outstanding</tt> (1000), <tt>sessions</tt>
+ * (4), <tt>root</tt> (<tt>/replay</tt>, empty for the recorded paths) and <tt>interval</tt> (10
+ * seconds between progress lines).
+ */
+public class TxnLogReplayer {
+  private final ZooKeeper[] sessions;
+  private final String root;
+  private final double speedup;
+  private final int outstanding;
+  private final Semaphore window;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final Map<Code, LongAdder> results = new ConcurrentHashMap<>();
+  private final LongAdder issued = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  // The replayed ephemerals still alive, by recorded session. Only used by the replaying thread.
+  private final Map<Long, Set<String>> ephemerals = new HashMap<>();
+  private final Map<String, Long> owners = new HashMap<>();
+  private volatile long lagNanos;
+
+  public TxnLogReplayer(ZooKeeper[] sessions, String root, double speedup, int outstanding) {
+    this.sessions = sessions;
+    this.root = root;
+    this.speedup = speedup;
+    this.outstanding = outstanding;
+    window = new Semaphore(outstanding);
+  }
+
+  public LatencyHistogram latency() {
+    return latency;
+  }
+
+  /** Returns the number of calls completed with each result code. */
+  public Map<Code, Long> results() {
+    Map<Code, Long> map = new TreeMap<>();
+    results.forEach((k, v) -> map.put(k, v.sum()));
+    return map;
+  }
+
+  public long issued() {
+    return issued.sum();
+  }
+
+  public long skipped() {
+    return skipped.sum();
+  }
+
+  /** Replays every transaction of <tt>txns</tt> and waits for the last call to complete. */
+  public void replay(TxnLogs txns) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    long firstTime = -1;
+    for (TxnLogFile.Entry entry = txns.next(); entry != null; entry = txns.next()) {
+      if (firstTime < 0) {
+        firstTime = entry.header.getTime();
+      }
+      long due;
+      if (speedup > 0) {
+        due = start + (long) ((entry.header.getTime() - firstTime) * 1e6 / speedup);
+        for (long delay = due - System.nanoTime(); delay > 0; delay = due - System.nanoTime()) {
+          LockSupport.parkNanos(delay);
+        }
+      } else {
+        // Without a schedule, a transaction is due when it is read.
+        due = System.nanoTime();
+      }
+      long clientId = entry.header.getClientId();
+      ZooKeeper zk = sessions[Math.floorMod(Long.hashCode(clientId), sessions.length)];
+      boolean replayed;
+      if (entry.header.getType() == OpCode.closeSession) {
+        replayed = closeSession(zk, clientId, due);
+      } else {
+        // A reconfig is recorded as a setData of /zookeeper/config.
+        replayed =
+            entry.header.getType() != OpCode.reconfig && issue(zk, clientId, entry.txn, due);
+      }
+      if (!replayed) {
+        skipped.increment();
+      }
+      lagNanos = System.nanoTime() - due;
+    }
+    window.acquire(outstanding);
+    window.release(outstanding);
+  }
+
+  private void completed(int rc, long due) {
+    latency.recordNanos(System.nanoTime() - due);
+    results.computeIfAbsent(Code.get(rc), k -> new LongAdder()).increment();
+    window.release();
+  }
+
+  /** Deletes the ephemerals of a recorded session, or returns false if it has none. */
+  private boolean closeSession(ZooKeeper zk, long clientId, long due)
+      throws InterruptedException {
+    Set<String> paths = ephemerals.remove(clientId);
+    if (paths == null) {
+      return false;
+    }
+    for (String path : paths) {
+      owners.remove(path);
+      window.acquire();
+      zk.delete(path, -1, (rc, p, ctx) -> completed(rc, due), null);
+    }
+    issued.increment();
+    return true;
+  }
+
+  private void created(String path, long clientId) {
+    // Forget an earlier owner whose delete is not in these logs.
+    deleted(path);
+    owners.put(path, clientId);
+    ephemerals.computeIfAbsent(clientId, k -> new HashSet<>()).add(path);
+  }
+
+  private void deleted(String path) {
+    Long owner = owners.remove(path);
+    if (owner != null) {
+      Set<String> paths = ephemerals.get(owner);
+      paths.remove(path);
+      if (paths.isEmpty()) {
+        ephemerals.remove(owner);
+      }
+    }
+  }
+
+  /** Sends the call for <tt>txn</tt>, or returns false if it is not replayed. */
+  private boolean issue(ZooKeeper zk, long clientId, Record txn, long due)
+      throws IOException, InterruptedException {
+    AsyncCallback.StringCallback created = (rc, path, ctx, name) -> completed(rc, due);
+    if (txn instanceof CreateTxn) {
+      CreateTxn t = (CreateTxn) txn;
+      CreateMode mode = t.getEphemeral() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT;
+      if (t.getEphemeral()) {
+        created(root + t.getPath(), clientId);
+      }
+      window.acquire();
+      zk.create(root + t.getPath(), t.getData(), Ids.OPEN_ACL_UNSAFE, mode, created, null);
+    } else if (txn instanceof CreateContainerTxn) {
+      CreateContainerTxn t = (CreateContainerTxn) txn;
+      window.acquire();
+      CreateMode mode = CreateMode.CONTAINER;
+      zk.create(root + t.getPath(), t.getData(), Ids.OPEN_ACL_UNSAFE, mode, created, null);
+    } else if (txn instanceof CreateTTLTxn) {
+      CreateTTLTxn t = (CreateTTLTxn) txn;
+      window.acquire();
+      zk.create(
+          root + t.getPath(),
+          t.getData(),
+          Ids.OPEN_ACL_UNSAFE,
+          CreateMode.PERSISTENT_WITH_TTL,
+          (rc, path, ctx, name, stat) -> completed(rc, due),
+          null,
+          t.getTtl());
+    } else if (txn instanceof SetDataTxn) {
+      SetDataTxn t = (SetDataTxn) txn;
+      window.acquire();
+      zk.setData(
+          root + t.getPath(), t.getData(), -1, (rc, path, ctx, stat) -> completed(rc, due), null);
+    } else if (txn instanceof DeleteTxn) {
+      String path = root + ((DeleteTxn) txn).getPath();
+      deleted(path);
+      window.acquire();
+      zk.delete(path, -1, (rc, p, ctx) -> completed(rc, due), null);
+    } else if (txn instanceof MultiTxn) {
+      List<Op> ops = new ArrayList<>();
+      for (Txn t : ((MultiTxn) txn).getTxns()) {
+        Op op = op(clientId, TxnLogFile.decode(t.getType(), t.getData()));
+        if (op != null) {
+          ops.add(op);
+        }
+      }
+      if (ops.isEmpty()) {
+        return false;
+      }
+      window.acquire();
+      zk.multi(ops, (rc, path, ctx, opResults) -> completed(rc, due), null);
+    } else {
+      return false;
+    }
+    issued.increment();
+    return true;
+  }
+
+  /** Returns the operation of a transaction of a <tt>multi</tt>, or null to leave it out. */
+  private Op op(long clientId, Record txn) {
+    if (txn instanceof CreateTxn) {
+      CreateTxn t = (CreateTxn) txn;
+      CreateMode mode = t.getEphemeral() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT;
+      if (t.getEphemeral()) {
+        created(root + t.getPath(), clientId);
+      }
+      return Op.create(root + t.getPath(), t.getData(), Ids.OPEN_ACL_UNSAFE, mode);
+    } else if (txn instanceof CreateContainerTxn) {
+      CreateContainerTxn t = (CreateContainerTxn) txn;
+      return Op.create(root + t.getPath(), t.getData(), Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+    } else if (txn instanceof CreateTTLTxn) {
+      CreateTTLTxn t = (CreateTTLTxn) txn;
+      return Op.create(
+          root + t.getPath(),
+          t.getData(),
+          Ids.OPEN_ACL_UNSAFE,
+          CreateMode.PERSISTENT_WITH_TTL,
+          t.getTtl());
+    } else if (txn instanceof SetDataTxn) {
+      SetDataTxn t = (SetDataTxn) txn;
+      return Op.setData(root + t.getPath(), t.getData(), -1);
+    } else if (txn instanceof DeleteTxn) {
+      String path = root + ((DeleteTxn) txn).getPath();
+      deleted(path);
+      return Op.delete(path, -1);
+    }
+    // A check always passes without versions, and an error has nothing to replay.
+    return null;
+  }
+
+  /** Creates <tt>root</tt> and its parents if they do not exist. */
+  static void createRoot(ZooKeeper zk, String root) throws KeeperException, InterruptedException {
+    for (int end = root.indexOf('/', 1); ; end = root.indexOf('/', end + 1)) {
+      String path = end < 0 ? root : root.substring(0, end);
+      try {
+        zk.create(path, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+      } catch (KeeperException.NodeExistsException e) {
+        // Left over from a previous run.
+      }
+      if (end < 0) {
+        return;
+      }
+    }
+  }
+
+  private static ZooKeeper connect(String hostPort) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("USAGE: TxnLogReplayer hostPort log-file-or-directory ...");
+      System.exit(2);
+    }
+    double speedup = Double.parseDouble(System.getProperty("speedup", "1"));
+    int outstanding = Integer.getInteger("outstanding", 1000);
+    int count = Integer.getInteger("sessions", 4);
+    String root = System.getProperty("root", "/replay");
+    int interval = Integer.getInteger("interval", 10);
+
+    ZooKeeper[] sessions = new ZooKeeper[count];
+    for (int i = 0; i < count; i++) {
+      sessions[i] = connect(args[0]);
+    }
+    if (!root.isEmpty()) {
+      createRoot(sessions[0], root);
+    }
+    TxnLogReplayer replayer = new TxnLogReplayer(sessions, root, speedup, outstanding);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    long[] last = {0};
+    reporter.scheduleAtFixedRate(
+        () -> {
+          long issued = replayer.issued();
+          System.out.printf(
+              "%.0f ops/s, %.1f ms behind schedule\n",
+              (double) (issued - last[0]) / interval, replayer.lagNanos / 1e6);
+          last[0] = issued;
+        },
+        interval,
+        interval,
+        TimeUnit.SECONDS);
+
+    long start = System.nanoTime();
+    try (TxnLogs txns = TxnLogs.of(Arrays.copyOfRange(args, 1, args.length))) {
+      replayer.replay(txns);
+      for (Path path : txns.partial()) {
+        System.err.printf("%s ends with a partial transaction\n", path);
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    reporter.shutdownNow();
+    System.out.printf(
+        "replayed %d ops in %.1f s, %.0f ops/s, %d txns skipped\n",
+        replayer.issued(), seconds, replayer.issued() / seconds, replayer.skipped());
+    System.out.printf("results: %s\n", replayer.results());
+    System.out.printf("latency: %s\n", replayer.latency().summary());
+    for (ZooKeeper zk : sessions) {
+      zk.close();
+    }
+  }
+}
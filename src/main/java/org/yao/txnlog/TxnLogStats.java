@@ -0,0 +1,262 @@
+package org.yao.txnlog;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.txn.CreateContainerTxn;
+import org.apache.zookeeper.txn.CreateTTLTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.yao.jute.StringIntMap;
+import org.yao.snapshot.SnapshotStats;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link TxnLogAnalyzer} found in transaction logs: the mix of operations, the writes and
+ * written bytes per path prefix, and the distribution of payload sizes. The transactions of a
+ * <tt>multi</tt> count as writes of their own, but not in the mix.
+ */
+public class TxnLogStats {
+  /** Payload sizes are counted in buckets of 0, 1, 2-3, 4-7, ... bytes. */
+  private static final int SIZE_BUCKETS = 33;
+
+  private final int depth;
+  long txns;
+  long firstZxid = -1;
+  long lastZxid;
+  long firstTime;
+  long lastTime;
+  private long second;
+  private long inSecond;
+  long peakPerSecond;
+
+  private final Map<String, long[]> ops = new TreeMap<>();
+  private final long[] payloadSizes = new long[SIZE_BUCKETS];
+  private long payloads;
+
+  /** The index of a prefix into the per-prefix arrays. */
+  private final StringIntMap prefixes = new StringIntMap();
+  private long[] prefixWrites = new long[16];
+  private long[] prefixBytes = new long[16];
+
+  public TxnLogStats(int depth) {
+    this.depth = depth;
+  }
+
+  static String opName(int type) {
+    switch (type) {
+      case OpCode.createSession:
+        return "createSession";
+      case OpCode.closeSession:
+        return "closeSession";
+      case OpCode.error:
+        return "error";
+      case OpCode.create:
+        return "create";
+      case OpCode.create2:
+        return "create2";
+      case OpCode.createTTL:
+        return "createTTL";
+      case OpCode.createContainer:
+        return "createContainer";
+      case OpCode.delete:
+        return "delete";
+      case OpCode.deleteContainer:
+        return "deleteContainer";
+      case OpCode.setData:
+        return "setData";
+      case OpCode.setACL:
+        return "setACL";
+      case OpCode.check:
+        return "check";
+      case OpCode.multi:
+        return "multi";
+      case OpCode.reconfig:
+        return "reconfig";
+      default:
+        return "type " + type;
+    }
+  }
+
+  public void add(TxnLogFile.Entry entry) throws IOException {
+    TxnHeader header = entry.header;
+    txns++;
+    if (firstZxid < 0) {
+      firstZxid = header.getZxid();
+      firstTime = header.getTime();
+    }
+    lastZxid = header.getZxid();
+    lastTime = Math.max(lastTime, header.getTime());
+    long s = header.getTime() / 1000;
+    if (s != second) {
+      second = s;
+      inSecond = 0;
+    }
+    peakPerSecond = Math.max(peakPerSecond, ++inSecond);
+    ops.computeIfAbsent(opName(header.getType()), k -> new long[1])[0]++;
+    addWrite(entry.txn);
+  }
+
+  private void addWrite(Record txn) throws IOException {
+    if (txn instanceof CreateTxn) {
+      CreateTxn t = (CreateTxn) txn;
+      addWrite(t.getPath(), t.getData());
+    } else if (txn instanceof CreateTTLTxn) {
+      CreateTTLTxn t = (CreateTTLTxn) txn;
+      addWrite(t.getPath(), t.getData());
+    } else if (txn instanceof CreateContainerTxn) {
+      CreateContainerTxn t = (CreateContainerTxn) txn;
+      addWrite(t.getPath(), t.getData());
+    } else if (txn instanceof SetDataTxn) {
+      SetDataTxn t = (SetDataTxn) txn;
+      addWrite(t.getPath(), t.getData());
+    } else if (txn instanceof DeleteTxn) {
+      addWrite(((DeleteTxn) txn).getPath(), null);
+    } else if (txn instanceof SetACLTxn) {
+      addWrite(((SetACLTxn) txn).getPath(), null);
+    } else if (txn instanceof MultiTxn) {
+      for (Txn t : ((MultiTxn) txn).getTxns()) {
+        addWrite(TxnLogFile.decode(t.getType(), t.getData()));
+      }
+    }
+  }
+
+  private void addWrite(String path, byte[] data) {
+    int i = index(SnapshotStats.prefix(path, depth));
+    prefixWrites[i]++;
+    if (data != null) {
+      prefixBytes[i] += data.length;
+      payloads++;
+      payloadSizes[64 - Long.numberOfLeadingZeros(data.length)]++;
+    }
+  }
+
+  private int index(String prefix) {
+    int i = prefixes.get(prefix, -1);
+    if (i < 0) {
+      i = prefixes.size();
+      prefixes.put(prefix, i);
+      if (i == prefixWrites.length) {
+        prefixWrites = Arrays.copyOf(prefixWrites, i * 2);
+        prefixBytes = Arrays.copyOf(prefixBytes, i * 2);
+      }
+    }
+    return i;
+  }
+
+  public long txns() {
+    return txns;
+  }
+
+  /** Returns the number of transactions of each type. */
+  public Map<String, Long> ops() {
+    Map<String, Long> map = new TreeMap<>();
+    ops.forEach((k, v) -> map.put(k, v[0]));
+    return map;
+  }
+
+  /** Returns the writes under each prefix, ordered by prefix. */
+  public Map<String, Long> prefixWrites() {
+    Map<String, Long> map = new TreeMap<>();
+    for (int i = 0; i < prefixes.size(); i++) {
+      map.put(prefixes.keyAt(i), prefixWrites[i]);
+    }
+    return map;
+  }
+
+  /** The time covered by the transactions, at least a millisecond. */
+  private double seconds() {
+    return Math.max(lastTime - firstTime, 1) / 1000.0;
+  }
+
+  private List<Integer> prefixesByWrites() {
+    List<Integer> order = new ArrayList<>(prefixes.size());
+    for (int i = 0; i < prefixes.size(); i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparingLong((Integer i) -> -prefixWrites[i]));
+    return order;
+  }
+
+  /** Returns the payload size below which the given percentage of payloads are. */
+  private long sizePercentile(double percentile) {
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * payloads));
+    long seen = 0;
+    for (int i = 0; i < SIZE_BUCKETS; i++) {
+      seen += payloadSizes[i];
+      if (seen >= target) {
+        return i == 0 ? 0 : (1L << i) - 1;
+      }
+    }
+    return (1L << (SIZE_BUCKETS - 1)) - 1;
+  }
+
+  public void printText(PrintStream out, int top) {
+    out.printf(
+        "%d txns, zxid 0x%x to 0x%x, %.1f s, %.1f txns/s, peak %d txns/s\n",
+        txns, firstZxid, lastZxid, seconds(), txns / seconds(), peakPerSecond);
+
+    out.printf("\n%-16s %12s %7s\n", "op", "txns", "share");
+    List<Map.Entry<String, long[]>> mix = new ArrayList<>(ops.entrySet());
+    mix.sort(Comparator.comparingLong(e -> -e.getValue()[0]));
+    for (Map.Entry<String, long[]> e : mix) {
+      long n = e.getValue()[0];
+      out.printf("%-16s %12d %6.2f%%\n", e.getKey(), n, 100.0 * n / txns);
+    }
+
+    String header = depth == Integer.MAX_VALUE ? "path" : "prefix (depth " + depth + ")";
+    out.printf("\n%-48s %12s %10s %14s\n", header, "writes", "writes/s", "bytes");
+    List<Integer> order = prefixesByWrites();
+    for (int i : order.subList(0, Math.min(top, order.size()))) {
+      out.printf(
+          "%-48s %12d %10.2f %14d\n",
+          prefixes.keyAt(i), prefixWrites[i], prefixWrites[i] / seconds(), prefixBytes[i]);
+    }
+    if (order.size() > top) {
+      out.printf("... %d more\n", order.size() - top);
+    }
+
+    if (payloads > 0) {
+      out.printf(
+          "\npayload bytes: p50 <= %d, p90 <= %d, p99 <= %d, max <= %d\n",
+          sizePercentile(50), sizePercentile(90), sizePercentile(99), sizePercentile(100));
+      for (int i = 0; i < SIZE_BUCKETS; i++) {
+        if (payloadSizes[i] > 0) {
+          long low = i == 0 ? 0 : 1L << (i - 1);
+          long high = i == 0 ? 0 : (1L << i) - 1;
+          out.printf("%10d - %-10d %12d\n", low, high, payloadSizes[i]);
+        }
+      }
+    }
+  }
+
+  /** Prints one line per prefix, ordered by prefix. */
+  public void printCsv(PrintStream out) {
+    out.println("prefix,writes,writes_per_second,bytes");
+    Map<String, Integer> sorted = new TreeMap<>();
+    for (int i = 0; i < prefixes.size(); i++) {
+      sorted.put(prefixes.keyAt(i), i);
+    }
+    sorted.forEach(
+        (prefix, i) -> {
+          String field = prefix;
+          if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0) {
+            field = '"' + field.replace("\"", "\"\"") + '"';
+          }
+          long writes = prefixWrites[i];
+          out.printf("%s,%d,%.3f,%d\n", field, writes, writes / seconds(), prefixBytes[i]);
+        });
+  }
+}
@@ -0,0 +1,76 @@
+package org.yao.txnlog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the transactions of several log files in zxid order. Logs written before a restart may
+ * overlap the next one, so a transaction with a zxid already seen is skipped.
+ */
+public class TxnLogs implements Closeable {
+  private final List<Path> logs;
+  private final List<Path> partial = new ArrayList<>();
+  private int next;
+  private TxnLogFile file;
+  private long lastZxid = -1;
+
+  public TxnLogs(List<Path> logs) {
+    this.logs = logs;
+  }
+
+  /** Returns the logs named by the arguments, each a log file or a directory of them. */
+  public static TxnLogs of(String... args) throws IOException {
+    List<Path> logs = new ArrayList<>();
+    for (String arg : args) {
+      logs.addAll(TxnLogFile.logs(Paths.get(arg)));
+    }
+    return new TxnLogs(logs);
+  }
+
+  public int size() {
+    return logs.size();
+  }
+
+  /**
+   * Returns the logs read so far which end with a partial transaction, as one still being written
+   * or cut short by a crash does.
+   */
+  public List<Path> partial() {
+    return partial;
+  }
+
+  /** Returns the next transaction, or null after the last one. */
+  public TxnLogFile.Entry next() throws IOException {
+    while (true) {
+      if (file == null) {
+        if (next == logs.size()) {
+          return null;
+        }
+        file = new TxnLogFile(logs.get(next++));
+      }
+      TxnLogFile.Entry entry = file.next();
+      if (entry == null) {
+        if (file.partial()) {
+          partial.add(logs.get(next - 1));
+        }
+        file.close();
+        file = null;
+      } else if (entry.header.getZxid() > lastZxid) {
+        lastZxid = entry.header.getZxid();
+        return entry;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (file != null) {
+      file.close();
+      file = null;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * A variant of {@link DataMonitor} which never blocks the ZooKeeper event thread. The data is read
+ * with an asynchronous <tt>getData</tt> which also leaves a watch. Instead of keeping a copy of the
+ * previous data, the monitor remembers the <tt>mzxid</tt> of the last delivered version and skips
+ * both the fetch and the notification when the znode has not been modified since.
+ */
+public class AsyncDataMonitor implements Monitor, StatCallback, DataCallback {
+  /** The znode does not exist or has not been seen yet. */
+  private static final long NONE = -1;
+
+  private final ZooKeeper zk;
+  private final String znode;
+  private final DataMonitor.DataMonitorListener listener;
+  private volatile boolean dead;
+  // Only accessed from the event thread.
+  private long mzxid = NONE;
+
+  public AsyncDataMonitor(ZooKeeper zk, String znode, DataMonitor.DataMonitorListener listener) {
+    this.zk = zk;
+    this.znode = znode;
+    this.listener = listener;
+    zk.exists(znode, true, this, null);
+  }
+
+  @Override
+  public boolean isDead() {
+    return dead;
+  }
+
+  @Override
+  public void handle(WatchedEvent event) {
+    if (event.getType() == Watcher.Event.EventType.None) {
+      if (event.getState() == Watcher.Event.KeeperState.Expired) {
+        close(Code.SESSIONEXPIRED.intValue());
+      }
+      return;
+    }
+    if (!znode.equals(event.getPath())) {
+      return;
+    }
+    switch (event.getType()) {
+      case NodeCreated:
+      case NodeDataChanged:
+        // The znode is known to have changed. Fetch the data and re-arm the watch in one call.
+        zk.getData(znode, true, this, null);
+        break;
+      default:
+        zk.exists(znode, true, this, null);
+        break;
+    }
+  }
+
+  // StatCallback
+  @Override
+  public void processResult(int rc, String path, Object ctx, Stat stat) {
+    switch (Code.get(rc)) {
+      case OK:
+        if (stat.getMzxid() != mzxid) {
+          zk.getData(znode, true, this, null);
+        }
+        break;
+      case NONODE:
+        // The exists call has left a watch which fires when the znode is created.
+        deliver(NONE, null);
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        close(rc);
+        break;
+      default:
+        zk.exists(znode, true, this, null);
+        break;
+    }
+  }
+
+  // DataCallback
+  @Override
+  public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+    switch (Code.get(rc)) {
+      case OK:
+        deliver(stat.getMzxid(), data);
+        break;
+      case NONODE:
+        // Deleted between the event and the read. Watch for its re-creation.
+        zk.exists(znode, true, this, null);
+        deliver(NONE, null);
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        close(rc);
+        break;
+      default:
+        zk.exists(znode, true, this, null);
+        break;
+    }
+  }
+
+  private void deliver(long version, byte[] data) {
+    // Like DataMonitor, an absent znode is not reported until it has existed once.
+    if (version == mzxid) {
+      return;
+    }
+    mzxid = version;
+    listener.exists(data);
+  }
+
+  private void close(int rc) {
+    if (!dead) {
+      dead = true;
+      listener.closing(rc);
+    }
+  }
+}
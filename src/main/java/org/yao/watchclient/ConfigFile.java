@@ -0,0 +1,109 @@
+package org.yao.watchclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A file holding the data of a znode. The data is written to a temporary file in the same
+ * directory through a {@link FileChannel} and then renamed over the target, so a reader never sees
+ * a partially written file. Writing the same bytes again is a no-op, which is detected by a SHA-256
+ * digest of the content instead of a retained copy. A replaced file keeps its permissions.
+ */
+class ConfigFile {
+  private final Path path;
+  private byte[] digest;
+
+  ConfigFile(String pathname) {
+    this.path = Paths.get(pathname).toAbsolutePath();
+  }
+
+  Path path() {
+    return path;
+  }
+
+  /**
+   * Replaces the content of the file.
+   *
+   * @return false if the file already had exactly this content
+   */
+  boolean write(byte[] data) throws IOException {
+    byte[] newDigest = digest(ByteBuffer.wrap(data));
+    if (digest == null && Files.isRegularFile(path)) {
+      digest = digestOf(path);
+    }
+    if (MessageDigest.isEqual(newDigest, digest)) {
+      return false;
+    }
+    Path tmp = createTemp();
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+          channel.write(buf);
+        }
+        channel.force(false);
+      }
+      if (Files.exists(path)
+          && Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+        Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(path));
+      }
+      Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    digest = newDigest;
+    return true;
+  }
+
+  /**
+   * Creates an empty file next to the target. Unlike {@link Files#createTempFile}, which makes it
+   * readable by the owner only, the file gets the default permissions of the umask, as a file
+   * written in place would.
+   */
+  private Path createTemp() throws IOException {
+    while (true) {
+      String name =
+          path.getFileName()
+              + "."
+              + Long.toUnsignedString(ThreadLocalRandom.current().nextLong())
+              + ".tmp";
+      Path tmp = path.resolveSibling(name);
+      try {
+        FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+        return tmp;
+      } catch (FileAlreadyExistsException e) {
+        // Try another name.
+      }
+    }
+  }
+
+  private static byte[] digestOf(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return digest(buf);
+    }
+  }
+
+  private static byte[] digest(ByteBuffer buf) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(buf);
+      return md.digest();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+}
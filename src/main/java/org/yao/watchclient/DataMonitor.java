@@ -14,7 +14,7 @@ import org.apache.zookeeper.AsyncCallback.StatCallback;
 import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.data.Stat;
 
-public class DataMonitor implements StatCallback {
+public class DataMonitor implements Monitor, StatCallback {
   private ZooKeeper zk;
   private String znode;
   boolean dead;
@@ -30,6 +30,12 @@ public class DataMonitor implements StatCallback {
     zk.exists(znode, true, this, null);
   }
 
+  @Override
+  public boolean isDead() {
+    return dead;
+  }
+
+  @Override
   public void handle(WatchedEvent event) {
     String path = event.getPath();
     if (event.getType() == Watcher.Event.EventType.None) {
@@ -4,13 +4,12 @@ package org.yao.watchclient;
  * A simple example program to use DataMonitor to start and stop executables based on a znode. The
  * program watches the specified znode and saves the data that corresponds to the znode in the
  * filesystem. It also starts the specified program with the specified arguments when the znode
- * exists and kills the program if the znode goes away.
+ * exists and kills the program if the znode goes away. The program is left alone when the data
+ * written to the file has not changed. With <tt>-Dreload=HUP</tt>, a changed file is announced to
+ * the running program with a signal instead of a restart. See {@link OutputPump} for the
+ * <tt>-Doutput</tt> modes which handle the output of the program.
  */
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
@@ -18,19 +17,25 @@ import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 
 public class Executor implements Watcher, Runnable, DataMonitor.DataMonitorListener {
+  /** Use {@link AsyncDataMonitor} instead of {@link DataMonitor} with <tt>-Dmonitor=async</tt>. */
+  static final boolean ASYNC = "async".equals(System.getProperty("monitor"));
+  /** The signal sent to the child when the data changes, or null to restart the child. */
+  static final String RELOAD_SIGNAL = System.getProperty("reload");
+
   private String znode;
-  private DataMonitor dm;
+  private Monitor dm;
   private ZooKeeper zk;
-  private String pathname;
+  private ConfigFile config;
   private String exec[];
   private Process child;
+  private OutputPump output = OutputPump.fromSystemProperties();
 
   public Executor(String hostPort, String znode, String filename, String exec[])
       throws KeeperException, IOException {
-    this.pathname = filename;
+    this.config = new ConfigFile(filename);
     this.exec = exec;
     zk = new ZooKeeper(hostPort, 3000, this);
-    dm = new DataMonitor(zk, znode, this);
+    dm = ASYNC ? new AsyncDataMonitor(zk, znode, this) : new DataMonitor(zk, znode, this);
   }
 
   /** @param args */
@@ -62,7 +67,7 @@ public class Executor implements Watcher, Runnable, DataMonitor.DataMonitorListe
   public void run() {
     try {
       synchronized (this) {
-        while (!dm.dead) {
+        while (!dm.isDead()) {
           wait();
         }
       }
@@ -92,6 +97,23 @@ public class Executor implements Watcher, Runnable, DataMonitor.DataMonitorListe
       }
       child = null;
     } else {
+      boolean changed = true;
+      try {
+        changed = config.write(data);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      if (child != null && child.isAlive()) {
+        if (!changed) {
+          System.out.println("Data unchanged, keeping child");
+          return;
+        }
+        if (RELOAD_SIGNAL != null) {
+          System.out.println("Reloading child");
+          signal(child, RELOAD_SIGNAL);
+          return;
+        }
+      }
       if (child != null) {
         System.out.println("Stopping child");
         child.destroy();
@@ -101,44 +123,42 @@ public class Executor implements Watcher, Runnable, DataMonitor.DataMonitorListe
           e.printStackTrace();
         }
       }
-      try {
-        FileOutputStream fos = new FileOutputStream(new File(pathname));
-        fos.write(data);
-        fos.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
       try {
         System.out.println("Starting child");
-        child = Runtime.getRuntime().exec(exec);
-        new StreamWriter(child.getInputStream(), System.out);
-        new StreamWriter(child.getErrorStream(), System.err);
+        child = output.start(new ProcessBuilder(exec));
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
   }
 
-  static class StreamWriter extends Thread {
-    OutputStream os;
-
-    InputStream is;
-
-    StreamWriter(InputStream is, OutputStream os) {
-      this.is = is;
-      this.os = os;
-      start();
+  /**
+   * Sends a signal such as HUP to a process without waiting for it, since this runs on the event
+   * thread. TERM and KILL go through {@link Process#destroy} and {@link Process#destroyForcibly};
+   * {@link ProcessHandle} cannot send the other signals, so a <tt>kill</tt> is started for them and
+   * its exit is checked when it comes.
+   */
+  static void signal(Process process, String signal) {
+    if (signal.equals("TERM")) {
+      process.destroy();
+      return;
+    } else if (signal.equals("KILL")) {
+      process.destroyForcibly();
+      return;
     }
-
-    public void run() {
-      byte b[] = new byte[80];
-      int rc;
-      try {
-        while ((rc = is.read(b)) > 0) {
-          os.write(b, 0, rc);
-        }
-      } catch (IOException e) {
-      }
+    try {
+      new ProcessBuilder("kill", "-" + signal, Long.toString(process.pid()))
+          .inheritIO()
+          .start()
+          .onExit()
+          .thenAccept(
+              kill -> {
+                if (kill.exitValue() != 0) {
+                  System.err.printf("Failed to send SIG%s to %d\n", signal, process.pid());
+                }
+              });
+    } catch (IOException e) {
+      e.printStackTrace();
     }
   }
 }
@@ -0,0 +1,12 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.WatchedEvent;
+
+/** The part of a znode monitor that {@link Executor} depends on. */
+interface Monitor {
+  /** Dispatches a watched event delivered to the session's default watcher. */
+  void handle(WatchedEvent event);
+
+  /** Returns true once the session is no longer usable. */
+  boolean isDead();
+}
@@ -0,0 +1,265 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.WatcherType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitors the data of many znodes over one shared ZooKeeper session. Like {@link
+ * AsyncDataMonitor}, each znode is read with an asynchronous <tt>getData</tt> which re-arms its
+ * watch, and the <tt>mzxid</tt> of the last seen version suppresses duplicate notifications.
+ *
+ * <p>Reads are issued in batches: triggered znodes are queued and at most <tt>maxInFlight</tt>
+ * requests are outstanding at a time, so a burst of events does not flood the session. Changes are
+ * handed to the listener on a small bounded executor instead of the event thread. A znode has at
+ * most one pending notification, which always carries its latest data.
+ */
+public class MultiDataMonitor implements Monitor, DataCallback, StatCallback {
+  private static final Znode ABSENT = new Znode(-1, null);
+
+  private final ZooKeeper zk;
+  private final MultiDataMonitorListener listener;
+  private final int maxInFlight;
+  private final ConcurrentHashMap<String, Znode> registry = new ConcurrentHashMap<>();
+  private final Set<String> undelivered = ConcurrentHashMap.newKeySet();
+  private final ThreadPoolExecutor dispatcher;
+  private volatile boolean dead;
+
+  // Guarded by this.
+  private final ArrayDeque<String> pending = new ArrayDeque<>();
+  private final Set<String> queued = new HashSet<>();
+  private int inFlight;
+
+  public MultiDataMonitor(ZooKeeper zk, MultiDataMonitorListener listener) {
+    this(zk, listener, 1000, 2, 10000);
+  }
+
+  /**
+   * @param maxInFlight the maximum number of outstanding reads
+   * @param dispatchThreads the number of threads calling the listener
+   * @param dispatchQueue the capacity of the dispatch queue. When it is full, the listener is
+   *     called on the event thread, which throttles the reads.
+   */
+  public MultiDataMonitor(
+      ZooKeeper zk,
+      MultiDataMonitorListener listener,
+      int maxInFlight,
+      int dispatchThreads,
+      int dispatchQueue) {
+    this.zk = zk;
+    this.listener = listener;
+    this.maxInFlight = maxInFlight;
+    this.dispatcher =
+        new ThreadPoolExecutor(
+            dispatchThreads,
+            dispatchThreads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(dispatchQueue),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Starts watching the given znodes. A znode which does not exist is reported once created. */
+  public void watch(Collection<String> paths) {
+    for (String path : paths) {
+      if (registry.putIfAbsent(path, ABSENT) == null) {
+        schedule(path);
+      }
+    }
+  }
+
+  /**
+   * Stops watching the given znodes. Their server-side watches are removed as well, including any
+   * left on the same paths by other users of the session.
+   */
+  public void unwatch(Collection<String> paths) {
+    for (String path : paths) {
+      if (registry.remove(path) != null) {
+        zk.removeAllWatches(path, WatcherType.Any, true, (rc, p, ctx) -> {}, null);
+      }
+    }
+  }
+
+  /** Returns the last seen data of a watched znode, or null if it does not exist. */
+  public byte[] getData(String path) {
+    Znode znode = registry.get(path);
+    return znode == null ? null : znode.data;
+  }
+
+  /** Returns the number of watched znodes. */
+  public int size() {
+    return registry.size();
+  }
+
+  @Override
+  public boolean isDead() {
+    return dead;
+  }
+
+  /** Stops delivering changes. The session is left open. */
+  public void close() {
+    dead = true;
+    dispatcher.shutdown();
+  }
+
+  @Override
+  public void handle(WatchedEvent event) {
+    if (event.getType() == Watcher.Event.EventType.None) {
+      // Watches are re-registered by the client after a reconnection.
+      if (event.getState() == Watcher.Event.KeeperState.Expired) {
+        close(Code.SESSIONEXPIRED.intValue());
+      }
+      return;
+    }
+    String path = event.getPath();
+    if (path != null && registry.containsKey(path)) {
+      schedule(path);
+    }
+  }
+
+  // DataCallback
+  @Override
+  public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+    synchronized (this) {
+      inFlight--;
+    }
+    switch (Code.get(rc)) {
+      case OK:
+        update(path, new Znode(stat.getMzxid(), data));
+        break;
+      case NONODE:
+        update(path, ABSENT);
+        // Leave a watch which fires when the znode is created.
+        synchronized (this) {
+          inFlight++;
+        }
+        zk.exists(path, true, this, null);
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        close(rc);
+        return;
+      default:
+        schedule(path);
+        break;
+    }
+    drain();
+  }
+
+  // StatCallback
+  @Override
+  public void processResult(int rc, String path, Object ctx, Stat stat) {
+    synchronized (this) {
+      inFlight--;
+    }
+    switch (Code.get(rc)) {
+      case OK:
+        // Created between the getData and the exists calls.
+        schedule(path);
+        break;
+      case NONODE:
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        close(rc);
+        return;
+      default:
+        schedule(path);
+        break;
+    }
+    drain();
+  }
+
+  private void schedule(String path) {
+    synchronized (this) {
+      if (queued.add(path)) {
+        pending.add(path);
+      }
+    }
+    drain();
+  }
+
+  private synchronized void drain() {
+    while (!dead && inFlight < maxInFlight && !pending.isEmpty()) {
+      String path = pending.poll();
+      queued.remove(path);
+      if (registry.containsKey(path)) {
+        inFlight++;
+        zk.getData(path, true, this, null);
+      }
+    }
+  }
+
+  private void update(String path, Znode znode) {
+    Znode current = registry.get(path);
+    if (current == null || current.mzxid == znode.mzxid) {
+      return;
+    }
+    if (registry.replace(path, current, znode)) {
+      deliver(path);
+    }
+  }
+
+  private void deliver(String path) {
+    if (dead || !undelivered.add(path)) {
+      return;
+    }
+    dispatcher.execute(
+        () -> {
+          undelivered.remove(path);
+          Znode znode = registry.get(path);
+          if (znode != null) {
+            listener.changed(path, znode.data);
+          }
+        });
+  }
+
+  private void close(int rc) {
+    if (!dead) {
+      close();
+      listener.closing(rc);
+    }
+  }
+
+  /** The last seen version of a znode. */
+  private static final class Znode {
+    final long mzxid;
+    final byte[] data;
+
+    Znode(long mzxid, byte[] data) {
+      this.mzxid = mzxid;
+      this.data = data;
+    }
+  }
+
+  /** Other classes use the MultiDataMonitor by implementing this interface. */
+  public interface MultiDataMonitorListener {
+    /**
+     * The data or the existence of a watched znode has changed.
+     *
+     * @param data the new data, or null if the znode has been deleted
+     */
+    void changed(String path, byte[] data);
+
+    /**
+     * The ZooKeeper session is no longer valid.
+     *
+     * @param rc the ZooKeeper reason code
+     */
+    void closing(int rc);
+  }
+}
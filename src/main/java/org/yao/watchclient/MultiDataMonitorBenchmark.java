@@ -0,0 +1,189 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.yao.bench.LatencyHistogram;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the memory used per watched znode and the latency from a <tt>setData</tt> to the
+ * listener callback of a {@link MultiDataMonitor}. The <tt>changes</tt> go to the znodes in turn;
+ * the monitor may merge several changes of a znode into one callback, so the benchmark waits until
+ * every znode has reported the last change written to it.
+ *
+ * <pre>
+ * java -cp build/classes/java/main:$CLASSPATH org.yao.watchclient.MultiDataMonitorBenchmark \
+ *     localhost:2181 50000 10000
+ * </pre>
+ */
+public class MultiDataMonitorBenchmark {
+  private static final String PARENT = "/multi-data-monitor-bench";
+  private static final int WINDOW = 1000;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("USAGE: MultiDataMonitorBenchmark hostPort znodes [changes]");
+      System.exit(2);
+    }
+    String hostPort = args[0];
+    int count = Integer.parseInt(args[1]);
+    int changes = args.length > 2 ? Integer.parseInt(args[2]) : count;
+
+    ZooKeeper writer = connect(hostPort, null);
+    // The paths are the keys of the monitor, so they count toward its memory.
+    long before = usedMemory();
+    List<String> paths = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      paths.add(String.format("%s/%08d", PARENT, i));
+    }
+    createAll(writer, paths);
+
+    LatencyHistogram latency = new LatencyHistogram();
+    CountDownLatch loaded = new CountDownLatch(count);
+    // The last change of each changed znode, which no later change can hide.
+    CountDownLatch settled = new CountDownLatch(Math.min(changes, count));
+    MultiDataMonitor.MultiDataMonitorListener listener =
+        new MultiDataMonitor.MultiDataMonitorListener() {
+          @Override
+          public void changed(String path, byte[] data) {
+            ByteBuffer payload = ByteBuffer.wrap(data);
+            long sent = payload.getLong();
+            if (sent == 0) {
+              loaded.countDown();
+            } else {
+              latency.recordNanos(System.nanoTime() - sent);
+              if (payload.getInt() >= changes - count) {
+                settled.countDown();
+              }
+            }
+          }
+
+          @Override
+          public void closing(int rc) {
+            System.err.printf("session closed: %s\n", Code.get(rc));
+          }
+        };
+
+    MultiDataMonitor[] monitor = new MultiDataMonitor[1];
+    ZooKeeper zk =
+        connect(
+            hostPort,
+            event -> {
+              if (monitor[0] != null) {
+                monitor[0].handle(event);
+              }
+            });
+    monitor[0] = new MultiDataMonitor(zk, listener);
+    long start = System.nanoTime();
+    monitor[0].watch(paths);
+    loaded.await();
+    long elapsed = System.nanoTime() - start;
+    long after = usedMemory();
+    System.out.printf(
+        "watched %d znodes in %d ms, %.1f bytes per znode\n",
+        count, TimeUnit.NANOSECONDS.toMillis(elapsed), (double) (after - before) / count);
+
+    Semaphore window = new Semaphore(WINDOW);
+    AsyncCallback.StatCallback done = (rc, path, ctx, stat) -> window.release();
+    for (int i = 0; i < changes; i++) {
+      window.acquire();
+      String path = paths.get(i % count);
+      writer.setData(path, payload(System.nanoTime(), i), -1, done, null);
+    }
+    boolean seen = settled.await(30, TimeUnit.SECONDS);
+    if (seen) {
+      System.out.printf(
+          "%d of %d changes seen, change latency: %s\n",
+          latency.count(), changes, latency.summary());
+    } else {
+      System.err.printf(
+          "timed out with %d of %d znodes up to date\n",
+          Math.min(changes, count) - settled.getCount(), Math.min(changes, count));
+    }
+
+    monitor[0].close();
+    zk.close();
+    deleteAll(writer, paths);
+    writer.close();
+    if (!seen) {
+      System.exit(1);
+    }
+  }
+
+  private static ZooKeeper connect(String hostPort, Watcher watcher) throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+              if (watcher != null) {
+                watcher.process(event);
+              }
+            });
+    connected.await();
+    return zk;
+  }
+
+  private static void createAll(ZooKeeper zk, List<String> paths) throws Exception {
+    try {
+      zk.create(PARENT, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    } catch (Exception e) {
+      // Left over from a previous run.
+    }
+    Semaphore window = new Semaphore(WINDOW);
+    AsyncCallback.StringCallback done = (rc, path, ctx, name) -> window.release();
+    for (String path : paths) {
+      window.acquire();
+      byte[] data = payload(0, 0);
+      zk.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, done, null);
+    }
+    window.acquire(WINDOW);
+    // Existing znodes keep the data of a previous run.
+    window.release(WINDOW);
+    AsyncCallback.StatCallback reset = (rc, path, ctx, stat) -> window.release();
+    for (String path : paths) {
+      window.acquire();
+      zk.setData(path, payload(0, 0), -1, reset, null);
+    }
+    window.acquire(WINDOW);
+  }
+
+  private static void deleteAll(ZooKeeper zk, List<String> paths) throws Exception {
+    Semaphore window = new Semaphore(WINDOW);
+    AsyncCallback.VoidCallback done = (rc, path, ctx) -> window.release();
+    for (String path : paths) {
+      window.acquire();
+      zk.delete(path, -1, done, null);
+    }
+    window.acquire(WINDOW);
+    zk.delete(PARENT, -1);
+  }
+
+  /** Returns the data of a change: when it was sent, and its number. */
+  private static byte[] payload(long nanos, int change) {
+    return ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(nanos).putInt(change).array();
+  }
+
+  private static long usedMemory() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,126 @@
+package org.yao.watchclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts child processes and takes care of their stdout and stderr. There are three modes:
+ *
+ * <ul>
+ *   <li><tt>pump</tt>: the output is copied to our own stdout and stderr by a small pool of
+ *       threads shared by all children. A copy task only reads what is available, so it never
+ *       blocks a pool thread, and it backs off while a child is quiet.
+ *   <li><tt>inherit</tt>: the children write to our stdout and stderr directly. No thread and no
+ *       copy is involved.
+ *   <li>any other value is a file that the children's stdout and stderr are appended to.
+ * </ul>
+ *
+ * <p>The pump polls, since the JDK has no way to wait for any of many pipes to become readable; a
+ * blocking read would hold a thread per stream, even a virtual thread's carrier. The cost is that
+ * output from a quiet child shows up after up to {@value #MAX_IDLE_MILLIS} ms, and that every idle
+ * stream still wakes a pool thread and calls <tt>available</tt> that often: 20 wakeups per second
+ * per child. Use <tt>inherit</tt> or a file when many children are mostly quiet.
+ */
+class OutputPump {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long MIN_IDLE_MILLIS = 1;
+  private static final long MAX_IDLE_MILLIS = 100;
+
+  private final String output;
+  private final ScheduledExecutorService pool;
+  private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+  OutputPump(String output, int threads) {
+    this.output = output;
+    if ("pump".equals(output)) {
+      AtomicInteger count = new AtomicInteger();
+      pool =
+          Executors.newScheduledThreadPool(
+              threads,
+              r -> {
+                Thread thread = new Thread(r, "output-pump-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+    } else {
+      pool = null;
+    }
+  }
+
+  /** Creates a pump configured with <tt>-Doutput</tt> and <tt>-Doutput.threads</tt>. */
+  static OutputPump fromSystemProperties() {
+    return new OutputPump(
+        System.getProperty("output", "pump"), Integer.getInteger("output.threads", 2));
+  }
+
+  Process start(ProcessBuilder builder) throws IOException {
+    if ("inherit".equals(output)) {
+      builder.inheritIO();
+    } else if (pool == null) {
+      builder.redirectErrorStream(true).redirectOutput(Redirect.appendTo(new File(output)));
+    }
+    Process process = builder.start();
+    if (pool != null) {
+      pool.execute(new Copy(process, process.getInputStream(), System.out));
+      pool.execute(new Copy(process, process.getErrorStream(), System.err));
+    }
+    return process;
+  }
+
+  private class Copy implements Runnable {
+    private final Process process;
+    private final InputStream is;
+    private final OutputStream os;
+    private long idleMillis = MIN_IDLE_MILLIS;
+
+    Copy(Process process, InputStream is, OutputStream os) {
+      this.process = process;
+      this.is = is;
+      this.os = os;
+    }
+
+    @Override
+    public void run() {
+      try {
+        // Check liveness first so that nothing written before the exit is missed.
+        boolean alive = process.isAlive();
+        if (copyAvailable()) {
+          idleMillis = MIN_IDLE_MILLIS;
+          pool.execute(this);
+        } else if (alive) {
+          pool.schedule(this, idleMillis, TimeUnit.MILLISECONDS);
+          idleMillis = Math.min(idleMillis * 2, MAX_IDLE_MILLIS);
+        } else {
+          is.close();
+        }
+      } catch (IOException e) {
+        // The stream is closed when the child is destroyed.
+      }
+    }
+
+    private boolean copyAvailable() throws IOException {
+      byte[] b = buffers.get();
+      boolean copied = false;
+      int n;
+      while ((n = is.available()) > 0) {
+        int rc = is.read(b, 0, Math.min(n, b.length));
+        if (rc < 0) {
+          break;
+        }
+        os.write(b, 0, rc);
+        copied = true;
+      }
+      if (copied) {
+        os.flush();
+      }
+      return copied;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package org.yao.watchclient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces events out to a rate per second without blocking: a reservation returns the time at which
+ * the event may happen, and the caller schedules it. Like a token bucket, up to a second of unused
+ * permits is kept for a burst.
+ */
+final class Pacer {
+  private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final long intervalNanos;
+  // Guarded by this.
+  private long next = System.nanoTime();
+
+  Pacer(double rate) {
+    intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+  }
+
+  /** Returns the first free time, in {@link System#nanoTime} units, at or after earliest. */
+  synchronized long reserve(long earliest) {
+    if (next - (earliest - BURST_NANOS) < 0) {
+      next = earliest - BURST_NANOS;
+    }
+    long at = next - earliest > 0 ? next : earliest;
+    next += intervalNanos;
+    return at;
+  }
+}
@@ -0,0 +1,414 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one program per child of a parent znode. Like {@link Executor}, the data of every child
+ * znode is saved to a file, named after the child, in the given directory. In the program
+ * arguments, <tt>{}</tt> is replaced with the path of that file. A program is started when its
+ * child znode is created, restarted when the data changes and killed when the child znode is
+ * deleted.
+ *
+ * <p>The children are started and stopped concurrently by a pool of
+ * <tt>-Dsupervisor.threads</tt> threads. Restarts, either for new data or after a program exits on
+ * its own, are limited to <tt>-Dsupervisor.restartRate</tt> per second for all the children, and
+ * a program which keeps exiting is restarted with an exponential backoff between
+ * <tt>-Dsupervisor.minBackoff</tt> and <tt>-Dsupervisor.maxBackoff</tt> milliseconds. A restart
+ * waiting for its turn is scheduled on the pool rather than waited for, and a program is killed
+ * without holding up the event thread of the session.
+ *
+ * <pre>
+ * java org.yao.watchclient.Supervisor localhost:2181 /services data program {} [args ...]
+ * </pre>
+ */
+public class Supervisor
+    implements Watcher, Runnable, ChildrenCallback, MultiDataMonitor.MultiDataMonitorListener {
+  static final int THREADS = Integer.getInteger("supervisor.threads", 16);
+  static final double RESTART_RATE =
+      Double.parseDouble(System.getProperty("supervisor.restartRate", "50"));
+  static final long MIN_BACKOFF_MILLIS = Long.getLong("supervisor.minBackoff", 100);
+  static final long MAX_BACKOFF_MILLIS = Long.getLong("supervisor.maxBackoff", 30000);
+
+  private final String parent;
+  private final Path dir;
+  private final String[] exec;
+  private final ZooKeeper zk;
+  private final MultiDataMonitor monitor;
+  private final OutputPump output = OutputPump.fromSystemProperties();
+  private final ScheduledThreadPoolExecutor lifecycle = new ScheduledThreadPoolExecutor(THREADS);
+  private final Pacer restarts = new Pacer(RESTART_RATE);
+  private final ConcurrentHashMap<String, Child> children = new ConcurrentHashMap<>();
+  private final AtomicLong starts = new AtomicLong();
+  private final AtomicLong kills = new AtomicLong();
+  private final StatCallback parentExists = this::parentExists;
+  private volatile boolean dead;
+
+  public Supervisor(String hostPort, String parent, String dir, String[] exec) throws IOException {
+    this.parent = parent;
+    this.dir = Files.createDirectories(Paths.get(dir));
+    this.exec = exec;
+    // Restarts still waiting for their turn are dropped on close.
+    lifecycle.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    zk = new ZooKeeper(hostPort, 3000, this);
+    monitor = new MultiDataMonitor(zk, this);
+    zk.getChildren(parent, true, this, null);
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 4) {
+      System.err.println("USAGE: Supervisor hostPort parentZnode dir program [args ...]");
+      System.exit(2);
+    }
+    String[] exec = new String[args.length - 3];
+    System.arraycopy(args, 3, exec, 0, exec.length);
+    try {
+      new Supervisor(args[0], args[1], args[2], exec).run();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** Returns the number of running programs. */
+  public int running() {
+    int n = 0;
+    for (Child child : children.values()) {
+      if (child.isRunning()) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /** Returns the number of times a program has been started. */
+  public long starts() {
+    return starts.get();
+  }
+
+  /** Returns the number of programs the supervisor has killed and seen exit. */
+  public long kills() {
+    return kills.get();
+  }
+
+  /** Kills all programs and closes the session. */
+  public void close() throws InterruptedException {
+    synchronized (this) {
+      if (dead) {
+        return;
+      }
+      dead = true;
+    }
+    monitor.close();
+    zk.close();
+    for (Child child : children.values()) {
+      execute(child::stop);
+    }
+    lifecycle.shutdown();
+    lifecycle.awaitTermination(1, TimeUnit.MINUTES);
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  // Watcher
+  @Override
+  public void process(WatchedEvent event) {
+    if (parent.equals(event.getPath())) {
+      // NodeChildrenChanged, or the parent has been created or deleted.
+      zk.getChildren(parent, true, this, null);
+    } else if (monitor != null) {
+      monitor.handle(event);
+    }
+  }
+
+  // Runnable
+  @Override
+  public void run() {
+    try {
+      synchronized (this) {
+        while (!dead) {
+          wait();
+        }
+      }
+    } catch (InterruptedException e) {
+    }
+  }
+
+  // ChildrenCallback
+  @Override
+  public void processResult(int rc, String path, Object ctx, List<String> names) {
+    switch (Code.get(rc)) {
+      case OK:
+        reconcile(names);
+        break;
+      case NONODE:
+        reconcile(new ArrayList<>());
+        // Get notified when the parent is created.
+        zk.exists(parent, true, parentExists, null);
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        closing(rc);
+        break;
+      default:
+        zk.getChildren(parent, true, this, null);
+        break;
+    }
+  }
+
+  private void parentExists(int rc, String path, Object ctx, Stat stat) {
+    switch (Code.get(rc)) {
+      case OK:
+        // Created since the children were read; only a data watch is left on it.
+        zk.getChildren(parent, true, this, null);
+        break;
+      case NONODE:
+        // The watch fires when the parent is created.
+        break;
+      case SESSIONEXPIRED:
+      case NOAUTH:
+        closing(rc);
+        break;
+      default:
+        zk.exists(parent, true, parentExists, null);
+        break;
+    }
+  }
+
+  private void reconcile(List<String> names) {
+    Set<String> desired = new HashSet<>();
+    List<String> added = new ArrayList<>();
+    for (String name : names) {
+      String path = parent + "/" + name;
+      desired.add(path);
+      if (!children.containsKey(path)) {
+        children.put(path, new Child(name));
+        added.add(path);
+      }
+    }
+    List<String> removed = new ArrayList<>();
+    for (String path : children.keySet()) {
+      if (!desired.contains(path)) {
+        removed.add(path);
+      }
+    }
+    monitor.unwatch(removed);
+    for (String path : removed) {
+      Child child = children.remove(path);
+      execute(child::stop);
+    }
+    monitor.watch(added);
+  }
+
+  // MultiDataMonitor.MultiDataMonitorListener
+  @Override
+  public void changed(String path, byte[] data) {
+    Child child = children.get(path);
+    if (child != null && !dead) {
+      execute(() -> child.update(data));
+    }
+  }
+
+  private void execute(Runnable task) {
+    try {
+      lifecycle.execute(task);
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile, and every child is being stopped.
+    }
+  }
+
+  // MultiDataMonitor.MultiDataMonitorListener
+  @Override
+  public void closing(int rc) {
+    System.err.printf("Session closed: %s\n", Code.get(rc));
+    // Called on the event thread, which must not wait for the programs to be killed.
+    Thread closer =
+        new Thread(
+            () -> {
+              try {
+                close();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            "supervisor-close");
+    closer.start();
+  }
+
+  /** The program run for one child znode. */
+  private class Child {
+    private final String name;
+    private final ConfigFile config;
+    private volatile Process process;
+    // Guarded by this.
+    private boolean stopped;
+    private boolean restarting;
+    private int failures;
+    private long startedAt;
+
+    Child(String name) {
+      this.name = name;
+      this.config = new ConfigFile(dir.resolve(name).toString());
+    }
+
+    boolean isRunning() {
+      Process p = process;
+      return p != null && p.isAlive();
+    }
+
+    void update(byte[] data) {
+      Process old = null;
+      synchronized (this) {
+        if (stopped) {
+          return;
+        }
+        if (data == null) {
+          old = detach();
+        } else if (configure(data)) {
+          start();
+        }
+      }
+      terminate(old);
+    }
+
+    /** Writes the new data and returns whether the program should be started now. */
+    private boolean configure(byte[] data) {
+      boolean changed = true;
+      try {
+        changed = config.write(data);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      if (restarting) {
+        // The restart to come reads the new file.
+        return false;
+      }
+      if (!isRunning()) {
+        return true;
+      }
+      if (changed) {
+        if (Executor.RELOAD_SIGNAL != null) {
+          Executor.signal(process, Executor.RELOAD_SIGNAL);
+        } else {
+          restartLater(System.nanoTime());
+        }
+      }
+      return false;
+    }
+
+    void stop() {
+      Process old;
+      synchronized (this) {
+        stopped = true;
+        old = detach();
+      }
+      terminate(old);
+    }
+
+    /** Schedules a restart at the first time after <tt>earliest</tt> the restart rate allows. */
+    private void restartLater(long earliest) {
+      if (restarting) {
+        return;
+      }
+      long delay = restarts.reserve(earliest) - System.nanoTime();
+      try {
+        lifecycle.schedule(this::restart, delay, TimeUnit.NANOSECONDS);
+        restarting = true;
+      } catch (RejectedExecutionException e) {
+        // Closed meanwhile.
+      }
+    }
+
+    private void restart() {
+      Process old;
+      synchronized (this) {
+        restarting = false;
+        if (stopped || dead) {
+          return;
+        }
+        old = detach();
+      }
+      terminate(old);
+      synchronized (this) {
+        // Started meanwhile by new data.
+        if (!stopped && !dead && process == null) {
+          start();
+        }
+      }
+    }
+
+    private synchronized void exited(Process p) {
+      if (p != process || stopped || dead) {
+        // Killed on purpose.
+        return;
+      }
+      process = null;
+      if (System.nanoTime() - startedAt > TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF_MILLIS)) {
+        failures = 0;
+      }
+      long delay = Math.min(MIN_BACKOFF_MILLIS << Math.min(failures, 20), MAX_BACKOFF_MILLIS);
+      failures++;
+      System.out.printf(
+          "Child %s exited with %d, restarting in %d ms\n", name, p.exitValue(), delay);
+      restartLater(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    private void start() {
+      String[] command = new String[exec.length];
+      for (int i = 0; i < exec.length; i++) {
+        command[i] = exec[i].replace("{}", config.path().toString());
+      }
+      try {
+        Process p = output.start(new ProcessBuilder(command));
+        process = p;
+        startedAt = System.nanoTime();
+        starts.incrementAndGet();
+        p.onExit().thenAccept(this::exited);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    /** Forgets the running program, so that its exit is not taken for a crash. */
+    private Process detach() {
+      Process p = process;
+      process = null;
+      return p;
+    }
+
+    /** Kills a detached program and waits for it to exit, without holding the lock. */
+    private void terminate(Process p) {
+      if (p == null) {
+        return;
+      }
+      p.destroy();
+      try {
+        if (!p.waitFor(10, TimeUnit.SECONDS)) {
+          p.destroyForcibly().waitFor();
+        }
+        kills.incrementAndGet();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
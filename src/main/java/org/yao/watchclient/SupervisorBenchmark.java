@@ -0,0 +1,125 @@
+package org.yao.watchclient;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Measures how long a {@link Supervisor} takes to reconcile when all the children of its parent
+ * znode are created, updated and deleted at once. Every change is committed with a single
+ * <tt>multi</tt> so that the supervisor sees it as one burst.
+ *
+ * <pre>
+ * java -Dsupervisor.restartRate=1000 -cp build/classes/java/main:$CLASSPATH \
+ *     org.yao.watchclient.SupervisorBenchmark localhost:2181 1000
+ * </pre>
+ */
+public class SupervisorBenchmark {
+  private static final String PARENT = "/supervisor-bench";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("USAGE: SupervisorBenchmark hostPort children [program args ...]");
+      System.exit(2);
+    }
+    String hostPort = args[0];
+    int count = Integer.parseInt(args[1]);
+    String[] exec = {"sleep", "600"};
+    if (args.length > 2) {
+      exec = new String[args.length - 2];
+      System.arraycopy(args, 2, exec, 0, exec.length);
+    }
+
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            hostPort,
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    try {
+      zk.create(PARENT, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    } catch (KeeperException.NodeExistsException e) {
+      // Left over from a previous run.
+    }
+    List<String> paths = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      paths.add(String.format("%s/child-%05d", PARENT, i));
+    }
+
+    Supervisor supervisor = new Supervisor(hostPort, PARENT, "supervisor-bench-data", exec);
+    measure(
+        "start",
+        () ->
+            multi(
+                zk,
+                paths,
+                path ->
+                    Op.create(
+                        path, data(path, 0), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT)),
+        () -> supervisor.running() == count);
+    long starts = supervisor.starts();
+    measure(
+        "restart",
+        () -> multi(zk, paths, path -> Op.setData(path, data(path, 1), -1)),
+        () -> supervisor.starts() == starts + count && supervisor.running() == count);
+    // The programs are no longer tracked once they are being stopped, so count them as they exit.
+    long kills = supervisor.kills();
+    measure(
+        "stop",
+        () -> multi(zk, paths, path -> Op.delete(path, -1)),
+        () -> supervisor.kills() == kills + count);
+
+    supervisor.close();
+    zk.delete(PARENT, -1);
+    zk.close();
+  }
+
+  private interface Change {
+    void apply() throws Exception;
+  }
+
+  private static void measure(String name, Change change, BooleanSupplier done)
+      throws Exception {
+    long start = System.nanoTime();
+    change.apply();
+    long committed = System.nanoTime();
+    while (!done.getAsBoolean()) {
+      Thread.sleep(1);
+    }
+    long end = System.nanoTime();
+    System.out.printf(
+        "%s: committed in %d ms, reconciled in %d ms\n",
+        name,
+        TimeUnit.NANOSECONDS.toMillis(committed - start),
+        TimeUnit.NANOSECONDS.toMillis(end - start));
+  }
+
+  private static void multi(ZooKeeper zk, List<String> paths, Function<String, Op> op)
+      throws Exception {
+    List<Op> ops = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      ops.add(op.apply(path));
+    }
+    zk.multi(ops);
+  }
+
+  private static byte[] data(String path, int version) {
+    return (path + " " + version + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+}
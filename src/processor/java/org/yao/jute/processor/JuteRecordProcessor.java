@@ -0,0 +1,408 @@
+package org.yao.jute.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a serializer for every class annotated with <tt>org.yao.jute.JuteRecord</tt>. The
+ * generated code reads and writes each field with the matching {@link java.nio.ByteBuffer} call,
+ * in declaration order and without going through the <tt>OutputArchive</tt> interface, see
+ * <tt>JuteRecord</tt> for the supported classes.
+ */
+@SupportedAnnotationTypes(JuteRecordProcessor.ANNOTATION)
+public class JuteRecordProcessor extends AbstractProcessor {
+  static final String ANNOTATION = "org.yao.jute.JuteRecord";
+  private static final String BUFFERS = "org.yao.jute.JuteBuffers";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : round.getElementsAnnotatedWith(annotation)) {
+        try {
+          generate((TypeElement) element);
+        } catch (InvalidRecordException e) {
+          processingEnv
+              .getMessager()
+              .printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+        } catch (IOException e) {
+          processingEnv
+              .getMessager()
+              .printMessage(Diagnostic.Kind.ERROR, "cannot write serializer: " + e, element);
+        }
+      }
+    }
+    return true;
+  }
+
+  private static class InvalidRecordException extends Exception {
+    final Element element;
+
+    InvalidRecordException(String message, Element element) {
+      super(message);
+      this.element = element;
+    }
+  }
+
+  private void generate(TypeElement type) throws InvalidRecordException, IOException {
+    if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+      throw new InvalidRecordException("@JuteRecord needs a concrete class", type);
+    }
+    if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+      throw new InvalidRecordException("@JuteRecord needs a static nested class", type);
+    }
+    boolean constructor = false;
+    for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+        constructor = true;
+      }
+    }
+    if (!constructor) {
+      throw new InvalidRecordException("@JuteRecord needs a non-private no-arg constructor", type);
+    }
+    for (TypeMirror s = type.getSuperclass(); s.getKind() == TypeKind.DECLARED; ) {
+      TypeElement superclass = (TypeElement) ((DeclaredType) s).asElement();
+      for (VariableElement field : ElementFilter.fieldsIn(superclass.getEnclosedElements())) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.TRANSIENT)) {
+          throw new InvalidRecordException(
+              "@JuteRecord does not serialize the fields of " + superclass.getQualifiedName(),
+              type);
+        }
+      }
+      s = superclass.getSuperclass();
+    }
+    List<VariableElement> fields = new ArrayList<>();
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+        continue;
+      }
+      if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+        throw new InvalidRecordException("@JuteRecord fields must not be private or final", field);
+      }
+      check(field.asType(), field, true);
+      fields.add(field);
+    }
+
+    String pkg = packageOf(type).getQualifiedName().toString();
+    String name = serializerName(type);
+    String record = type.getQualifiedName().toString();
+    Code code = new Code();
+    code.line("package %s;", pkg);
+    code.line("");
+    code.line("import java.io.EOFException;");
+    code.line("import java.io.IOException;");
+    code.line("import java.nio.BufferUnderflowException;");
+    code.line("import java.nio.ByteBuffer;");
+    code.line("");
+    code.line("/** Generated from {@link %s} by %s. */", record, getClass().getSimpleName());
+    code.line("public final class %s {", name);
+    code.line("  private %s() {}", name);
+    code.line("");
+    code.line("  /** Returns the number of bytes {@link #serialize} writes for <tt>r</tt>. */");
+    code.line("  public static int size(%s r) {", record);
+    code.line("    int n = 0;");
+    for (VariableElement field : fields) {
+      size(code, field.asType(), "r." + field.getSimpleName(), 2);
+    }
+    code.line("    return n;");
+    code.line("  }");
+    code.line("");
+    code.line("  public static void serialize(%s r, ByteBuffer bb) {", record);
+    for (VariableElement field : fields) {
+      write(code, field.asType(), "r." + field.getSimpleName(), 2);
+    }
+    code.line("  }");
+    code.line("");
+    code.line("  public static %s deserialize(ByteBuffer bb) throws IOException {", record);
+    code.line("    %s r = new %s();", record, record);
+    code.line("    deserialize(r, bb);");
+    code.line("    return r;");
+    code.line("  }");
+    code.line("");
+    code.line("  public static void deserialize(%s r, ByteBuffer bb) throws IOException {", record);
+    code.line("    try {");
+    for (VariableElement field : fields) {
+      read(code, field.asType(), "r." + field.getSimpleName(), 3);
+    }
+    code.line("    } catch (BufferUnderflowException e) {");
+    code.line("      throw new EOFException();");
+    code.line("    }");
+    code.line("  }");
+    code.line("}");
+
+    try (Writer writer =
+        processingEnv.getFiler().createSourceFile(pkg + "." + name, type).openWriter()) {
+      writer.write(code.toString());
+    }
+  }
+
+  private static PackageElement packageOf(Element element) {
+    while (!(element instanceof PackageElement)) {
+      element = element.getEnclosingElement();
+    }
+    return (PackageElement) element;
+  }
+
+  /** <tt>FooSerializer</tt>, or <tt>Outer_FooSerializer</tt> for a nested class. */
+  private static String serializerName(TypeElement type) {
+    String name = type.getSimpleName().toString();
+    Element e = type.getEnclosingElement();
+    for (; e instanceof TypeElement; e = e.getEnclosingElement()) {
+      name = e.getSimpleName() + "_" + name;
+    }
+    return name + "Serializer";
+  }
+
+  private boolean isRecord(TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    Element element = ((DeclaredType) type).asElement();
+    return element.getAnnotationMirrors().stream()
+        .anyMatch(a -> a.getAnnotationType().toString().equals(ANNOTATION));
+  }
+
+  private static boolean is(TypeMirror type, String name) {
+    return type.getKind() == TypeKind.DECLARED
+        && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+  }
+
+  private static boolean isBytes(TypeMirror type) {
+    return type.getKind() == TypeKind.ARRAY && type.toString().equals("byte[]");
+  }
+
+  private static TypeMirror elementOf(TypeMirror list) {
+    return ((DeclaredType) list).getTypeArguments().get(0);
+  }
+
+  /** Returns the primitive written for a primitive or boxed type, or null. */
+  private TypeKind primitive(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      return type.getKind();
+    }
+    if (type.getKind() == TypeKind.DECLARED) {
+      try {
+        return processingEnv.getTypeUtils().unboxedType(type).getKind();
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private void check(TypeMirror type, Element field, boolean top) throws InvalidRecordException {
+    TypeKind kind = primitive(type);
+    if (kind != null) {
+      if (kind == TypeKind.SHORT || kind == TypeKind.CHAR) {
+        throw new InvalidRecordException("Jute has no " + kind.toString().toLowerCase(), field);
+      }
+      if (top && !type.getKind().isPrimitive()) {
+        throw new InvalidRecordException("boxed fields can be null; use " + kind, field);
+      }
+      return;
+    }
+    if (is(type, "java.lang.String") || isBytes(type) || isRecord(type)) {
+      return;
+    }
+    if (is(type, "java.util.List") && ((DeclaredType) type).getTypeArguments().size() == 1) {
+      check(elementOf(type), field, false);
+      return;
+    }
+    throw new InvalidRecordException("unsupported Jute type " + type, field);
+  }
+
+  private static int fixedSize(TypeKind kind) {
+    switch (kind) {
+      case BOOLEAN:
+      case BYTE:
+        return 1;
+      case INT:
+      case FLOAT:
+        return 4;
+      default:
+        return 8;
+    }
+  }
+
+  private void size(Code code, TypeMirror type, String expr, int depth) {
+    TypeKind kind = primitive(type);
+    if (kind != null) {
+      code.indent(depth).line("n += %d;", fixedSize(kind));
+    } else if (is(type, "java.lang.String") || isBytes(type)) {
+      code.indent(depth).line("n += %s.sizeOf(%s);", BUFFERS, expr);
+    } else if (isRecord(type)) {
+      code.indent(depth).line("n += %s.size(%s);", serializerOf(type), expr);
+    } else {
+      TypeMirror element = elementOf(type);
+      String v = code.var("v");
+      code.indent(depth).line("%s %s = %s;", type, v, expr);
+      code.indent(depth).line("n += 4;");
+      code.indent(depth).line("if (%s != null) {", v);
+      TypeKind elementKind = primitive(element);
+      if (elementKind != null) {
+        code.indent(depth + 1).line("n += %s.size() * %d;", v, fixedSize(elementKind));
+      } else {
+        String e = code.var("e");
+        code.indent(depth + 1).line("for (%s %s : %s) {", element, e, v);
+        size(code, element, e, depth + 2);
+        code.indent(depth + 1).line("}");
+      }
+      code.indent(depth).line("}");
+    }
+  }
+
+  private void write(Code code, TypeMirror type, String expr, int depth) {
+    TypeKind kind = primitive(type);
+    if (kind != null) {
+      switch (kind) {
+        case BOOLEAN:
+          code.indent(depth).line("bb.put((byte) (%s ? 1 : 0));", expr);
+          break;
+        case BYTE:
+          code.indent(depth).line("bb.put(%s);", expr);
+          break;
+        case INT:
+          code.indent(depth).line("bb.putInt(%s);", expr);
+          break;
+        case LONG:
+          code.indent(depth).line("bb.putLong(%s);", expr);
+          break;
+        case FLOAT:
+          code.indent(depth).line("bb.putFloat(%s);", expr);
+          break;
+        default:
+          code.indent(depth).line("bb.putDouble(%s);", expr);
+      }
+    } else if (is(type, "java.lang.String")) {
+      code.indent(depth).line("%s.writeString(bb, %s);", BUFFERS, expr);
+    } else if (isBytes(type)) {
+      code.indent(depth).line("%s.writeBuffer(bb, %s);", BUFFERS, expr);
+    } else if (isRecord(type)) {
+      code.indent(depth).line("%s.serialize(%s, bb);", serializerOf(type), expr);
+    } else {
+      TypeMirror element = elementOf(type);
+      String v = code.var("v");
+      String e = code.var("e");
+      code.indent(depth).line("%s %s = %s;", type, v, expr);
+      code.indent(depth).line("if (%s == null) {", v);
+      code.indent(depth + 1).line("bb.putInt(-1);");
+      code.indent(depth).line("} else {");
+      code.indent(depth + 1).line("bb.putInt(%s.size());", v);
+      code.indent(depth + 1).line("for (%s %s : %s) {", element, e, v);
+      write(code, element, e, depth + 2);
+      code.indent(depth + 1).line("}");
+      code.indent(depth).line("}");
+    }
+  }
+
+  private void read(Code code, TypeMirror type, String target, int depth) {
+    TypeKind kind = primitive(type);
+    if (kind != null) {
+      String get;
+      switch (kind) {
+        case BOOLEAN:
+          get = "bb.get() != 0";
+          break;
+        case BYTE:
+          get = "bb.get()";
+          break;
+        case INT:
+          get = "bb.getInt()";
+          break;
+        case LONG:
+          get = "bb.getLong()";
+          break;
+        case FLOAT:
+          get = "bb.getFloat()";
+          break;
+        default:
+          get = "bb.getDouble()";
+      }
+      code.indent(depth).line("%s = %s;", target, get);
+    } else if (is(type, "java.lang.String")) {
+      code.indent(depth).line("%s = %s.readString(bb);", target, BUFFERS);
+    } else if (isBytes(type)) {
+      code.indent(depth).line("%s = %s.readBuffer(bb);", target, BUFFERS);
+    } else if (isRecord(type)) {
+      code.indent(depth).line("%s = %s.deserialize(bb);", target, serializerOf(type));
+    } else {
+      TypeMirror element = elementOf(type);
+      String c = code.var("c");
+      String v = code.var("v");
+      String i = code.var("i");
+      String e = code.var("e");
+      code.indent(depth).line("int %s = bb.getInt();", c);
+      code.indent(depth).line("%s %s = null;", type, v);
+      code.indent(depth).line("if (%s != -1) {", c);
+      // Every element takes at least a byte, so a larger count is corrupt.
+      code.indent(depth + 1).line("if (%s < 0 || %s > bb.remaining()) {", c, c);
+      code.indent(depth + 2).line("throw new IOException(\"Unreasonable count = \" + %s);", c);
+      code.indent(depth + 1).line("}");
+      code.indent(depth + 1).line("%s = new java.util.ArrayList<>(%s);", v, c);
+      code.indent(depth + 1).line("for (int %s = 0; %s < %s; %s++) {", i, i, c, i);
+      code.indent(depth + 2).line("%s %s;", element, e);
+      read(code, element, e, depth + 2);
+      code.indent(depth + 2).line("%s.add(%s);", v, e);
+      code.indent(depth + 1).line("}");
+      code.indent(depth).line("}");
+      code.indent(depth).line("%s = %s;", target, v);
+    }
+  }
+
+  private String serializerOf(TypeMirror type) {
+    TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+    return packageOf(element).getQualifiedName() + "." + serializerName(element);
+  }
+
+  /** Source text with indentation and fresh local variable names. */
+  private static class Code {
+    private final StringBuilder sb = new StringBuilder();
+    private int vars;
+
+    Code indent(int depth) {
+      for (int i = 0; i < depth; i++) {
+        sb.append("  ");
+      }
+      return this;
+    }
+
+    Code line(String format, Object... args) {
+      sb.append(String.format(format, args)).append('\n');
+      return this;
+    }
+
+    String var(String prefix) {
+      return prefix + vars++;
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.yao;
+
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A standalone server on an ephemeral port with its data in a given directory, for tests that
+ * should not depend on the server at <tt>localhost:2181</tt> the other tests use.
+ */
+public class EmbeddedZooKeeper implements Closeable {
+  private final File dir;
+  private ZooKeeperServer server;
+  private ServerCnxnFactory factory;
+
+  public EmbeddedZooKeeper(File dir) throws IOException, InterruptedException {
+    this.dir = dir;
+    start(0);
+  }
+
+  private void start(int port) throws IOException, InterruptedException {
+    server = new ZooKeeperServer(dir, dir, 2000);
+    factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", port), 100);
+    factory.startup(server);
+  }
+
+  /**
+   * Stops the server and starts it again on the same port and data. The sessions survive if their
+   * clients reconnect within the session timeout.
+   */
+  public void restart() throws IOException, InterruptedException {
+    int port = factory.getLocalPort();
+    close();
+    start(port);
+  }
+
+  public String connectString() {
+    return "127.0.0.1:" + factory.getLocalPort();
+  }
+
+  /** Opens a session and waits until it is connected. */
+  public ZooKeeper connect() throws IOException, InterruptedException {
+    CountDownLatch connected = new CountDownLatch(1);
+    ZooKeeper zk =
+        new ZooKeeper(
+            connectString(),
+            30000,
+            event -> {
+              if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+              }
+            });
+    connected.await();
+    return zk;
+  }
+
+  @Override
+  public void close() {
+    factory.shutdown();
+    server.shutdown();
+  }
+}
@@ -0,0 +1,77 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yao.EmbeddedZooKeeper;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class BulkLoaderTests {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private EmbeddedZooKeeper server;
+  private ZooKeeper zk;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EmbeddedZooKeeper(folder.newFolder());
+    zk = server.connect();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    zk.close();
+    server.close();
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testCreateParents() throws Exception {
+    BulkLoader loader = new BulkLoader(zk, 16);
+    for (int i = 0; i < 1000; i++) {
+      loader.create(String.format("/load/d%d/e%d/n%d", i % 10, i % 3, i), bytes("v" + i));
+    }
+    loader.await();
+
+    assertThat(loader.results()).containsExactly(Code.OK, 1000L);
+    assertThat(loader.latency().count()).isEqualTo(1000);
+    // /load, 10 d and 30 e parents.
+    assertThat(loader.parents()).isEqualTo(41);
+    assertThat(zk.getChildren("/load", false)).hasSize(10);
+    assertThat(zk.getData("/load/d7/e1/n997", false, null)).isEqualTo(bytes("v997"));
+  }
+
+  @Test
+  public void testListedParents() throws Exception {
+    BulkLoader loader = new BulkLoader(zk, 4);
+    // Parents listed before their children, like a dump, are not created twice.
+    loader.create("/dump", bytes("root"));
+    loader.create("/dump/a", bytes("a"));
+    loader.create("/dump/a/b", bytes("b"));
+    loader.create("/dump/c", bytes("c"));
+    // Created before, so counted as a failure.
+    loader.create("/dump/a", bytes("again"));
+    // Invalid paths are counted without taking a slot or creating parents.
+    for (String path : new String[] {"/dump/x/", "/dump//y", "dump/z", "/dump/."}) {
+      loader.create(path, bytes("bad"));
+    }
+    loader.await();
+
+    assertThat(loader.parents()).isEqualTo(0);
+    assertThat(loader.results())
+        .containsExactly(Code.OK, 4L, Code.NODEEXISTS, 1L, Code.BADARGUMENTS, 4L);
+    assertThat(zk.getChildren("/dump", false)).containsExactly("a", "c");
+    assertThat(zk.getData("/dump", false, null)).isEqualTo(bytes("root"));
+    assertThat(zk.getData("/dump/a", false, null)).isEqualTo(bytes("a"));
+  }
+}
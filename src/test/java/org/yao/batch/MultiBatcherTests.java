@@ -0,0 +1,186 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yao.EmbeddedZooKeeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class MultiBatcherTests {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private EmbeddedZooKeeper server;
+  private ZooKeeper zk;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EmbeddedZooKeeper(folder.newFolder());
+    zk = server.connect();
+    zk.create("/batch", new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    zk.close();
+    server.close();
+  }
+
+  private static Op create(String path, int size) {
+    return Op.create(path, new byte[size], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+  }
+
+  @Test
+  public void testCoalesce() throws Exception {
+    int threads = 8;
+    int perThread = 500;
+    List<CompletableFuture<OpResult>> futures = new ArrayList<>();
+    MultiBatcher batcher = new MultiBatcher(zk, 100, 0xfffff, 1);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<List<CompletableFuture<OpResult>>>> submitted = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      submitted.add(
+          pool.submit(
+              () -> {
+                List<CompletableFuture<OpResult>> mine = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                  mine.add(batcher.submit(create("/batch/n" + thread + "-" + i, 10)));
+                }
+                return mine;
+              }));
+    }
+    for (Future<List<CompletableFuture<OpResult>>> f : submitted) {
+      futures.addAll(f.get());
+    }
+    pool.shutdown();
+    batcher.close();
+
+    for (CompletableFuture<OpResult> f : futures) {
+      assertThat(f.isDone()).isTrue();
+      assertThat(f.get()).isInstanceOf(OpResult.CreateResult.class);
+    }
+    assertThat(zk.getChildren("/batch", false)).hasSize(threads * perThread);
+    assertThat(batcher.ops()).isEqualTo(threads * perThread);
+    assertThat(batcher.retries()).isEqualTo(0);
+    // At most 100 writes per batch, and far fewer batches than writes.
+    assertThat(batcher.batches()).isAtLeast(threads * perThread / 100);
+    assertThat(batcher.batches()).isLessThan(threads * perThread / 10);
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    // Each create is about 1 KB, so a batch of 4 KB holds at most 3 of them.
+    MultiBatcher batcher = new MultiBatcher(zk, 1000, 4096, 1);
+    List<CompletableFuture<OpResult>> futures = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      futures.add(batcher.submit(create("/batch/n" + i, 1000)));
+    }
+    CompletableFuture<OpResult> tooLarge = batcher.submit(create("/batch/large", 5000));
+    batcher.close();
+
+    for (CompletableFuture<OpResult> f : futures) {
+      assertThat(f.get()).isInstanceOf(OpResult.CreateResult.class);
+    }
+    assertThat(batcher.batches()).isAtLeast(10);
+    try {
+      tooLarge.get();
+      fail("expected IllegalArgumentException");
+    } catch (ExecutionException expected) {
+      assertThat(expected).hasCauseThat().isInstanceOf(IllegalArgumentException.class);
+    }
+    assertThat(zk.exists("/batch/large", false)).isNull();
+  }
+
+  @Test
+  public void testIsolateFailures() throws Exception {
+    zk.create("/batch/n3", new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    zk.create("/batch/n7", new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    MultiBatcher batcher = new MultiBatcher(zk, 1000, 0xfffff, 1);
+    // Hold the only slot, so that all the writes below go out in one batch.
+    CompletableFuture<OpResult> first = batcher.submit(create("/batch/first", 0));
+    List<CompletableFuture<OpResult>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(batcher.submit(create("/batch/n" + i, 0)));
+    }
+    futures.add(batcher.submit(Op.setData("/batch/missing", new byte[0], -1)));
+    batcher.close();
+
+    assertThat(first.get(10, TimeUnit.SECONDS)).isInstanceOf(OpResult.CreateResult.class);
+    for (int i = 0; i < futures.size(); i++) {
+      CompletableFuture<OpResult> f = futures.get(i);
+      if (i == 3 || i == 7 || i == 10) {
+        try {
+          f.get();
+          fail("expected KeeperException for write " + i);
+        } catch (ExecutionException expected) {
+          Class<?> type =
+              i == 10 ? KeeperException.NoNodeException.class
+                  : KeeperException.NodeExistsException.class;
+          assertThat(expected).hasCauseThat().isInstanceOf(type);
+        }
+      } else {
+        assertThat(f.get()).isInstanceOf(OpResult.CreateResult.class);
+      }
+    }
+    assertThat(zk.getChildren("/batch", false)).hasSize(11);
+    assertThat(batcher.retries()).isAtLeast(1);
+  }
+
+  @Test
+  public void testCloseWhileSubmitting() throws Exception {
+    MultiBatcher batcher = new MultiBatcher(zk, 10, 0xfffff, 1);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    List<Future<List<CompletableFuture<OpResult>>>> submitted = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      submitted.add(
+          pool.submit(
+              () -> {
+                List<CompletableFuture<OpResult>> mine = new ArrayList<>();
+                try {
+                  for (int i = 0; ; i++) {
+                    mine.add(batcher.submit(create("/batch/c" + thread + "-" + i, 10)));
+                  }
+                } catch (IllegalStateException closed) {
+                  return mine;
+                }
+              }));
+    }
+    Thread.sleep(200);
+    batcher.close();
+    pool.shutdown();
+
+    // Every accepted write is either sent or failed as closed, none is left hanging.
+    int created = 0;
+    for (Future<List<CompletableFuture<OpResult>>> f : submitted) {
+      for (CompletableFuture<OpResult> future : f.get(10, TimeUnit.SECONDS)) {
+        try {
+          future.get(10, TimeUnit.SECONDS);
+          created++;
+        } catch (ExecutionException e) {
+          assertThat(e).hasCauseThat().isInstanceOf(IllegalStateException.class);
+        }
+      }
+    }
+    assertThat(zk.getChildren("/batch", false)).hasSize(created);
+  }
+}
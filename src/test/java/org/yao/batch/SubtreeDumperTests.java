@@ -0,0 +1,118 @@
+package org.yao.batch;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooDefs.Perms;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Id;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yao.EmbeddedZooKeeper;
+import org.yao.jute.RecordFile;
+import org.yao.jute.RecordFileWriter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class SubtreeDumperTests {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private EmbeddedZooKeeper server;
+  private ZooKeeper zk;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EmbeddedZooKeeper(folder.newFolder());
+    zk = server.connect();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    zk.close();
+    server.close();
+  }
+
+  private void create(String path, String data, CreateMode mode) throws Exception {
+    zk.create(path, data.getBytes(StandardCharsets.UTF_8), Ids.OPEN_ACL_UNSAFE, mode);
+  }
+
+  private String data(String path) throws Exception {
+    return new String(zk.getData(path, false, null), StandardCharsets.UTF_8);
+  }
+
+  /** Creates /app with 3 services of 100 instances each, and an ephemeral lock per service. */
+  private void populate() throws Exception {
+    create("/app", "app", CreateMode.PERSISTENT);
+    for (int s = 0; s < 3; s++) {
+      String service = "/app/s" + s;
+      create(service, "service " + s, CreateMode.PERSISTENT);
+      create(service + "/lock", "", CreateMode.EPHEMERAL);
+      for (int i = 0; i < 100; i++) {
+        create(service + "/i" + i, "instance " + i, CreateMode.PERSISTENT);
+      }
+    }
+    create("/app/queue", "", CreateMode.CONTAINER);
+    create("/app/queue/item", "item", CreateMode.PERSISTENT);
+  }
+
+  @Test
+  public void testDumpRestore() throws Exception {
+    populate();
+    List<ACL> readOnly =
+        Collections.singletonList(new ACL(Perms.READ | Perms.ADMIN, new Id("world", "anyone")));
+    zk.setACL("/app/s2/i5", readOnly, -1);
+
+    File dump = folder.newFile();
+    SubtreeDumper dumper = new SubtreeDumper(zk, 8, true);
+    try (RecordFileWriter out = new RecordFileWriter(dump.toPath())) {
+      dumper.dump("/app", out);
+    }
+    assertThat(dumper.written()).isEqualTo(1 + 3 * 101 + 2);
+    assertThat(dumper.skipped()).isEqualTo(3);
+
+    BulkLoader loader = new BulkLoader(zk, 8);
+    try (RecordFile file = new RecordFile(dump.toPath())) {
+      List<String> paths =
+          file.records(CreateRequest::new).map(CreateRequest::getPath).collect(Collectors.toList());
+      // Parents come before their children.
+      assertThat(paths.get(0)).isEqualTo("/app");
+      assertThat(paths.indexOf("/app/s1")).isLessThan(paths.indexOf("/app/s1/i7"));
+      assertThat(paths.indexOf("/app/queue")).isLessThan(paths.indexOf("/app/queue/item"));
+
+      assertThat(SubtreeDumper.restore(file, loader, "/copy/app")).isEqualTo(dumper.written());
+      loader.await();
+    }
+    assertThat(loader.results()).containsExactly(Code.OK, dumper.written());
+    assertThat(data("/copy/app")).isEqualTo("app");
+    assertThat(data("/copy/app/s1/i42")).isEqualTo("instance 42");
+    assertThat(zk.getChildren("/copy/app/s0", false)).hasSize(100);
+    assertThat(zk.exists("/copy/app/s0/lock", false)).isNull();
+    assertThat(zk.getACL("/copy/app/s2/i5", new Stat())).isEqualTo(readOnly);
+    assertThat(zk.exists("/copy/app/queue", false).getEphemeralOwner())
+        .isEqualTo(zk.exists("/app/queue", false).getEphemeralOwner());
+  }
+
+  @Test
+  public void testDumpMissing() throws Exception {
+    File dump = folder.newFile();
+    try (RecordFileWriter out = new RecordFileWriter(dump.toPath())) {
+      new SubtreeDumper(zk, 8, false).dump("/missing", out);
+      fail("expected NoNodeException");
+    } catch (KeeperException.NoNodeException expected) {
+    }
+  }
+}
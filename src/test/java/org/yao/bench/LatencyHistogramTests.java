@@ -0,0 +1,66 @@
+package org.yao.bench;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LatencyHistogramTests {
+
+  @Test
+  public void testBucketBounds() {
+    for (long value : new long[] {0, 1, 127, 128, 255, 256, 1000, 123456789, Long.MAX_VALUE}) {
+      long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+      assertThat(upper).isAtLeast(value);
+      assertThat((double) (upper - value)).isAtMost(value / 60.0);
+    }
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(Long.MAX_VALUE);
+    assertThat(histogram.percentileNanos(100)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.recordNanos(i * 1000);
+    }
+    assertThat(histogram.count()).isEqualTo(1000);
+    assertThat(histogram.meanNanos()).isWithin(1).of(500500);
+    assertThat((double) histogram.percentileNanos(50)).isWithin(500000 / 60.0).of(500000);
+    assertThat((double) histogram.percentileNanos(99)).isWithin(990000 / 60.0).of(990000);
+
+    LatencyHistogram other = new LatencyHistogram();
+    other.add(histogram);
+    assertThat(other.count()).isEqualTo(1000);
+    histogram.reset();
+    assertThat(histogram.count()).isEqualTo(0);
+    assertThat(histogram.percentileNanos(99)).isEqualTo(0);
+  }
+
+  @Test
+  public void testTakeInterval() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    int perThread = 200_000;
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < perThread; i++) {
+                  histogram.recordNanos(1000);
+                }
+              });
+      threads[t].start();
+    }
+    LatencyHistogram total = new LatencyHistogram();
+    for (Thread thread : threads) {
+      while (thread.isAlive()) {
+        total.add(histogram.takeInterval());
+      }
+    }
+    total.add(histogram.takeInterval());
+    assertThat(total.count()).isEqualTo((long) perThread * threads.length);
+    assertThat(total.percentileNanos(100)).isEqualTo(total.percentileNanos(0));
+    assertThat(histogram.count()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,114 @@
+package org.yao.cache;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class NodeArenaTests {
+  private static Stat stat(long zxid, int version, int children) {
+    return new Stat(zxid, zxid, 1000, 2000, version, 0, 0, 0, 0, children, zxid);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testPutFind() throws Exception {
+    for (SubtreeMirror.Storage storage : SubtreeMirror.Storage.values()) {
+      try (NodeArena arena = new NodeArena("/app", storage)) {
+        assertThat(arena.put("/app/a", bytes("orphan"), stat(1, 0, 0))).isEqualTo(-1);
+        arena.put("/app", bytes("root"), stat(1, 0, 2));
+        arena.put("/app/a", bytes("a"), stat(2, 0, 1));
+        arena.put("/app/b", null, stat(3, 0, 0));
+        arena.put("/app/a/x", bytes("中"), stat(4, 0, 0));
+        arena.put("/app/a/中", new byte[0], stat(5, 0, 0));
+
+        assertThat(arena.size()).isEqualTo(5);
+        assertThat(arena.data(arena.find("/app"))).isEqualTo(bytes("root"));
+        assertThat(arena.data(arena.find("/app/b"))).isNull();
+        assertThat(arena.data(arena.find("/app/a/x"))).isEqualTo(bytes("中"));
+        assertThat(arena.data(arena.find("/app/a/中"))).isEmpty();
+        assertThat(arena.children(arena.find("/app"))).containsExactly("a", "b");
+        assertThat(arena.children(arena.find("/app/a"))).containsExactly("x", "中");
+        assertThat(arena.find("/app/c")).isEqualTo(-1);
+        assertThat(arena.find("/application")).isEqualTo(-1);
+        assertThat(arena.find("/app/")).isEqualTo(-1);
+        assertThat(arena.find("/")).isEqualTo(-1);
+
+        Stat stat = arena.stat(arena.find("/app/a/x"));
+        assertThat(stat.getMzxid()).isEqualTo(4);
+        assertThat(stat.getMtime()).isEqualTo(2000);
+        assertThat(stat.getDataLength()).isEqualTo(3);
+
+        arena.put("/app/a/x", bytes("updated"), stat(6, 1, 0));
+        assertThat(arena.data(arena.find("/app/a/x"))).isEqualTo(bytes("updated"));
+        assertThat(arena.stat(arena.find("/app/a/x")).getVersion()).isEqualTo(1);
+        assertThat(arena.size()).isEqualTo(5);
+      }
+    }
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    try (NodeArena arena = new NodeArena("/", SubtreeMirror.Storage.HEAP)) {
+      arena.put("/", new byte[0], stat(0, 0, 0));
+      for (int i = 0; i < 100; i++) {
+        arena.put("/d" + i, new byte[0], stat(i, 0, 0));
+        for (int j = 0; j < 100; j++) {
+          arena.put("/d" + i + "/n" + j, bytes("v" + j), stat(i, 0, 0));
+        }
+      }
+      assertThat(arena.size()).isEqualTo(1 + 100 * 101);
+
+      assertThat(arena.remove("/d42")).isTrue();
+      assertThat(arena.remove("/d42")).isFalse();
+      assertThat(arena.size()).isEqualTo(1 + 99 * 101);
+      assertThat(arena.find("/d42/n7")).isEqualTo(-1);
+      assertThat(arena.children(arena.find("/"))).hasSize(99);
+      assertThat(arena.data(arena.find("/d43/n7"))).isEqualTo(bytes("v7"));
+
+      // Freed records are reused.
+      long bytes = arena.bytes();
+      for (int j = 0; j < 100; j++) {
+        arena.put("/d43/m" + j, bytes("w" + j), stat(0, 0, 0));
+      }
+      assertThat(arena.bytes()).isEqualTo(bytes);
+      assertThat(arena.children(arena.find("/d43"))).hasSize(200);
+
+      assertThat(arena.remove("/")).isTrue();
+      assertThat(arena.size()).isEqualTo(0);
+      assertThat(arena.find("/d1")).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    try (NodeArena arena = new NodeArena("/", SubtreeMirror.Storage.DIRECT)) {
+      arena.put("/", new byte[0], stat(0, 0, 0));
+      for (int i = 0; i < 10; i++) {
+        arena.put("/n" + i, new byte[0], stat(0, 0, 0));
+      }
+      // Rewriting 1000 KB 100 times leaves far less than 100 MB allocated.
+      for (int round = 0; round < 100; round++) {
+        for (int i = 0; i < 10; i++) {
+          byte[] data = new byte[100_000];
+          data[0] = (byte) round;
+          data[99_999] = (byte) i;
+          arena.put("/n" + i, data, stat(round, round, 0));
+        }
+      }
+      assertThat(arena.bytes()).isLessThan(20L * NodeArena.BLOB_CHUNK);
+      for (int i = 0; i < 10; i++) {
+        byte[] data = arena.data(arena.find("/n" + i));
+        assertThat(data).hasLength(100_000);
+        assertThat(data[0]).isEqualTo((byte) 99);
+        assertThat(data[99_999]).isEqualTo((byte) i);
+        assertThat(arena.name(arena.find("/n" + i))).isEqualTo("n" + i);
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.yao.cache;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yao.EmbeddedZooKeeper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SubtreeMirrorTests {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private EmbeddedZooKeeper server;
+  private ZooKeeper zk;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EmbeddedZooKeeper(folder.newFolder());
+    zk = server.connect();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    zk.close();
+    server.close();
+  }
+
+  private void create(String path, String data) throws Exception {
+    zk.create(
+        path, data.getBytes(StandardCharsets.UTF_8), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testMirror() throws Exception {
+    create("/app", "app");
+    for (int s = 0; s < 10; s++) {
+      create("/app/s" + s, "service " + s);
+      for (int i = 0; i < 100; i++) {
+        create("/app/s" + s + "/i" + i, "instance " + i);
+      }
+    }
+
+    try (SubtreeMirror mirror = new SubtreeMirror(zk, "/app", SubtreeMirror.Storage.DIRECT)) {
+      mirror.start();
+      assertThat(mirror.awaitInitialized(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(mirror.size()).isEqualTo(1 + 10 * 101);
+      assertThat(mirror.getData("/app/s3/i42")).isEqualTo(bytes("instance 42"));
+      assertThat(mirror.getChildren("/app/s3")).hasSize(100);
+      Stat stat = zk.exists("/app/s3", false);
+      assertThat(mirror.getStat("/app/s3")).isEqualTo(stat);
+
+      zk.setData("/app/s3/i42", bytes("changed"), -1);
+      await(() -> mirror.getStat("/app/s3/i42").getVersion() == 1);
+      assertThat(mirror.getData("/app/s3/i42")).isEqualTo(bytes("changed"));
+
+      create("/app/s3/new", "new");
+      create("/app/s3/new/deep", "deep");
+      await(() -> mirror.exists("/app/s3/new/deep"));
+      assertThat(mirror.getData("/app/s3/new")).isEqualTo(bytes("new"));
+      assertThat(mirror.getStat("/app/s3").getNumChildren()).isEqualTo(101);
+
+      zk.delete("/app/s3/new/deep", -1);
+      zk.delete("/app/s3/new", -1);
+      await(() -> !mirror.exists("/app/s3/new"));
+      assertThat(mirror.size()).isEqualTo(1 + 10 * 101);
+    }
+  }
+
+  @Test
+  public void testRootRecreated() throws Exception {
+    try (SubtreeMirror mirror = new SubtreeMirror(zk, "/later", SubtreeMirror.Storage.MAPPED)) {
+      mirror.start();
+      assertThat(mirror.awaitInitialized(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(mirror.size()).isEqualTo(0);
+
+      create("/later", "root");
+      create("/later/child", "child");
+      await(() -> mirror.exists("/later/child"));
+      assertThat(mirror.getData("/later")).isEqualTo(bytes("root"));
+
+      zk.delete("/later/child", -1);
+      zk.delete("/later", -1);
+      await(() -> mirror.size() == 0);
+      create("/later", "again");
+      await(() -> mirror.exists("/later"));
+      assertThat(mirror.getData("/later")).isEqualTo(bytes("again"));
+    }
+  }
+
+  @Test
+  public void testServerRestartedWhileLoading() throws Exception {
+    create("/big", "big");
+    for (int s = 0; s < 20; s++) {
+      List<Op> ops = new ArrayList<>();
+      ops.add(Op.create("/big/s" + s, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+      for (int i = 0; i < 250; i++) {
+        ops.add(
+            Op.create(
+                "/big/s" + s + "/i" + i,
+                bytes("instance " + i),
+                Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT));
+      }
+      zk.multi(ops);
+    }
+
+    try (SubtreeMirror mirror = new SubtreeMirror(zk, "/big", SubtreeMirror.Storage.HEAP)) {
+      mirror.start();
+      // The calls in flight fail with a connection loss and are sent again after reconnecting.
+      server.restart();
+      assertThat(mirror.awaitInitialized(30, TimeUnit.SECONDS)).isTrue();
+      assertThat(mirror.size()).isEqualTo(1 + 20 * 251);
+      assertThat(mirror.getData("/big/s19/i249")).isEqualTo(bytes("instance 249"));
+
+      // The watches still work after the resync.
+      zk.setData("/big/s7/i7", bytes("changed"), -1);
+      await(() -> mirror.getStat("/big/s7/i7").getVersion() == 1);
+      create("/big/s7/new", "new");
+      await(() -> mirror.exists("/big/s7/new"));
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package org.yao.jute;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/** The buffer-backed archives must write and read exactly what the stream-backed ones do. */
+public class ArchiveTests {
+  private static final String[] STRINGS = {
+    "", "yao", "/zookeeper/config", "é", "中文", "\u0000", "😀 surrogate pair", null
+  };
+
+  private static void write(OutputArchive oa) throws IOException {
+    oa.writeBool(true, "boolean");
+    oa.writeByte((byte) -3, "byte");
+    oa.writeInt(1024, "int");
+    oa.writeLong(-1L << 40, "long");
+    oa.writeFloat(1.5f, "float");
+    oa.writeDouble(Math.PI, "double");
+    for (String s : STRINGS) {
+      oa.writeString(s, "string");
+    }
+    oa.writeBuffer(new byte[] {1, 2, 3}, "buffer");
+    oa.writeBuffer(null, "buffer");
+    oa.writeRecord(new Student(2, "xiaoMing"), "student");
+    oa.writeRecord(new Stat(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11), "stat");
+    List<String> list = Arrays.asList("a", "b");
+    oa.startVector(list, "vector");
+    for (String s : list) {
+      oa.writeString(s, "element");
+    }
+    oa.endVector(list, "vector");
+    oa.startVector(null, "vector");
+    TreeMap<String, Integer> map = new TreeMap<>();
+    map.put("one", 1);
+    oa.startMap(map, "map");
+    oa.writeString("one", "key");
+    oa.writeInt(1, "value");
+    oa.endMap(map, "map");
+  }
+
+  private static void read(InputArchive ia) throws IOException {
+    assertThat(ia.readBool("boolean")).isTrue();
+    assertThat(ia.readByte("byte")).isEqualTo((byte) -3);
+    assertThat(ia.readInt("int")).isEqualTo(1024);
+    assertThat(ia.readLong("long")).isEqualTo(-1L << 40);
+    assertThat(ia.readFloat("float")).isEqualTo(1.5f);
+    assertThat(ia.readDouble("double")).isEqualTo(Math.PI);
+    BinaryInputArchive reference =
+        BinaryInputArchive.getArchive(new ByteArrayInputStream(serialize()));
+    reference.readBool("");
+    reference.readByte("");
+    reference.readInt("");
+    reference.readLong("");
+    reference.readFloat("");
+    reference.readDouble("");
+    for (String s : STRINGS) {
+      // A surrogate pair does not survive the char-wise encoding; read it the way ZooKeeper does.
+      assertThat(ia.readString("string")).isEqualTo(reference.readString("string"));
+    }
+    assertThat(ia.readBuffer("buffer")).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(ia.readBuffer("buffer")).isNull();
+    Student student = new Student();
+    ia.readRecord(student, "student");
+    assertThat(student.toString()).isEqualTo(new Student(2, "xiaoMing").toString());
+    Stat stat = new Stat();
+    ia.readRecord(stat, "stat");
+    assertThat(stat).isEqualTo(new Stat(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11));
+    Index index = ia.startVector("vector");
+    StringBuilder elements = new StringBuilder();
+    for (; !index.done(); index.incr()) {
+      elements.append(ia.readString("element"));
+    }
+    assertThat(elements.toString()).isEqualTo("ab");
+    assertThat(ia.startVector("vector")).isNull();
+    index = ia.startMap("map");
+    assertThat(index.done()).isFalse();
+    assertThat(ia.readString("key")).isEqualTo("one");
+    assertThat(ia.readInt("value")).isEqualTo(1);
+    index.incr();
+    assertThat(index.done()).isTrue();
+  }
+
+  private static byte[] serialize() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(BinaryOutputArchive.getArchive(out));
+    return out.toByteArray();
+  }
+
+  private static byte[] bytes(ByteBuffer bb) {
+    bb.flip();
+    byte[] b = new byte[bb.remaining()];
+    bb.get(b);
+    return b;
+  }
+
+  @Test
+  public void testByteBufferOutput() throws IOException {
+    byte[] expected = serialize();
+    for (ByteBuffer bb : new ByteBuffer[] {ByteBuffer.allocate(8), ByteBuffer.allocateDirect(8)}) {
+      ByteBufferOutputArchive oa = new ByteBufferOutputArchive(bb);
+      write(oa);
+      assertThat(oa.buffer().isDirect()).isEqualTo(bb.isDirect());
+      assertThat(bytes(oa.buffer())).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testByteBufOutput() throws IOException {
+    byte[] expected = serialize();
+    ByteBuf[] bufs = {
+      Unpooled.directBuffer(8), Unpooled.buffer(8), PooledByteBufAllocator.DEFAULT.directBuffer(8)
+    };
+    for (ByteBuf buf : bufs) {
+      write(new ByteBufOutputArchive(buf));
+      byte[] actual = new byte[buf.readableBytes()];
+      buf.readBytes(actual);
+      buf.release();
+      assertThat(actual).isEqualTo(expected);
+    }
+
+    // Strings which are not ASCII are encoded separately into a composite buffer.
+    CompositeByteBuf composite = Unpooled.compositeBuffer();
+    composite.addComponent(true, Unpooled.buffer(4).writeInt(7));
+    composite.addComponent(Unpooled.buffer(64));
+    new ByteBufOutputArchive(composite).writeString("中文", "s");
+    assertThat(composite.nioBufferCount()).isGreaterThan(1);
+    assertThat(composite.readInt()).isEqualTo(7);
+    assertThat(new ByteBufInputArchive(composite).readString("s")).isEqualTo("中文");
+    composite.release();
+  }
+
+  @Test
+  public void testByteBufferInput() throws IOException {
+    byte[] data = serialize();
+    read(new ByteBufferInputArchive(ByteBuffer.wrap(data)));
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data).flip();
+    read(new ByteBufferInputArchive(direct));
+  }
+
+  @Test
+  public void testByteBufInput() throws IOException {
+    ByteBuf buf = Unpooled.wrappedBuffer(serialize());
+    read(new ByteBufInputArchive(buf));
+    assertThat(buf.readableBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testStringCache() throws IOException {
+    ByteBufferOutputArchive oa = new ByteBufferOutputArchive(ByteBuffer.allocate(64));
+    oa.writeString("/path", "path");
+    oa.writeString("/path", "path");
+    ByteBuffer bb = oa.buffer().flip();
+    ByteBufferInputArchive ia = new ByteBufferInputArchive(bb);
+    assertThat(ia.readString("path")).isSameInstanceAs(ia.readString("path"));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] data = serialize();
+    InputArchive ia = new ByteBufferInputArchive(ByteBuffer.wrap(data, 0, data.length - 1));
+    try {
+      read(ia);
+      fail("expected EOFException");
+    } catch (EOFException expected) {
+    }
+  }
+}
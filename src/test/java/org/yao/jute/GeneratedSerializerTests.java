@@ -0,0 +1,214 @@
+package org.yao.jute;
+
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.InputArchive;
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/** The generated serializers must write and read what hand-written Records do. */
+public class GeneratedSerializerTests {
+  private static Course course() {
+    Course course = new Course();
+    course.open = true;
+    course.level = -3;
+    course.id = 1024;
+    course.created = -1L << 40;
+    course.weight = 1.5f;
+    course.score = Math.PI;
+    course.name = "分布式 coordination";
+    course.data = new byte[] {1, 2, 3};
+    course.teacher = new Lesson(1, "Yao");
+    course.lessons = Arrays.asList(new Lesson(2, "jute"), new Lesson(3, null));
+    course.tags = Arrays.asList("zk", "", null, "é");
+    course.sizes = Arrays.asList(7L, -7L);
+    course.flags = null;
+    return course;
+  }
+
+  private static byte[] binary(Record record) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    record.serialize(BinaryOutputArchive.getArchive(out), "record");
+    return out.toByteArray();
+  }
+
+  private static byte[] generated(Course course) {
+    ByteBuffer bb = ByteBuffer.allocate(GeneratedSerializerTests_CourseSerializer.size(course));
+    GeneratedSerializerTests_CourseSerializer.serialize(course, bb);
+    assertThat(bb.remaining()).isEqualTo(0);
+    return bb.array();
+  }
+
+  @Test
+  public void testWireCompatible() throws IOException {
+    Course course = course();
+    assertThat(generated(course)).isEqualTo(binary(course));
+
+    // Like BinaryOutputArchive, each half of a surrogate pair is encoded on its own.
+    course.name = "😀";
+    assertThat(generated(course)).isEqualTo(binary(course));
+
+    Course empty = new Course();
+    empty.teacher = new Lesson();
+    assertThat(generated(empty)).isEqualTo(binary(empty));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Course course = course();
+    ByteBuffer bb = ByteBuffer.wrap(binary(course));
+    Course copy = GeneratedSerializerTests_CourseSerializer.deserialize(bb);
+    assertThat(bb.remaining()).isEqualTo(0);
+    assertThat(binary(copy)).isEqualTo(binary(course));
+    assertThat(copy.lessons.get(1).title).isNull();
+    assertThat(copy.tags).containsExactly("zk", "", null, "é").inOrder();
+    assertThat(copy.flags).isNull();
+
+    ByteBuffer direct =
+        ByteBuffer.allocateDirect(GeneratedSerializerTests_CourseSerializer.size(course));
+    GeneratedSerializerTests_CourseSerializer.serialize(course, direct);
+    direct.flip();
+    assertThat(binary(GeneratedSerializerTests_CourseSerializer.deserialize(direct)))
+        .isEqualTo(binary(course));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] bytes = binary(course());
+    for (int length : new int[] {0, 3, 20, bytes.length / 2, bytes.length - 1}) {
+      try {
+        GeneratedSerializerTests_CourseSerializer.deserialize(ByteBuffer.wrap(bytes, 0, length));
+        fail("expected EOFException");
+      } catch (EOFException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void testCorruptCount() throws IOException {
+    Course course = new Course();
+    course.teacher = new Lesson();
+    course.lessons = Arrays.asList(new Lesson(2, "jute"));
+    byte[] bytes = binary(course);
+    // The count of lessons follows the primitives, two null buffers and the teacher.
+    int offset = 1 + 1 + 4 + 8 + 4 + 8 + 4 + 4 + 8;
+    assertThat(ByteBuffer.wrap(bytes).getInt(offset)).isEqualTo(1);
+    for (int count : new int[] {-2, Integer.MIN_VALUE, Integer.MAX_VALUE, bytes.length}) {
+      ByteBuffer bb = ByteBuffer.wrap(bytes.clone());
+      bb.putInt(offset, count);
+      try {
+        GeneratedSerializerTests_CourseSerializer.deserialize(bb);
+        fail("expected IOException");
+      } catch (IOException expected) {
+        assertThat(expected).hasMessageThat().isEqualTo("Unreasonable count = " + count);
+      }
+    }
+  }
+
+  @JuteRecord
+  static class Lesson implements Record {
+    int number;
+    String title;
+
+    Lesson() {}
+
+    Lesson(int number, String title) {
+      this.number = number;
+      this.title = title;
+    }
+
+    @Override
+    public void serialize(OutputArchive oa, String tag) throws IOException {
+      oa.startRecord(this, tag);
+      oa.writeInt(number, "number");
+      oa.writeString(title, "title");
+      oa.endRecord(this, tag);
+    }
+
+    @Override
+    public void deserialize(InputArchive ia, String tag) throws IOException {
+      ia.startRecord(tag);
+      number = ia.readInt("number");
+      title = ia.readString("title");
+      ia.endRecord(tag);
+    }
+  }
+
+  @JuteRecord
+  static class Course implements Record {
+    static final int IGNORED = 1;
+
+    boolean open;
+    byte level;
+    int id;
+    long created;
+    float weight;
+    double score;
+    String name;
+    byte[] data;
+    Lesson teacher;
+    List<Lesson> lessons;
+    List<String> tags;
+    List<Long> sizes;
+    List<Boolean> flags;
+
+    @Override
+    public void serialize(OutputArchive oa, String tag) throws IOException {
+      oa.startRecord(this, tag);
+      oa.writeBool(open, "open");
+      oa.writeByte(level, "level");
+      oa.writeInt(id, "id");
+      oa.writeLong(created, "created");
+      oa.writeFloat(weight, "weight");
+      oa.writeDouble(score, "score");
+      oa.writeString(name, "name");
+      oa.writeBuffer(data, "data");
+      oa.writeRecord(teacher, "teacher");
+      oa.startVector(lessons, "lessons");
+      if (lessons != null) {
+        for (Lesson lesson : lessons) {
+          oa.writeRecord(lesson, "lesson");
+        }
+      }
+      oa.endVector(lessons, "lessons");
+      oa.startVector(tags, "tags");
+      if (tags != null) {
+        for (String s : tags) {
+          oa.writeString(s, "tag");
+        }
+      }
+      oa.endVector(tags, "tags");
+      oa.startVector(sizes, "sizes");
+      if (sizes != null) {
+        for (long size : sizes) {
+          oa.writeLong(size, "size");
+        }
+      }
+      oa.endVector(sizes, "sizes");
+      oa.startVector(flags, "flags");
+      if (flags != null) {
+        for (boolean flag : flags) {
+          oa.writeBool(flag, "flag");
+        }
+      }
+      oa.endVector(flags, "flags");
+      oa.endRecord(this, tag);
+    }
+
+    /** Only written in these tests; {@link GeneratedSerializerTests_CourseSerializer} reads it. */
+    @Override
+    public void deserialize(InputArchive ia, String tag) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.yao.jute;
+
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.BinaryOutputArchive;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** {@link StringIntMap} and {@link StringLongMap} must write and read what a TreeMap does. */
+public class PrimitiveMapTests {
+  private static final int SIZE = 1000;
+
+  private static byte[] serialize(TreeMap<String, Integer> map) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryOutputArchive oa = BinaryOutputArchive.getArchive(out);
+    oa.startMap(map, "map");
+    for (Map.Entry<String, Integer> entry : map.entrySet()) {
+      oa.writeString(entry.getKey(), "key");
+      oa.writeInt(entry.getValue(), "value");
+    }
+    oa.endMap(map, "map");
+    return out.toByteArray();
+  }
+
+  private static byte[] serialize(StringIntMap map) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    map.serialize(BinaryOutputArchive.getArchive(out), "map");
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testPutAndGet() {
+    StringIntMap map = new StringIntMap(1);
+    Random random = new Random(42);
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < SIZE * 10; i++) {
+      String key = "/node-" + random.nextInt(SIZE);
+      int value = random.nextInt();
+      map.put(key, value);
+      expected.put(key, value);
+    }
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey(), -1)).isEqualTo(entry.getValue());
+    }
+    assertThat(map.containsKey("/absent")).isFalse();
+    assertThat(map.get("/absent", -1)).isEqualTo(-1);
+
+    map.clear();
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.containsKey("/node-1")).isFalse();
+    assertThat(map.add("/node-1", 3)).isEqualTo(3);
+    assertThat(map.add("/node-1", 4)).isEqualTo(7);
+    assertThat(map.toString()).isEqualTo("{/node-1=7}");
+  }
+
+  @Test
+  public void testSameBytesAsTreeMap() throws IOException {
+    StringIntMap map = new StringIntMap();
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    Random random = new Random(7);
+    for (int i = 0; i < SIZE; i++) {
+      String key = Integer.toString(random.nextInt(), 36) + "é";
+      map.put(key, i);
+      expected.put(key, i);
+    }
+    map.sort();
+    for (int i = 0; i < map.size(); i++) {
+      assertThat(map.get(map.keyAt(i), -1)).isEqualTo(map.valueAt(i));
+    }
+    byte[] bytes = serialize(expected);
+    assertThat(serialize(map)).isEqualTo(bytes);
+
+    StringIntMap copy = new StringIntMap();
+    copy.put("stale", 1);
+    copy.deserialize(BinaryInputArchive.getArchive(new ByteArrayInputStream(bytes)), "map");
+    assertThat(copy.containsKey("stale")).isFalse();
+    assertThat(serialize(copy)).isEqualTo(bytes);
+
+    ByteBufferInputArchive ia = new ByteBufferInputArchive(ByteBuffer.wrap(bytes));
+    copy.deserialize(ia, "map");
+    assertThat(serialize(copy)).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testLongMap() throws IOException {
+    StringLongMap map = new StringLongMap();
+    map.put("b", Long.MIN_VALUE);
+    map.put("a", 1L << 40);
+    map.add("c", -1);
+    map.sort();
+    assertThat(map.toString()).isEqualTo("{a=1099511627776, b=-9223372036854775808, c=-1}");
+
+    ByteBufferOutputArchive oa = new ByteBufferOutputArchive(ByteBuffer.allocate(16));
+    map.serialize(oa, "map");
+    ByteBuffer bb = oa.buffer().flip();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TreeMap<String, Long> expected = new TreeMap<>();
+    expected.put("a", 1L << 40);
+    expected.put("b", Long.MIN_VALUE);
+    expected.put("c", -1L);
+    BinaryOutputArchive boa = BinaryOutputArchive.getArchive(out);
+    boa.startMap(expected, "map");
+    for (Map.Entry<String, Long> entry : expected.entrySet()) {
+      boa.writeString(entry.getKey(), "key");
+      boa.writeLong(entry.getValue(), "value");
+    }
+    boa.endMap(expected, "map");
+    assertThat(ByteBuffer.wrap(out.toByteArray())).isEqualTo(bb);
+
+    StringLongMap copy = new StringLongMap(1);
+    copy.deserialize(new ByteBufferInputArchive(bb), "map");
+    assertThat(copy.toString()).isEqualTo(map.toString());
+  }
+}
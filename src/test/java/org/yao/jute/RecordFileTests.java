@@ -0,0 +1,92 @@
+package org.yao.jute;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class RecordFileTests {
+  private static final int RECORDS = 10000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Stat stat(long i) {
+    return new Stat(i, i + 1, i + 2, i + 3, (int) i, 0, 0, 0, 0, 0, i);
+  }
+
+  private Path write() throws IOException {
+    Path path = folder.newFile().toPath();
+    try (RecordFileWriter writer = new RecordFileWriter(path)) {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.append(stat(i));
+      }
+    }
+    return path;
+  }
+
+  @Test
+  public void testGet() throws IOException {
+    // Small segments, so that records are spread over many mappings.
+    try (RecordFile file = new RecordFile(write(), 4096)) {
+      assertThat(file.size()).isEqualTo(RECORDS);
+      for (long i : new long[] {0, 1, 63, 64, 65, 4321, RECORDS - 1}) {
+        assertThat(file.get(i, new Stat())).isEqualTo(stat(i));
+      }
+      try {
+        file.get(RECORDS, new Stat());
+        fail("expected IndexOutOfBoundsException");
+      } catch (IndexOutOfBoundsException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    try (RecordFile file = new RecordFile(write(), 4096)) {
+      long[] expected = {0};
+      file.records(Stat::new)
+          .forEachOrdered(
+              stat -> {
+                assertThat(stat).isEqualTo(stat(expected[0]));
+                expected[0]++;
+              });
+      assertThat(expected[0]).isEqualTo(RECORDS);
+
+      LongAdder count = new LongAdder();
+      LongAdder sum = new LongAdder();
+      file.forEach(
+          new ForkJoinPool(4),
+          Stat::new,
+          stat -> {
+            count.increment();
+            sum.add(stat.getCzxid());
+          });
+      assertThat(count.sum()).isEqualTo(RECORDS);
+      assertThat(sum.sum()).isEqualTo((long) RECORDS * (RECORDS - 1) / 2);
+    }
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    Path path = write();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+    try {
+      new RecordFile(path).close();
+      fail("expected IOException");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("truncated");
+    }
+  }
+}
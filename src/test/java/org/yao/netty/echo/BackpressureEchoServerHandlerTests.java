@@ -0,0 +1,197 @@
+package org.yao.netty.echo;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class BackpressureEchoServerHandlerTests {
+  private static final int CLIENTS = 1000;
+  private static final int MESSAGE = 256 * 1024;
+  private static final int LOW_WATER_MARK = 8 * 1024;
+  private static final int HIGH_WATER_MARK = 16 * 1024;
+  private static final int MAX_READ = 16 * 1024;
+  private static final int SOCKET_BUFFER = 16 * 1024;
+
+  /**
+   * Every client sends {@link #MESSAGE} bytes without reading the echoes. Unless the server stops
+   * reading, it buffers everything a client sends beyond what fits in the socket buffers.
+   */
+  @Test
+  public void testStalledClients() throws Exception {
+    UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+    ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+    EventLoopGroup workerGroup = new NioEventLoopGroup(2);
+    BackpressureEchoServerHandler serverHandler = new BackpressureEchoServerHandler();
+    List<Client> clients = new ArrayList<>();
+    try {
+      ServerBootstrap b = new ServerBootstrap();
+      b.group(bossGroup, workerGroup)
+          .channel(NioServerSocketChannel.class)
+          .option(ChannelOption.SO_BACKLOG, CLIENTS)
+          .option(ChannelOption.SO_RCVBUF, SOCKET_BUFFER)
+          .childOption(ChannelOption.ALLOCATOR, allocator)
+          .childOption(ChannelOption.SO_SNDBUF, SOCKET_BUFFER)
+          .childOption(
+              ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 1024, MAX_READ))
+          .childOption(
+              ChannelOption.WRITE_BUFFER_WATER_MARK,
+              new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK))
+          .childHandler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            public void initChannel(SocketChannel ch) {
+              channels.add(ch);
+              ch.pipeline().addLast(new FlushConsolidationHandler(), serverHandler);
+            }
+          });
+      InetSocketAddress address =
+          (InetSocketAddress) b.bind("127.0.0.1", 0).sync().channel().localAddress();
+
+      for (int i = 0; i < CLIENTS; i++) {
+        clients.add(new Client(address));
+      }
+      // Send until no client can send any more.
+      for (int idle = 0; idle < 5; ) {
+        long sent = 0;
+        for (Client client : clients) {
+          sent += client.send();
+        }
+        if (sent == 0) {
+          idle++;
+          TimeUnit.MILLISECONDS.sleep(100);
+        } else {
+          idle = 0;
+        }
+      }
+
+      long total = 0;
+      long pending = 0;
+      int stalled = 0;
+      for (Client client : clients) {
+        total += client.sent;
+      }
+      for (Channel channel : channels) {
+        pending += channel.unsafe().outboundBuffer().totalPendingWriteBytes();
+        if (!channel.config().isAutoRead()) {
+          stalled++;
+        }
+      }
+      ByteBufAllocatorMetric metric = allocator.metric();
+      Runtime runtime = Runtime.getRuntime();
+      System.gc();
+      System.out.printf(
+          "sent %d bytes, %d stalled channels, %d bytes pending, %d direct, %d heap buffers,"
+              + " %d MiB heap\n",
+          total,
+          stalled,
+          pending,
+          metric.usedDirectMemory(),
+          metric.usedHeapMemory(),
+          (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+      assertThat(channels.size()).isEqualTo(CLIENTS);
+      assertThat(stalled).isGreaterThan(CLIENTS / 2);
+      long bound = (long) CLIENTS * (HIGH_WATER_MARK + MAX_READ);
+      assertThat(total).isGreaterThan(bound);
+      assertThat(pending).isAtMost(bound);
+      assertThat(metric.usedDirectMemory() + metric.usedHeapMemory()).isAtMost(bound);
+
+      // Once the clients read again, the servers resume and echo everything.
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+      boolean done = false;
+      while (!done && System.nanoTime() < deadline) {
+        done = true;
+        for (Client client : clients) {
+          client.send();
+          client.receive();
+          done &= client.received == MESSAGE;
+        }
+      }
+      assertThat(done).isTrue();
+    } finally {
+      for (Client client : clients) {
+        client.channel.close();
+      }
+      bossGroup.shutdownGracefully();
+      workerGroup.shutdownGracefully();
+    }
+  }
+
+  private static byte expected(long position) {
+    return (byte) (position % 251);
+  }
+
+  private static class Client {
+    private final java.nio.channels.SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(8192);
+    private final ByteBuffer in = ByteBuffer.allocate(8192);
+    private long sent;
+    private long received;
+
+    Client(InetSocketAddress address) throws IOException {
+      channel = java.nio.channels.SocketChannel.open();
+      channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER);
+      channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER);
+      channel.connect(address);
+      channel.configureBlocking(false);
+      out.limit(0);
+    }
+
+    long send() throws IOException {
+      long n = 0;
+      while (sent < MESSAGE) {
+        if (!out.hasRemaining()) {
+          out.clear();
+          int size = (int) Math.min(out.capacity(), MESSAGE - sent);
+          for (int i = 0; i < size; i++) {
+            out.put(expected(sent + i));
+          }
+          out.flip();
+        }
+        int rc = channel.write(out);
+        if (rc == 0) {
+          break;
+        }
+        sent += rc;
+        n += rc;
+      }
+      return n;
+    }
+
+    void receive() throws IOException {
+      int rc;
+      while ((rc = channel.read(in.clear())) > 0) {
+        for (int i = 0; i < rc; i++) {
+          if (in.get(i) != expected(received + i)) {
+            throw new AssertionError("unexpected byte at " + (received + i));
+          }
+        }
+        received += rc;
+      }
+      assertThat(rc).isAtLeast(0);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package org.yao.netty.rpc;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.GetDataResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class RpcTests {
+  private RpcServer server;
+  private EventLoopGroup group;
+  private RpcClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new RpcServer();
+    InetSocketAddress address = server.bind("127.0.0.1", 0);
+    group = new NioEventLoopGroup(1);
+    client = RpcClient.connect(group, "127.0.0.1", address.getPort());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    group.shutdownGracefully();
+    server.close();
+  }
+
+  @Test
+  public void testCreateSetGet() {
+    assertThat(client.create("/a", "1".getBytes()).join()).isEqualTo("/a");
+    Stat stat = client.setData("/a", "2".getBytes(), 0).join();
+    assertThat(stat.getVersion()).isEqualTo(1);
+    GetDataResponse response = client.getData("/a").join();
+    assertThat(new String(response.getData())).isEqualTo("2");
+    assertThat(response.getStat().getMzxid()).isEqualTo(stat.getMzxid());
+  }
+
+  @Test
+  public void testErrors() {
+    expect(client.getData("/missing"), KeeperException.NoNodeException.class);
+    client.create("/b", new byte[0]).join();
+    expect(client.create("/b", new byte[0]), KeeperException.NodeExistsException.class);
+    expect(client.setData("/b", new byte[0], 5), KeeperException.BadVersionException.class);
+  }
+
+  @Test
+  public void testPipelining() {
+    client.create("/c", new byte[0]).join();
+    List<CompletableFuture<Stat>> futures = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      futures.add(client.setData("/c", String.valueOf(i).getBytes(), i));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      assertThat(futures.get(i).join().getVersion()).isEqualTo(i + 1);
+    }
+    assertThat(new String(client.getData("/c").join().getData())).isEqualTo("9999");
+    assertThat(client.outstanding()).isEqualTo(0);
+  }
+
+  @Test
+  public void testConnectionLoss() {
+    CompletableFuture<String> future = client.create("/d", new byte[0]);
+    server.close();
+    client.close();
+    try {
+      future.join();
+    } catch (CompletionException e) {
+      assertThat(e.getCause()).isInstanceOf(KeeperException.ConnectionLossException.class);
+    }
+    expect(client.getData("/d"), Exception.class);
+  }
+
+  private static void expect(CompletableFuture<?> future, Class<? extends Throwable> type) {
+    try {
+      future.join();
+      fail("expected " + type.getSimpleName());
+    } catch (CompletionException e) {
+      assertThat(e.getCause()).isInstanceOf(type);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package org.yao.snapshot;
+
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooDefs.Perms;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Id;
+import org.apache.zookeeper.server.DataTree;
+import org.apache.zookeeper.server.EphemeralType;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class SnapshotAnalyzerTests {
+  private static final List<ACL> DIGEST =
+      Collections.singletonList(new ACL(Perms.READ | Perms.WRITE, new Id("digest", "yao:hash")));
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Writes a snapshot with 1000 config znodes of 10 bytes each, 50 ephemeral members owned by
+   * sessions 1 and 2, where only session 1 is live, a container /locks with a TTL znode under it,
+   * and a digest-protected /secret.
+   */
+  private File snapshot() throws Exception {
+    DataTree tree = new DataTree();
+    long zxid = 1;
+    tree.createNode("/app", new byte[0], Ids.OPEN_ACL_UNSAFE, 0, 0, zxid++, 0);
+    tree.createNode("/app/config", new byte[0], Ids.OPEN_ACL_UNSAFE, 0, 0, zxid++, 0);
+    for (int i = 0; i < 1000; i++) {
+      tree.createNode("/app/config/c" + i, new byte[10], Ids.OPEN_ACL_UNSAFE, 0, 0, zxid++, 0);
+    }
+    tree.createNode("/app/members", new byte[0], Ids.OPEN_ACL_UNSAFE, 0, 0, zxid++, 0);
+    for (int i = 0; i < 50; i++) {
+      tree.createNode(
+          "/app/members/m" + i, new byte[0], Ids.OPEN_ACL_UNSAFE, 1 + i % 2, 0, zxid++, 0);
+    }
+    tree.createNode(
+        "/locks",
+        new byte[0],
+        Ids.OPEN_ACL_UNSAFE,
+        EphemeralType.CONTAINER_EPHEMERAL_OWNER,
+        0,
+        zxid++,
+        0);
+    tree.createNode(
+        "/locks/lease",
+        new byte[0],
+        Ids.OPEN_ACL_UNSAFE,
+        EphemeralType.TTL.toEphemeralOwner(60000),
+        0,
+        zxid++,
+        0);
+    tree.createNode("/secret", new byte[100], DIGEST, 0, 0, zxid++, 0);
+
+    Map<Long, Integer> sessions = new HashMap<>();
+    sessions.put(1L, 30000);
+    File dir = folder.newFolder();
+    File file = new File(dir, "snapshot.1");
+    new FileSnap(dir).serialize(tree, sessions, file);
+    return file;
+  }
+
+  @Test
+  public void testAnalyze() throws Exception {
+    SnapshotStats stats = new SnapshotAnalyzer(2, 3).analyze(snapshot().toPath());
+    // The tree also has /, /zookeeper, /zookeeper/quota and /zookeeper/config.
+    assertThat(stats.znodes()).isEqualTo(4 + 1 + 1 + 1000 + 1 + 50 + 2 + 1);
+    assertThat(stats.dataBytes()).isEqualTo(1000 * 10 + 100);
+    assertThat(stats.ephemerals()).isEqualTo(50);
+    assertThat(stats.containers()).isEqualTo(1);
+    assertThat(stats.ttls()).isEqualTo(1);
+    assertThat(stats.prefixZnodes()).containsEntry("/app/config", 1001L);
+    assertThat(stats.prefixZnodes()).containsEntry("/app/members", 51L);
+    assertThat(stats.prefixZnodes()).containsEntry("/app", 1L);
+    assertThat(stats.prefixZnodes()).containsEntry("/", 1L);
+    assertThat(stats.prefixBytes()).containsEntry("/app/config", 10000L);
+    assertThat(stats.prefixBytes()).containsEntry("/secret", 100L);
+    assertThat(stats.owners()).containsExactly(1L, 25L, 2L, 25L);
+    assertThat(stats.aclUsage()).containsEntry("digest:yao:hash:rw", 1L);
+
+    SnapshotStats depth1 = new SnapshotAnalyzer(1, 1).analyze(snapshot().toPath());
+    assertThat(depth1.prefixZnodes()).containsEntry("/app", 1053L);
+    assertThat(depth1.prefixZnodes()).containsEntry("/locks", 2L);
+  }
+
+  @Test
+  public void testReports() throws Exception {
+    SnapshotStats stats = new SnapshotAnalyzer(2, 2).analyze(snapshot().toPath());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stats.printText(new PrintStream(out, true, "UTF-8"), 3);
+    String text = out.toString("UTF-8");
+    assertThat(text)
+        .contains("1060 znodes, 10100 data bytes, 50 ephemerals, 1 containers, 1 TTL znodes,");
+    // Only the sessions 1 and 2 own ephemerals.
+    assertThat(text).doesNotContain("0x8000000000000000");
+    assertThat(text).contains("1 sessions");
+    assertThat(text).contains("largest znode: /secret (100 bytes)");
+    assertThat(text).contains("more prefixes");
+
+    out.reset();
+    stats.printCsv(new PrintStream(out, true, "UTF-8"));
+    assertThat(out.toString("UTF-8")).contains("\n/app/config,1001,10000,0\n");
+
+    out.reset();
+    stats.printJson(out);
+    String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    assertThat(json).contains("\"prefix\" : \"/app/members\"");
+    assertThat(json).contains("\"live\" : false");
+  }
+
+  @Test
+  public void testCorrupted() throws Exception {
+    File file = snapshot();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'x'}), 200);
+    }
+    try {
+      new SnapshotAnalyzer(2, 2).analyze(file.toPath());
+      fail("expected IOException");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("checksum");
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() / 2);
+    }
+    try {
+      new SnapshotAnalyzer(2, 2).analyze(file.toPath());
+      fail("expected IOException");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("truncated");
+    }
+  }
+}
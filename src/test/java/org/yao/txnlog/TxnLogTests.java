@@ -0,0 +1,228 @@
+package org.yao.txnlog;
+
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yao.EmbeddedZooKeeper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class TxnLogTests {
+  private static final int CONFIGS = 1000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private long zxid;
+
+  private void append(FileTxnLog log, int type, Record txn) throws IOException {
+    append(log, 1, type, txn);
+  }
+
+  private void append(FileTxnLog log, long session, int type, Record txn) throws IOException {
+    zxid++;
+    log.append(new TxnHeader(session, (int) zxid, zxid, 1_000_000 + zxid * 10, type), txn);
+  }
+
+  private static byte[] bytes(Record txn) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    txn.serialize(BinaryOutputArchive.getArchive(out), "txn");
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes a session, 1000 creates of 100 bytes under /app/config, 1000 setData of 10 bytes, and a
+   * multi deleting two of them, into two log files.
+   */
+  private File logs() throws IOException {
+    File dir = folder.newFolder();
+    FileTxnLog log = new FileTxnLog(dir);
+    append(log, OpCode.createSession, new CreateSessionTxn(30000));
+    for (int i = 0; i < CONFIGS; i++) {
+      String path = "/app/config/c" + i;
+      append(log, OpCode.create, new CreateTxn(path, new byte[100], Ids.OPEN_ACL_UNSAFE, false, 0));
+    }
+    log.commit();
+    log.rollLog();
+    for (int i = 0; i < CONFIGS; i++) {
+      append(log, OpCode.setData, new SetDataTxn("/app/config/c" + i, new byte[10], 1));
+    }
+    List<Txn> txns =
+        Arrays.asList(
+            new Txn(OpCode.delete, bytes(new DeleteTxn("/app/config/c0"))),
+            new Txn(OpCode.delete, bytes(new DeleteTxn("/app/config/c1"))));
+    append(log, OpCode.multi, new MultiTxn(txns));
+    log.commit();
+    log.close();
+    return dir;
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    File dir = logs();
+    List<Path> files = TxnLogFile.logs(dir.toPath());
+    assertThat(files).hasSize(2);
+
+    // A small window, so that entries are read across many mappings.
+    long expected = 1;
+    try (TxnLogFile file = new TxnLogFile(files.get(0), 256)) {
+      for (TxnLogFile.Entry entry = file.next(); entry != null; entry = file.next()) {
+        assertThat(entry.header.getZxid()).isEqualTo(expected++);
+      }
+      assertThat(file.partial()).isFalse();
+    }
+    assertThat(expected).isEqualTo(CONFIGS + 2);
+
+    try (TxnLogs txns = TxnLogs.of(dir.getPath(), files.get(1).toString())) {
+      long n = 0;
+      for (TxnLogFile.Entry entry = txns.next(); entry != null; entry = txns.next()) {
+        n++;
+        if (entry.header.getType() == OpCode.setData) {
+          assertThat(((SetDataTxn) entry.txn).getData()).hasLength(10);
+        }
+      }
+      // The second file is named twice, but read once.
+      assertThat(n).isEqualTo(2 * CONFIGS + 2);
+    }
+  }
+
+  @Test
+  public void testStats() throws IOException {
+    TxnLogStats stats = new TxnLogStats(2);
+    try (TxnLogs txns = TxnLogs.of(logs().getPath())) {
+      for (TxnLogFile.Entry entry = txns.next(); entry != null; entry = txns.next()) {
+        stats.add(entry);
+      }
+    }
+    assertThat(stats.txns()).isEqualTo(2 * CONFIGS + 2);
+    assertThat(stats.ops())
+        .containsExactly(
+            "createSession", 1L, "create", (long) CONFIGS, "setData", (long) CONFIGS, "multi", 1L);
+    assertThat(stats.prefixWrites()).containsExactly("/app/config", 2L * CONFIGS + 2);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stats.printText(new PrintStream(out, true, "UTF-8"), 10);
+    String text = out.toString("UTF-8");
+    assertThat(text).contains("2002 txns, zxid 0x1 to 0x7d2, 20.0 s");
+    assertThat(text).contains("payload bytes: p50 <= 15, p90 <= 127");
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    File dir = folder.newFolder();
+    FileTxnLog log = new FileTxnLog(dir);
+    append(log, OpCode.create, new CreateTxn("/svc", new byte[0], Ids.OPEN_ACL_UNSAFE, false, 0));
+    // A lock taken and released by three sessions in turn, released by closing the session.
+    for (long session = 10; session < 13; session++) {
+      append(log, session, OpCode.createSession, new CreateSessionTxn(30000));
+      append(
+          log,
+          session,
+          OpCode.create,
+          new CreateTxn("/svc/lock", new byte[1], Ids.OPEN_ACL_UNSAFE, true, 0));
+      append(log, session, OpCode.setData, new SetDataTxn("/svc", new byte[2], 1));
+      append(log, session, OpCode.closeSession, null);
+    }
+    append(log, 20, OpCode.createSession, new CreateSessionTxn(30000));
+    append(
+        log, 20, OpCode.create, new CreateTxn("/svc/a", new byte[0], Ids.OPEN_ACL_UNSAFE, true, 0));
+    List<Txn> txns =
+        Arrays.asList(
+            new Txn(
+                OpCode.create,
+                bytes(new CreateTxn("/svc/b", new byte[0], Ids.OPEN_ACL_UNSAFE, true, 0))),
+            new Txn(OpCode.delete, bytes(new DeleteTxn("/svc/a"))));
+    append(log, 20, OpCode.multi, new MultiTxn(txns));
+    log.commit();
+    log.close();
+
+    try (EmbeddedZooKeeper server = new EmbeddedZooKeeper(folder.newFolder())) {
+      // One session, so that a delete at closeSession comes before the next session's create.
+      ZooKeeper[] sessions = {server.connect()};
+      TxnLogReplayer.createRoot(sessions[0], "/replay/1");
+      TxnLogReplayer replayer = new TxnLogReplayer(sessions, "/replay/1", 0, 100);
+      try (TxnLogs logs = TxnLogs.of(dir.getPath())) {
+        replayer.replay(logs);
+        assertThat(logs.partial()).isEmpty();
+      }
+      // Every create, setData and delete, a delete per closeSession, and the multi.
+      assertThat(replayer.results()).containsExactly(Code.OK, 1L + 3 * 3 + 2);
+      assertThat(replayer.skipped()).isEqualTo(4);
+
+      ZooKeeper zk = sessions[0];
+      assertThat(zk.getChildren("/replay/1/svc", false)).containsExactly("b");
+      assertThat(zk.exists("/replay/1/svc", false).getVersion()).isEqualTo(3);
+      for (ZooKeeper session : sessions) {
+        session.close();
+      }
+    }
+  }
+
+  @Test
+  public void testReplayLatency() throws Exception {
+    File dir = folder.newFolder();
+    FileTxnLog log = new FileTxnLog(dir);
+    append(log, OpCode.create, new CreateTxn("/svc", new byte[0], Ids.OPEN_ACL_UNSAFE, false, 0));
+    for (int i = 0; i < 2 * CONFIGS; i++) {
+      append(log, OpCode.setData, new SetDataTxn("/svc", new byte[10], i + 1));
+    }
+    log.commit();
+    log.close();
+
+    try (EmbeddedZooKeeper server = new EmbeddedZooKeeper(folder.newFolder())) {
+      ZooKeeper zk = server.connect();
+      TxnLogReplayer.createRoot(zk, "/replay/2");
+      TxnLogReplayer replayer = new TxnLogReplayer(new ZooKeeper[] {zk}, "/replay/2", 0, 10);
+      long start = System.nanoTime();
+      try (TxnLogs logs = TxnLogs.of(dir.getPath())) {
+        replayer.replay(logs);
+      }
+      long total = System.nanoTime() - start;
+      assertThat(replayer.results()).containsExactly(Code.OK, 2L * CONFIGS + 1);
+      // With 10 calls in flight, a call waits for about 10 others, not for the whole replay.
+      assertThat(replayer.latency().percentileNanos(90)).isLessThan(total / 10);
+      zk.close();
+    }
+  }
+
+  @Test
+  public void testCorrupted() throws IOException {
+    Path path = TxnLogFile.logs(logs().toPath()).get(0);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      // In the data of the first create, after the file header, the session and 66 bytes of the
+      // create entry.
+      channel.write(ByteBuffer.wrap(new byte[] {'x'}), 16 + 49 + 66 + 20);
+    }
+    try (TxnLogFile file = new TxnLogFile(path)) {
+      while (file.next() != null) {}
+      fail("expected IOException");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("checksum mismatch");
+    }
+  }
+}
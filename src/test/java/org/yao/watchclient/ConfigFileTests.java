@@ -0,0 +1,42 @@
+package org.yao.watchclient;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ConfigFileTests {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    File dir = folder.newFolder();
+    ConfigFile file = new ConfigFile(new File(dir, "app.conf").getPath());
+    assertThat(file.write(bytes("a=1"))).isTrue();
+    assertThat(file.write(bytes("a=1"))).isFalse();
+    assertThat(Files.readAllBytes(file.path())).isEqualTo(bytes("a=1"));
+    assertThat(dir.list()).asList().containsExactly("app.conf");
+
+    // A new file gets the same permissions as one created in place.
+    Path plain = Files.createFile(dir.toPath().resolve("plain"));
+    assertThat(Files.getPosixFilePermissions(file.path()))
+        .isEqualTo(Files.getPosixFilePermissions(plain));
+
+    Files.setPosixFilePermissions(file.path(), PosixFilePermissions.fromString("rw-rw-r--"));
+    assertThat(file.write(bytes("a=2"))).isTrue();
+    assertThat(Files.readAllBytes(file.path())).isEqualTo(bytes("a=2"));
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.path())))
+        .isEqualTo("rw-rw-r--");
+  }
+}